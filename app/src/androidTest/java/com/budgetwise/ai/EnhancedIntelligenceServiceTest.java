@@ -0,0 +1,96 @@
+package com.budgetwise.ai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import android.content.Context;
+import androidx.lifecycle.Observer;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.budgetwise.BudgetWiseApplication;
+import com.budgetwise.data.models.Transaction;
+import com.budgetwise.data.repository.BudgetRepository;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Runs the analysis against the app's repository, with a few transactions
+ * of its own that are removed afterwards.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EnhancedIntelligenceServiceTest {
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final String[] CATEGORIES = {"Food & Dining", "Transportation", "Shopping"};
+
+    private final BlockingQueue<EnhancedIntelligenceService.AnalysisProgress> progress = new LinkedBlockingQueue<>();
+    private final Observer<EnhancedIntelligenceService.AnalysisProgress> observer = progress::add;
+    private final List<String> added = new ArrayList<>();
+    private BudgetRepository repository;
+    private EnhancedIntelligenceService service;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        repository = ((BudgetWiseApplication) context.getApplicationContext()).getBudgetRepository();
+
+        List<Transaction> transactions = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 15; i++) {
+            Transaction transaction = new Transaction(10 + i, "Service test " + i,
+                CATEGORIES[i % CATEGORIES.length], Transaction.TransactionType.EXPENSE);
+            transaction.setDate(new Date(now - i * DAY_MILLIS));
+            transactions.add(transaction);
+            added.add(transaction.getId());
+        }
+        repository.addTransactions(transactions).get();
+
+        service = new EnhancedIntelligenceService(context, repository);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(
+            () -> service.getProgressLiveData().observeForever(observer));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(
+            () -> service.getProgressLiveData().removeObserver(observer));
+        repository.deleteTransactions(added).get();
+    }
+
+    @Test
+    public void unchangedDataIsServedFromCacheAndStillCompletes() throws Exception {
+        assertEquals(EnhancedIntelligenceService.AnalysisProgress.State.COMPLETED, analyze().state);
+        List<String> first = insights();
+        assertNotNull(first);
+
+        // Same data, same day: every engine stage is a cache hit
+        assertEquals(EnhancedIntelligenceService.AnalysisProgress.State.COMPLETED, analyze().state);
+        assertEquals(first, insights());
+    }
+
+    private EnhancedIntelligenceService.AnalysisProgress analyze() throws InterruptedException {
+        progress.clear();
+        service.runCompleteAnalysis();
+        while (true) {
+            EnhancedIntelligenceService.AnalysisProgress next = progress.poll(30, TimeUnit.SECONDS);
+            assertNotNull("Analysis did not finish", next);
+            if (!next.isInProgress()) {
+                return next;
+            }
+        }
+    }
+
+    private List<String> insights() {
+        List<List<String>> value = new ArrayList<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(
+            () -> value.add(service.getInsightsLiveData().getValue()));
+        return value.get(0);
+    }
+}
@@ -0,0 +1,181 @@
+package com.budgetwise.data.storage;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.budgetwise.data.models.Transaction;
+import com.budgetwise.security.EncryptionManager;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the storage engines on synthetic data: writing a full history,
+ * loading it back into a fresh engine instance and reading the last 30 days
+ * the way the repository does, by loading the overlapping months. Every
+ * engine works in its own scratch store, which is removed afterwards.
+ * Results go to logcat; takes minutes at the larger sizes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StorageBenchmarkTest {
+    private static final String TAG = "StorageBenchmark";
+    private static final String SCRATCH_NAME = "budgetwise_benchmark";
+    private static final int HISTORY_MONTHS = 36;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final String[] CATEGORIES = {
+        "Food & Dining", "Transportation", "Shopping", "Entertainment", "Bills & Utilities",
+        "Healthcare", "Education", "Travel", "Groceries", "Gas", "Salary", "Other"
+    };
+    private static final int[] SIZES = {10_000, 100_000, 1_000_000};
+
+    @Test
+    public void compareEngines() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        EncryptionManager encryptionManager = new EncryptionManager(context);
+        for (int size : SIZES) {
+            for (String engine : StorageEngines.ALL) {
+                Result result = runOne(context, encryptionManager, engine, size);
+                Log.i(TAG, result.toString());
+                if (result.error == null) {
+                    assertEquals(result.toString(), size, result.loaded);
+                }
+            }
+        }
+    }
+
+    private static Result runOne(Context context, EncryptionManager encryptionManager, String name, int size) {
+        Result result = new Result(name, size);
+        SecurePreferences scratchPreferences = new SecurePreferences(context, encryptionManager, SCRATCH_NAME);
+        StorageEngine engine = createScratch(context, encryptionManager, scratchPreferences, name);
+        try {
+            engine.destroy();
+            engine.load();
+
+            long now = System.currentTimeMillis();
+            List<String> partitions = TransactionPartitionStore.partitionsBetween(
+                now - HISTORY_MONTHS * 30L * DAY_MILLIS, now);
+            int perPartition = (size + partitions.size() - 1) / partitions.size();
+
+            // Months are generated one at a time so a million records never
+            // have to be in memory together
+            long start = System.nanoTime();
+            int remaining = size;
+            for (String partition : partitions) {
+                int count = Math.min(perPartition, remaining);
+                engine.writePartition(partition, generate(partition, count));
+                remaining -= count;
+            }
+            engine.commitIndex();
+            result.writeMillis = millisSince(start);
+            engine.close();
+
+            engine = createScratch(context, encryptionManager, scratchPreferences, name);
+            start = System.nanoTime();
+            for (String partition : engine.load().keySet()) {
+                result.loaded += engine.readPartition(partition).size();
+            }
+            result.loadMillis = millisSince(start);
+
+            start = System.nanoTime();
+            result.rangeCount = readRange(engine, now - 30 * DAY_MILLIS, now).size();
+            result.rangeQueryMillis = millisSince(start);
+        } catch (Throwable t) {
+            // Includes running out of memory, which is itself a result at 1M
+            Log.e(TAG, "Benchmark of " + name + " at " + size + " failed", t);
+            result.error = t.getClass().getSimpleName();
+        } finally {
+            engine.destroy();
+            engine.close();
+        }
+        return result;
+    }
+
+    private static List<Transaction> readRange(StorageEngine engine, long startMillis, long endMillis) {
+        List<Transaction> result = new ArrayList<>();
+        for (String partition : TransactionPartitionStore.partitionsBetween(startMillis, endMillis)) {
+            if (!engine.getIndex().containsKey(partition)) {
+                continue;
+            }
+            for (Transaction transaction : engine.readPartition(partition)) {
+                long time = transaction.getDate().getTime();
+                if (time >= startMillis && time <= endMillis) {
+                    result.add(transaction);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static StorageEngine createScratch(Context context, EncryptionManager encryptionManager,
+                                               SecurePreferences scratchPreferences, String name) {
+        switch (name) {
+            case StorageEngines.ENCRYPTED_FILE:
+                return new EncryptedFileStorageEngine(context, encryptionManager, SCRATCH_NAME + ".store");
+            case StorageEngines.SQLITE:
+                return new SqliteStorageEngine(context, encryptionManager, SCRATCH_NAME + ".db");
+            default:
+                return new TransactionPartitionStore(scratchPreferences);
+        }
+    }
+
+    private static List<Transaction> generate(String partition, int count) {
+        Random random = new Random(partition.hashCode());
+        int year = Integer.parseInt(partition.substring(0, 4));
+        int month = Integer.parseInt(partition.substring(4, 6));
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(year, month - 1, 1);
+        long monthStart = calendar.getTimeInMillis();
+
+        List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            boolean income = random.nextInt(10) == 0;
+            Transaction transaction = new Transaction(
+                Math.round(random.nextDouble() * 50_000) / 100.0,
+                "Benchmark " + i,
+                income ? "Salary" : CATEGORIES[random.nextInt(CATEGORIES.length)],
+                income ? Transaction.TransactionType.INCOME : Transaction.TransactionType.EXPENSE);
+            transaction.setDate(new Date(monthStart + (long) (random.nextDouble() * 28 * DAY_MILLIS)));
+            transactions.add(transaction);
+        }
+        return transactions;
+    }
+
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private static class Result {
+        final String engine;
+        final int size;
+        long writeMillis;
+        long loadMillis;
+        long rangeQueryMillis;
+        int loaded;
+        int rangeCount;
+        String error;
+
+        Result(String engine, int size) {
+            this.engine = engine;
+            this.size = size;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null) {
+                return String.format(Locale.US, "%s @ %d: failed (%s)", engine, size, error);
+            }
+            return String.format(Locale.US, "%s @ %d: write %dms, load %dms, 30-day range %dms (%d rows)",
+                engine, size, writeMillis, loadMillis, rangeQueryMillis, rangeCount);
+        }
+    }
+}
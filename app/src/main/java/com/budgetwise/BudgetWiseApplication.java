@@ -2,8 +2,10 @@ package com.budgetwise;
 
 import android.app.Application;
 import android.content.Context;
+import com.budgetwise.backup.BackupManager;
 import com.budgetwise.data.repository.BudgetRepository;
 import com.budgetwise.security.EncryptionManager;
+import com.budgetwise.security.KeyRotationManager;
 import com.budgetwise.ai.EnhancedIntelligenceService;
 import com.budgetwise.utils.ThemeManager;
 import com.budgetwise.notifications.NotificationManager;
@@ -12,6 +14,8 @@ public class BudgetWiseApplication extends Application {
     private static BudgetWiseApplication instance;
     private BudgetRepository budgetRepository;
     private EncryptionManager encryptionManager;
+    private KeyRotationManager keyRotationManager;
+    private BackupManager backupManager;
     private EnhancedIntelligenceService intelligenceService;
     private ThemeManager themeManager;
     private NotificationManager notificationManager;
@@ -26,6 +30,8 @@ public class BudgetWiseApplication extends Application {
     private void initializeServices() {
         encryptionManager = new EncryptionManager(this);
         budgetRepository = new BudgetRepository(this, encryptionManager);
+        keyRotationManager = new KeyRotationManager(this, encryptionManager, budgetRepository);
+        backupManager = new BackupManager(this, budgetRepository, encryptionManager);
         intelligenceService = new EnhancedIntelligenceService(this, budgetRepository);
         themeManager = new ThemeManager(this);
         notificationManager = new NotificationManager(this);
@@ -36,6 +42,10 @@ public class BudgetWiseApplication extends Application {
         
         // Schedule backup reminder
         notificationManager.scheduleBackupReminder();
+        backupManager.scheduleAutomaticBackups();
+
+        // Finish a key rotation interrupted by process death
+        keyRotationManager.resumeIfNeeded();
         
         // Start AI analysis
         intelligenceService.runCompleteAnalysis();
@@ -53,6 +63,14 @@ public class BudgetWiseApplication extends Application {
         return encryptionManager;
     }
 
+    public KeyRotationManager getKeyRotationManager() {
+        return keyRotationManager;
+    }
+
+    public BackupManager getBackupManager() {
+        return backupManager;
+    }
+
     public EnhancedIntelligenceService getIntelligenceService() {
         return intelligenceService;
     }
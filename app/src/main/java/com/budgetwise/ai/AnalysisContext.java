@@ -0,0 +1,266 @@
+package com.budgetwise.ai;
+
+import com.budgetwise.data.models.Budget;
+import com.budgetwise.data.models.Transaction;
+import com.budgetwise.data.repository.TransactionColumns;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the insight engines read, precomputed in one pass over the history
+ * sorted by date: expenses grouped by category and by normalized
+ * description, daily expense buckets and rolling windows ending at
+ * {@link #getNow()}. One context is built per analysis run and shared by
+ * all engines, so none of them filters, groups or sorts the history again.
+ *
+ * Immutable once built. The lists handed out are read-only views in date
+ * order, oldest first.
+ */
+public final class AnalysisContext {
+    static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    public static final int BUCKET_DAYS = 90;
+    // Windows the engines use; the week before last is 14 minus 7, and so on
+    private static final int[] WINDOW_DAYS = {7, 14, 30, 45, 90};
+    // Transactions between cancellation checks while building
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final long now;
+    private final List<Transaction> transactions;
+    private final List<Transaction> expenses;
+    private final List<Budget> budgets;
+    private final TransactionColumns columns;
+    private final Map<String, List<Transaction>> expensesByCategory;
+    private final Map<String, List<Transaction>> transactionsByDescription;
+    private final long[] dailyExpenseCents = new long[BUCKET_DAYS];
+    private final Window[] windows = new Window[WINDOW_DAYS.length];
+
+    private AnalysisContext(List<Transaction> sorted, List<Budget> budgets, TransactionColumns columns, long now,
+                            InsightPipeline.Cancellation cancellation) {
+        this.now = now;
+        this.transactions = Collections.unmodifiableList(sorted);
+        this.budgets = Collections.unmodifiableList(budgets);
+        this.columns = columns;
+
+        for (int w = 0; w < WINDOW_DAYS.length; w++) {
+            windows[w] = new Window(WINDOW_DAYS[w], now - WINDOW_DAYS[w] * DAY_MILLIS, columns.categoryCount());
+        }
+        List<Transaction> expenseList = new ArrayList<>();
+        Map<String, List<Transaction>> byCategory = new HashMap<>();
+        Map<String, List<Transaction>> byDescription = new HashMap<>();
+        long today = dayNumber(now);
+
+        // Columns and list hold the same records in date order; each side is
+        // only compared against its own times, so ties may be ordered differently
+        for (int i = 0; i < sorted.size(); i++) {
+            if (i % CHECK_INTERVAL == 0) {
+                cancellation.checkCancelled();
+            }
+            Transaction transaction = sorted.get(i);
+            long time = transaction.getDate() != null ? transaction.getDate().getTime() : 0L;
+            long columnTime = columns.timeAt(i);
+            byte columnType = columns.typeAt(i);
+            for (Window window : windows) {
+                if (time > window.startMillis && window.listFrom < 0) {
+                    window.listFrom = i;
+                }
+                if (columnTime > window.startMillis) {
+                    if (columnType == TransactionColumns.TYPE_INCOME) {
+                        window.incomeCents += columns.amountCentsAt(i);
+                    } else if (columnType == TransactionColumns.TYPE_EXPENSE) {
+                        window.expenseCents += columns.amountCentsAt(i);
+                        window.expenseCentsByCategory[columns.categoryIdAt(i)] += columns.amountCentsAt(i);
+                        window.expenseCount++;
+                    }
+                }
+            }
+
+            if (transaction.getDescription() != null) {
+                add(byDescription, RecurringDetector.normalizeDescription(transaction.getDescription()), transaction);
+            }
+            if (transaction.getType() != Transaction.TransactionType.EXPENSE) {
+                continue;
+            }
+            expenseList.add(transaction);
+            if (transaction.getCategory() != null) {
+                add(byCategory, transaction.getCategory(), transaction);
+            }
+            long daysAgo = today - dayNumber(time);
+            if (daysAgo >= 0 && daysAgo < BUCKET_DAYS) {
+                dailyExpenseCents[(int) daysAgo] += Math.round(transaction.getAmount() * 100);
+            }
+        }
+
+        for (Window window : windows) {
+            int from = window.listFrom < 0 ? sorted.size() : window.listFrom;
+            window.transactions = transactions.subList(from, sorted.size());
+            window.categoryExpenses = Collections.unmodifiableMap(
+                columns.toCategoryAmounts(window.expenseCentsByCategory));
+        }
+        this.expenses = Collections.unmodifiableList(expenseList);
+        this.expensesByCategory = Collections.unmodifiableMap(byCategory);
+        this.transactionsByDescription = Collections.unmodifiableMap(byDescription);
+    }
+
+    public static AnalysisContext of(List<Transaction> transactions, List<Budget> budgets) {
+        return build(transactions, budgets, null, System.currentTimeMillis());
+    }
+
+    /**
+     * Builds a context as of {@code now}. {@code columns} may be the cached
+     * columns of the same transactions, or null to derive them here.
+     */
+    public static AnalysisContext build(List<Transaction> transactions, List<Budget> budgets,
+                                        TransactionColumns columns, long now) {
+        return build(transactions, budgets, columns, now, InsightPipeline.Cancellation.NONE);
+    }
+
+    static AnalysisContext build(List<Transaction> transactions, List<Budget> budgets,
+                                 TransactionColumns columns, long now, InsightPipeline.Cancellation cancellation) {
+        List<Transaction> sorted = transactions;
+        for (int i = 1; i < transactions.size(); i++) {
+            if (timeOf(transactions.get(i)) < timeOf(transactions.get(i - 1))) {
+                sorted = new ArrayList<>(transactions);
+                sorted.sort((t1, t2) -> Long.compare(timeOf(t1), timeOf(t2)));
+                break;
+            }
+        }
+        if (columns == null || columns.size() != sorted.size()) {
+            columns = TransactionColumns.of(sorted);
+        }
+        cancellation.checkCancelled();
+        return new AnalysisContext(sorted, budgets, columns, now, cancellation);
+    }
+
+    public long getNow() {
+        return now;
+    }
+
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    public List<Transaction> getExpenses() {
+        return expenses;
+    }
+
+    public List<Budget> getBudgets() {
+        return budgets;
+    }
+
+    public TransactionColumns getColumns() {
+        return columns;
+    }
+
+    /**
+     * Expenses by category; records without a category are left out.
+     */
+    public Map<String, List<Transaction>> getExpensesByCategory() {
+        return expensesByCategory;
+    }
+
+    /**
+     * All transactions grouped by {@link RecurringDetector#normalizeDescription}.
+     */
+    public Map<String, List<Transaction>> getTransactionsByDescription() {
+        return transactionsByDescription;
+    }
+
+    /**
+     * Expenses in {@code category} dated within [startMillis, endMillis], in
+     * O(log n + k) over that category's group.
+     */
+    public double getCategoryExpenses(String category, long startMillis, long endMillis) {
+        List<Transaction> group = expensesByCategory.get(category);
+        if (group == null) {
+            return 0;
+        }
+        int low = 0;
+        int high = group.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timeOf(group.get(mid)) < startMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        double total = 0;
+        for (int i = low; i < group.size() && timeOf(group.get(i)) <= endMillis; i++) {
+            total += group.get(i).getAmount();
+        }
+        return total;
+    }
+
+    /**
+     * Expenses on the calendar day {@code daysAgo} days before today, for
+     * the last {@link #BUCKET_DAYS} days.
+     */
+    public double getDailyExpenses(int daysAgo) {
+        return daysAgo >= 0 && daysAgo < BUCKET_DAYS ? dailyExpenseCents[daysAgo] / 100.0 : 0;
+    }
+
+    /**
+     * Transactions dated after {@code now} minus {@code days}. Only the
+     * windows engines use are precomputed: 7, 14, 30, 45 and 90 days.
+     */
+    public Window getWindow(int days) {
+        for (int w = 0; w < WINDOW_DAYS.length; w++) {
+            if (WINDOW_DAYS[w] == days) {
+                return windows[w];
+            }
+        }
+        throw new IllegalArgumentException("No " + days + "-day window");
+    }
+
+    private static void add(Map<String, List<Transaction>> groups, String key, Transaction transaction) {
+        List<Transaction> group = groups.get(key);
+        if (group == null) {
+            group = new ArrayList<>();
+            groups.put(key, group);
+        }
+        group.add(transaction);
+    }
+
+    /**
+     * Local calendar day of {@code time}, counted from the epoch.
+     */
+    static long dayNumber(long time) {
+        return Math.floorDiv(time + TimeZone.getDefault().getOffset(time), DAY_MILLIS);
+    }
+
+    private static long timeOf(Transaction transaction) {
+        return transaction.getDate() != null ? transaction.getDate().getTime() : 0L;
+    }
+
+    public static final class Window {
+        private final int days;
+        private final long startMillis;
+        private final long[] expenseCentsByCategory;
+        private int listFrom = -1;
+        private long incomeCents;
+        private long expenseCents;
+        private int expenseCount;
+        private List<Transaction> transactions;
+        private Map<String, Double> categoryExpenses;
+
+        private Window(int days, long startMillis, int categoryCount) {
+            this.days = days;
+            this.startMillis = startMillis;
+            this.expenseCentsByCategory = new long[categoryCount];
+        }
+
+        public int getDays() { return days; }
+        public long getStartMillis() { return startMillis; }
+        public List<Transaction> getTransactions() { return transactions; }
+        public int size() { return transactions.size(); }
+        public double getIncome() { return incomeCents / 100.0; }
+        public double getExpenses() { return expenseCents / 100.0; }
+        public int getExpenseCount() { return expenseCount; }
+        public Map<String, Double> getCategoryExpenses() { return categoryExpenses; }
+    }
+}
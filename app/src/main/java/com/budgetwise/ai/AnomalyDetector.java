@@ -3,49 +3,148 @@ package com.budgetwise.ai;
 import android.content.Context;
 import android.util.Log;
 import com.budgetwise.data.models.Transaction;
+import com.budgetwise.data.repository.RepositoryChange;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AnomalyDetector {
     private static final String TAG = "AnomalyDetector";
     private static final double ANOMALY_THRESHOLD = 2.5; // Standard deviations
     private static final int MIN_TRANSACTIONS = 10; // Minimum transactions needed for analysis
+    private static final int MIN_CATEGORY_TRANSACTIONS = 5;
+    // A night hour holding less than this share of all transactions is unusual for this user
+    private static final double UNUSUAL_HOUR_SHARE = 0.05;
     
     private final Context context;
     private final AINotificationManager notificationManager;
+    private final SpendingStatistics statistics = new SpendingStatistics();
+    // Edit time each notified transaction had, whether flagged on insert or by a full analysis
+    private final Map<String, Long> notified = new ConcurrentHashMap<>();
 
     public AnomalyDetector(Context context) {
         this.context = context;
         this.notificationManager = new AINotificationManager(context);
     }
 
+    /**
+     * Starts keeping running statistics over a set of transactions, usually
+     * the repository's: {@code transactions} is the starting point, as of
+     * transactions version {@code version}, and every later change must be
+     * passed to {@link #onTransactionChanges}.
+     */
+    public void track(List<Transaction> transactions, long version) {
+        synchronized (statistics) {
+            statistics.clear();
+            for (Transaction transaction : transactions) {
+                statistics.add(transaction);
+            }
+            statistics.setVersion(version);
+        }
+    }
+
+    /**
+     * Applies committed changes to the running statistics. Each expense just
+     * inserted or updated is scored against its category as it stood before
+     * the change, so it is flagged now rather than at the next full analysis.
+     * Loaded records were already in the data and are only counted. Returns
+     * the anomalies found.
+     */
+    public List<AnomalyResult> onTransactionChanges(List<RepositoryChange<Transaction>> changes) {
+        List<AnomalyResult> anomalies = new ArrayList<>();
+        // The whole commit is applied under the lock so a copy never sees part of it
+        synchronized (statistics) {
+            for (RepositoryChange<Transaction> change : changes) {
+                if (change.getBefore() != null) {
+                    statistics.remove(change.getBefore());
+                    if (change.getKind() == RepositoryChange.Kind.REMOVED) {
+                        notified.remove(change.getBefore().getId());
+                    }
+                }
+                Transaction after = change.getAfter();
+                if (after != null) {
+                    if (change.getKind() != RepositoryChange.Kind.LOADED) {
+                        AnomalyResult anomaly = scoreTransaction(after);
+                        if (anomaly != null) {
+                            anomalies.add(anomaly);
+                        }
+                    }
+                    statistics.add(after);
+                }
+                // LOADED carries the overall version, which budget changes also advance
+                if (change.getKind() != RepositoryChange.Kind.LOADED) {
+                    statistics.setVersion(change.getVersion());
+                }
+            }
+        }
+        notifyAnomalies(anomalies);
+        return anomalies;
+    }
+
+    /**
+     * Scores an expense against the tracked statistics of its category in
+     * O(1). Returns null if it is within range, or if the category has too
+     * few expenses to tell.
+     */
+    public AnomalyResult scoreTransaction(Transaction transaction) {
+        if (transaction.getType() != Transaction.TransactionType.EXPENSE || transaction.getCategory() == null) {
+            return null;
+        }
+        SpendingStatistics.Moments moments = statistics.getMoments(transaction.getCategory());
+        if (moments == null || moments.count < MIN_CATEGORY_TRANSACTIONS) {
+            return null;
+        }
+        return scoreAgainst(transaction, transaction.getCategory(), moments);
+    }
+
     public List<AnomalyResult> detectAnomalies(List<Transaction> transactions) {
+        return detectAnomalies(AnalysisContext.of(transactions, Collections.emptyList()));
+    }
+
+    public List<AnomalyResult> detectAnomalies(AnalysisContext context) {
+        return detectAnomalies(context, -1, InsightPipeline.Cancellation.NONE);
+    }
+
+    /**
+     * {@code transactionsVersion} is the version of the tracked transactions
+     * the context was built from, or -1 if it holds other transactions. The
+     * tracked statistics are used in place of a pass over the context only
+     * when they cover that same version and every one of its transactions.
+     */
+    List<AnomalyResult> detectAnomalies(AnalysisContext context, long transactionsVersion,
+                                        InsightPipeline.Cancellation cancellation) {
         List<AnomalyResult> anomalies = new ArrayList<>();
         
-        if (transactions.size() < MIN_TRANSACTIONS) {
+        if (context.getTransactions().size() < MIN_TRANSACTIONS) {
             return anomalies; // Not enough data for meaningful analysis
         }
+        SpendingStatistics tracked = statistics.copyIfCurrent(transactionsVersion, context.getTransactions().size());
 
-        // Group transactions by category for category-specific analysis
-        Map<String, List<Transaction>> byCategory = transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .collect(Collectors.groupingBy(Transaction::getCategory));
-
-        for (Map.Entry<String, List<Transaction>> entry : byCategory.entrySet()) {
+        // Expenses grouped by category for category-specific analysis
+        for (Map.Entry<String, List<Transaction>> entry : context.getExpensesByCategory().entrySet()) {
+            cancellation.checkCancelled();
             String category = entry.getKey();
             List<Transaction> categoryTransactions = entry.getValue();
             
-            if (categoryTransactions.size() >= 5) { // Need minimum transactions per category
-                anomalies.addAll(detectCategoryAnomalies(category, categoryTransactions));
+            if (categoryTransactions.size() >= MIN_CATEGORY_TRANSACTIONS) {
+                anomalies.addAll(detectCategoryAnomalies(category, categoryTransactions, tracked));
             }
         }
 
         // Detect overall spending anomalies
-        anomalies.addAll(detectOverallAnomalies(transactions));
-        
-        // Trigger notifications for detected anomalies
+        anomalies.addAll(detectOverallAnomalies(context, tracked));
+        // Nothing is notified for a stage that stopped
+        cancellation.checkCancelled();
+        notifyAnomalies(anomalies);
+
+        return anomalies;
+    }
+
+    /**
+     * Notifies each transaction once until it is edited again.
+     */
+    private void notifyAnomalies(List<AnomalyResult> anomalies) {
         for (AnomalyResult anomaly : anomalies) {
-            if (anomaly.getSeverity() == AnomalySeverity.HIGH) {
+            if (anomaly.getSeverity() == AnomalySeverity.HIGH && isNewlyFlagged(anomaly.getTransaction())) {
                 notificationManager.showWarning(
                     "Unusual Transaction Detected",
                     String.format("⚠️ Unusual %s transaction: $%.2f in %s", 
@@ -56,67 +155,73 @@ public class AnomalyDetector {
                 );
             }
         }
+    }
 
-        return anomalies;
+    private boolean isNewlyFlagged(Transaction transaction) {
+        if (transaction.getId() == null) {
+            return true;
+        }
+        Long previous = notified.put(transaction.getId(), transaction.getUpdatedAt());
+        return previous == null || previous != transaction.getUpdatedAt();
     }
 
-    private List<AnomalyResult> detectCategoryAnomalies(String category, List<Transaction> transactions) {
+    // tracked is null unless it covers exactly the analyzed transactions
+    private List<AnomalyResult> detectCategoryAnomalies(String category, List<Transaction> transactions,
+                                                        SpendingStatistics tracked) {
         List<AnomalyResult> anomalies = new ArrayList<>();
         
-        // Calculate statistics for the category
-        double[] amounts = transactions.stream()
-            .mapToDouble(Transaction::getAmount)
-            .toArray();
-        
-        double mean = Arrays.stream(amounts).average().orElse(0.0);
-        double stdDev = calculateStandardDeviation(amounts, mean);
+        SpendingStatistics.Moments moments = tracked != null ? tracked.getMoments(category) : null;
+        if (moments == null) {
+            moments = SpendingStatistics.Moments.of(transactions);
+        }
         
         // Find outliers
         for (Transaction transaction : transactions) {
-            double zScore = Math.abs((transaction.getAmount() - mean) / stdDev);
-            
-            if (zScore > ANOMALY_THRESHOLD) {
-                AnomalyType type = transaction.getAmount() > mean ? 
-                    AnomalyType.UNUSUALLY_HIGH : AnomalyType.UNUSUALLY_LOW;
-                
-                AnomalySeverity severity = determineSeverity(zScore);
-                
-                anomalies.add(new AnomalyResult(
-                    transaction,
-                    type,
-                    severity,
-                    category,
-                    zScore,
-                    String.format("Amount $%.2f is %.1f standard deviations from average $%.2f", 
-                        transaction.getAmount(), zScore, mean)
-                ));
+            AnomalyResult anomaly = scoreAgainst(transaction, category, moments);
+            if (anomaly != null) {
+                anomalies.add(anomaly);
             }
         }
         
         return anomalies;
     }
 
-    private List<AnomalyResult> detectOverallAnomalies(List<Transaction> transactions) {
+    private AnomalyResult scoreAgainst(Transaction transaction, String category, SpendingStatistics.Moments moments) {
+        double zScore = moments.zScore(transaction.getAmount());
+        // NaN when every amount is the same, and then nothing stands out
+        if (!(zScore > ANOMALY_THRESHOLD)) {
+            return null;
+        }
+        AnomalyType type = transaction.getAmount() > moments.mean ?
+            AnomalyType.UNUSUALLY_HIGH : AnomalyType.UNUSUALLY_LOW;
+        
+        return new AnomalyResult(
+            transaction,
+            type,
+            determineSeverity(zScore),
+            category,
+            zScore,
+            String.format("Amount $%.2f is %.1f standard deviations from average $%.2f", 
+                transaction.getAmount(), zScore, moments.mean)
+        );
+    }
+
+    private List<AnomalyResult> detectOverallAnomalies(AnalysisContext context, SpendingStatistics tracked) {
         List<AnomalyResult> anomalies = new ArrayList<>();
         
         // Detect rapid spending (multiple transactions in short time)
-        anomalies.addAll(detectRapidSpending(transactions));
+        anomalies.addAll(detectRapidSpending(context.getExpenses()));
         
         // Detect unusual timing (transactions at unusual hours)
-        anomalies.addAll(detectUnusualTiming(transactions));
+        anomalies.addAll(detectUnusualTiming(context.getTransactions(), tracked));
         
         return anomalies;
     }
 
-    private List<AnomalyResult> detectRapidSpending(List<Transaction> transactions) {
+    // Expenses only, in date order
+    private List<AnomalyResult> detectRapidSpending(List<Transaction> sorted) {
         List<AnomalyResult> anomalies = new ArrayList<>();
         
-        // Sort by date
-        List<Transaction> sorted = transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .sorted((t1, t2) -> t1.getDate().compareTo(t2.getDate()))
-            .collect(Collectors.toList());
-        
         // Look for clusters of transactions within 1 hour
         for (int i = 0; i < sorted.size() - 2; i++) {
             Transaction t1 = sorted.get(i);
@@ -142,26 +247,22 @@ public class AnomalyDetector {
         return anomalies;
     }
 
-    private List<AnomalyResult> detectUnusualTiming(List<Transaction> transactions) {
+    private List<AnomalyResult> detectUnusualTiming(List<Transaction> transactions, SpendingStatistics tracked) {
         List<AnomalyResult> anomalies = new ArrayList<>();
         
         // Analyze typical spending hours
-        Map<Integer, Integer> hourCounts = new HashMap<>();
-        for (Transaction transaction : transactions) {
-            Calendar cal = Calendar.getInstance();
-            cal.setTime(transaction.getDate());
-            int hour = cal.get(Calendar.HOUR_OF_DAY);
-            hourCounts.put(hour, hourCounts.getOrDefault(hour, 0) + 1);
-        }
+        int[] hourCounts = tracked != null ? tracked.getHourCounts() : SpendingStatistics.hourCountsOf(transactions);
+        double usualHourCount = UNUSUAL_HOUR_SHARE * transactions.size();
         
         // Find transactions at unusual hours (very late night/early morning)
         for (Transaction transaction : transactions) {
-            Calendar cal = Calendar.getInstance();
-            cal.setTime(transaction.getDate());
-            int hour = cal.get(Calendar.HOUR_OF_DAY);
+            if (transaction.getDate() == null) {
+                continue;
+            }
+            int hour = SpendingStatistics.hourOf(transaction.getDate().getTime());
             
-            // Consider 2 AM - 6 AM as unusual spending hours
-            if (hour >= 2 && hour <= 6 && transaction.getAmount() > 50) {
+            // Consider 2 AM - 6 AM as unusual spending hours, unless this user often spends then
+            if (hour >= 2 && hour <= 6 && transaction.getAmount() > 50 && hourCounts[hour] < usualHourCount) {
                 anomalies.add(new AnomalyResult(
                     transaction,
                     AnomalyType.UNUSUAL_TIMING,
@@ -176,14 +277,6 @@ public class AnomalyDetector {
         return anomalies;
     }
 
-    private double calculateStandardDeviation(double[] values, double mean) {
-        double sum = 0.0;
-        for (double value : values) {
-            sum += Math.pow(value - mean, 2);
-        }
-        return Math.sqrt(sum / values.length);
-    }
-
     private AnomalySeverity determineSeverity(double zScore) {
         if (zScore > 4.0) return AnomalySeverity.CRITICAL;
         if (zScore > 3.0) return AnomalySeverity.HIGH;
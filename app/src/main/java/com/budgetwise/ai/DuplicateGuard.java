@@ -6,7 +6,7 @@ import java.util.*;
 import java.util.concurrent.TimeUnit;
 
 public class DuplicateGuard {
-    private static final long DUPLICATE_TIME_WINDOW = TimeUnit.MINUTES.toMillis(30); // 30 minutes
+    static final long DUPLICATE_TIME_WINDOW = TimeUnit.MINUTES.toMillis(30); // 30 minutes
     private static final double AMOUNT_TOLERANCE = 0.01; // $0.01 tolerance
     
     private final Context context;
@@ -4,7 +4,6 @@ import android.content.Context;
 import com.budgetwise.data.models.Budget;
 import com.budgetwise.data.models.Transaction;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class EfficiencyTracker {
     private final Context context;
@@ -16,12 +15,16 @@ public class EfficiencyTracker {
     }
 
     public List<EfficiencyResult> analyzeBudgetEfficiency(List<Budget> budgets, List<Transaction> transactions) {
+        return analyzeBudgetEfficiency(AnalysisContext.of(transactions, budgets));
+    }
+
+    public List<EfficiencyResult> analyzeBudgetEfficiency(AnalysisContext context) {
         List<EfficiencyResult> results = new ArrayList<>();
         
-        for (Budget budget : budgets) {
+        for (Budget budget : context.getBudgets()) {
             if (!budget.isActive()) continue;
             
-            EfficiencyResult result = analyzeBudget(budget, transactions);
+            EfficiencyResult result = analyzeBudget(budget, context);
             results.add(result);
             
             // Trigger notifications based on efficiency
@@ -31,8 +34,8 @@ public class EfficiencyTracker {
         return results;
     }
 
-    private EfficiencyResult analyzeBudget(Budget budget, List<Transaction> transactions) {
-        long now = System.currentTimeMillis();
+    private EfficiencyResult analyzeBudget(Budget budget, AnalysisContext context) {
+        long now = context.getNow();
         long periodStart = budget.getStartDate();
         long periodEnd = budget.getEndDate();
         
@@ -42,12 +45,7 @@ public class EfficiencyTracker {
         long daysRemaining = Math.max(0, (periodEnd - now) / (24 * 60 * 60 * 1000));
         
         // Calculate spending in this period
-        double actualSpent = transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .filter(t -> t.getCategory().equals(budget.getCategory()))
-            .filter(t -> t.getDate().getTime() >= periodStart && t.getDate().getTime() <= now)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
+        double actualSpent = context.getCategoryExpenses(budget.getCategory(), periodStart, now);
         
         // Calculate efficiency metrics
         double budgetUsedPercent = (actualSpent / budget.getBudgetAmount()) * 100;
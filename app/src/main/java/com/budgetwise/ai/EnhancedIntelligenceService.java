@@ -1,21 +1,41 @@
 package com.budgetwise.ai;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
+import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
-import com.budgetwise.data.models.Budget;
 import com.budgetwise.data.models.Transaction;
 import com.budgetwise.data.repository.BudgetRepository;
+import com.budgetwise.data.repository.RepositorySnapshot;
+import com.budgetwise.data.repository.TransactionColumns;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 public class EnhancedIntelligenceService {
     private static final String TAG = "EnhancedIntelligenceService";
+    private static final String STAGE_CONTEXT = "context";
+    private static final String STAGE_RECURRING = "recurring";
+    private static final String STAGE_ANOMALIES = "anomalies";
+    private static final String STAGE_FORECAST = "forecast";
+    private static final String STAGE_EFFICIENCY = "efficiency";
+    private static final String STAGE_GOALS = "goals";
+    private static final String STAGE_WEEKLY_SUMMARY = "weekly_summary";
+    private static final long CONTEXT_BUDGET_MILLIS = 2000;
+    private static final long ENGINE_BUDGET_MILLIS = 1500;
+    private static final List<String> ENGINE_STAGES = Arrays.asList(STAGE_RECURRING, STAGE_ANOMALIES,
+        STAGE_FORECAST, STAGE_EFFICIENCY, STAGE_GOALS, STAGE_WEEKLY_SUMMARY);
+    // Engines that read the budgets as well as the transactions
+    private static final Set<String> STAGES_READING_BUDGETS = new HashSet<>(
+        Arrays.asList(STAGE_EFFICIENCY, STAGE_WEEKLY_SUMMARY));
     
     private final Context context;
     private final BudgetRepository repository;
     private final ExecutorService executorService;
+    private final ForkJoinPool analysisPool;
     
     // AI Modules
     private final RecurringDetector recurringDetector;
@@ -31,11 +51,23 @@ public class EnhancedIntelligenceService {
     private final MutableLiveData<List<String>> insightsLiveData = new MutableLiveData<>();
     private final MutableLiveData<ForecastEngine.ForecastResult> forecastLiveData = new MutableLiveData<>();
     private final MutableLiveData<SummaryGenerator.WeeklySummary> weeklySummaryLiveData = new MutableLiveData<>();
+    private final MutableLiveData<AnalysisProgress> progressLiveData = new MutableLiveData<>();
+
+    // Scheduling state, guarded by scheduleLock
+    private final Object scheduleLock = new Object();
+    private boolean analysisQueued;
+    private ScheduledRun activeRun;
+    private long latestChangeVersion;
+
+    // Latest result of each engine stage, written from the analysis pool
+    private final Map<String, CachedResult> resultCache = new ConcurrentHashMap<>();
     
     public EnhancedIntelligenceService(Context context, BudgetRepository repository) {
         this.context = context;
         this.repository = repository;
-        this.executorService = Executors.newFixedThreadPool(3);
+        // One thread coordinates runs; the engines themselves run on the pool
+        this.executorService = Executors.newSingleThreadExecutor();
+        this.analysisPool = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors() - 1));
         
         // Initialize AI modules
         this.recurringDetector = new RecurringDetector(context);
@@ -46,166 +78,337 @@ public class EnhancedIntelligenceService {
         this.duplicateGuard = new DuplicateGuard(context);
         this.summaryGenerator = new SummaryGenerator(context);
         this.cooldownDetector = new CooldownDetector(context);
+
+        // The service lives as long as the app, so the listeners are never removed. The
+        // version is read first: a commit in between leaves it older than the data, never newer
+        long trackedVersion = repository.getSnapshot().getTransactionsVersion();
+        List<Transaction> loaded = repository.addTransactionListener(changes -> {
+            anomalyDetector.onTransactionChanges(changes);
+            onDataChanged(changes.get(changes.size() - 1).getVersion());
+        });
+        anomalyDetector.track(loaded, trackedVersion);
+        repository.addBudgetListener(changes -> onDataChanged(changes.get(changes.size() - 1).getVersion()));
     }
 
+    /**
+     * Requests a complete analysis; progress and completion are published
+     * through {@link #getProgressLiveData()}. Requests are merged: one made
+     * while another is queued joins it, and one made while a run over the
+     * current data is in progress is answered by that run. A run whose data
+     * has since changed is cancelled and a fresh one queued.
+     */
     public void runCompleteAnalysis() {
-        executorService.execute(() -> {
-            try {
-                List<Transaction> transactions = repository.getCachedTransactions();
-                List<Budget> budgets = repository.getCachedBudgets();
-                
-                if (transactions.isEmpty()) {
-                    insightsLiveData.postValue(Arrays.asList("Add some transactions to get AI insights!"));
+        synchronized (scheduleLock) {
+            if (analysisQueued) {
+                return;
+            }
+            if (activeRun != null) {
+                // A run still reading its data will see everything committed so far
+                if (activeRun.dataVersion < 0 || activeRun.dataVersion >= repository.getDataVersion()) {
                     return;
                 }
-                
-                List<String> allInsights = new ArrayList<>();
-                
-                // Run all AI analyses
-                analyzeRecurringPatterns(transactions, allInsights);
-                analyzeAnomalies(transactions, allInsights);
-                generateForecast(transactions, allInsights);
-                analyzeBudgetEfficiency(budgets, transactions, allInsights);
-                generateGoalRecommendations(transactions, allInsights);
-                generateWeeklySummary(transactions, budgets);
-                
-                // Update live data
-                insightsLiveData.postValue(allInsights);
-                
-                Log.d(TAG, "Complete AI analysis finished with " + allInsights.size() + " insights");
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error in complete analysis", e);
-                insightsLiveData.postValue(Arrays.asList("Analysis temporarily unavailable"));
+                activeRun.cancel();
             }
-        });
+            analysisQueued = true;
+        }
+        progressLiveData.postValue(new AnalysisProgress(AnalysisProgress.State.QUEUED, 0, 0, 0, 0, null));
+        executorService.execute(this::runScheduledAnalysis);
     }
 
-    private void analyzeRecurringPatterns(List<Transaction> transactions, List<String> insights) {
+    /**
+     * Repository changes arrive on the main thread. Only a run in progress
+     * over older data is affected; nothing is started otherwise.
+     */
+    private void onDataChanged(long version) {
+        boolean stale;
+        synchronized (scheduleLock) {
+            latestChangeVersion = Math.max(latestChangeVersion, version);
+            stale = activeRun != null && activeRun.dataVersion >= 0 && version > activeRun.dataVersion;
+        }
+        if (stale) {
+            runCompleteAnalysis();
+        }
+    }
+
+    private void runScheduledAnalysis() {
+        ScheduledRun run = new ScheduledRun();
+        synchronized (scheduleLock) {
+            analysisQueued = false;
+            activeRun = run;
+        }
+        long start = SystemClock.elapsedRealtime();
         try {
-            List<RecurringDetector.RecurringPattern> patterns = recurringDetector.detectRecurringTransactions(transactions);
-            
-            for (RecurringDetector.RecurringPattern pattern : patterns) {
-                if (!pattern.isMarkedAsRecurring()) {
-                    insights.add(String.format("🔁 Detected recurring pattern: %s every %d days ($%.2f)",
-                        pattern.getDescription(), pattern.getIntervalDays(), pattern.getAmount()));
-                }
+            // Oldest first, so the context is built without sorting
+            RepositorySnapshot snapshot = repository.getCompleteSnapshotByDate();
+            TransactionColumns columns = repository.getTransactionColumns();
+            if (repository.getDataVersion() != snapshot.getVersion()) {
+                // Changed in between; the context derives columns of its own
+                columns = null;
             }
-            
-            if (patterns.size() > 3) {
-                insights.add(String.format("📅 You have %d recurring transaction patterns. Consider automating these!", patterns.size()));
+            boolean changedSinceRead;
+            synchronized (scheduleLock) {
+                run.dataVersion = snapshot.getVersion();
+                changedSinceRead = latestChangeVersion > run.dataVersion;
+            }
+            if (changedSinceRead) {
+                runCompleteAnalysis();
+            }
+            if (!run.cancelled) {
+                analyze(run, snapshot, columns, start);
             }
-            
         } catch (Exception e) {
-            Log.e(TAG, "Error analyzing recurring patterns", e);
+            Log.e(TAG, "Error in complete analysis", e);
+            insightsLiveData.postValue(Arrays.asList("Analysis temporarily unavailable"));
+            progressLiveData.postValue(new AnalysisProgress(AnalysisProgress.State.FAILED, 0, 0, 0,
+                SystemClock.elapsedRealtime() - start, null));
+        } finally {
+            synchronized (scheduleLock) {
+                if (activeRun == run) {
+                    activeRun = null;
+                }
+            }
+        }
+        if (run.cancelled) {
+            Log.d(TAG, "Analysis of version " + run.dataVersion + " superseded");
         }
     }
 
-    private void analyzeAnomalies(List<Transaction> transactions, List<String> insights) {
-        try {
-            List<AnomalyDetector.AnomalyResult> anomalies = anomalyDetector.detectAnomalies(transactions);
-            
-            // Add high-priority anomalies to insights
-            for (AnomalyDetector.AnomalyResult anomaly : anomalies) {
-                if (anomaly.getSeverity() == AnomalyDetector.AnomalySeverity.HIGH ||
-                    anomaly.getSeverity() == AnomalyDetector.AnomalySeverity.CRITICAL) {
-                    insights.add(String.format("⚠️ %s", anomaly.getDescription()));
-                }
-            }
-            
-            if (anomalies.size() > 5) {
-                insights.add("🔍 Multiple unusual spending patterns detected. Review your recent transactions.");
+    private void analyze(ScheduledRun run, RepositorySnapshot snapshot, TransactionColumns columns,
+                         long start) throws InterruptedException {
+        if (snapshot.getTransactions().isEmpty()) {
+            insightsLiveData.postValue(Arrays.asList("Add some transactions to get AI insights!"));
+            progressLiveData.postValue(new AnalysisProgress(AnalysisProgress.State.COMPLETED, 0, 0, 0,
+                SystemClock.elapsedRealtime() - start, null));
+            return;
+        }
+
+        InsightPipeline pipeline = buildPipeline(snapshot, columns, System.currentTimeMillis());
+        run.setPipelineRun(pipeline.start(analysisPool, (stage, finished, total) -> {
+            if (!run.cancelled) {
+                progressLiveData.postValue(new AnalysisProgress(AnalysisProgress.State.RUNNING,
+                    finished, total, 0, SystemClock.elapsedRealtime() - start, null));
             }
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error analyzing anomalies", e);
+        }));
+        InsightPipeline.Results results = run.pipelineRun.await();
+        if (run.cancelled) {
+            // The run that replaced this one publishes instead
+            return;
+        }
+        // The context is null, not missing, when every engine was served from the cache
+        if (!results.isDone(STAGE_CONTEXT)) {
+            Log.w(TAG, "Analysis produced nothing: " + results);
+            insightsLiveData.postValue(Arrays.asList("Analysis temporarily unavailable"));
+            progressLiveData.postValue(new AnalysisProgress(AnalysisProgress.State.FAILED, 0, 0, 0,
+                SystemClock.elapsedRealtime() - start, results.getIncomplete()));
+            return;
         }
+        publish(results, SystemClock.elapsedRealtime() - start);
     }
 
-    private void generateForecast(List<Transaction> transactions, List<String> insights) {
-        try {
-            ForecastEngine.ForecastResult forecast = forecastEngine.generateForecast(transactions);
+    private void publish(InsightPipeline.Results results, long durationMillis) {
+        // Whatever finished in time is posted; missing engines are logged
+        List<String> allInsights = new ArrayList<>();
+        addInsights(results.get(STAGE_RECURRING), allInsights);
+        addInsights(results.get(STAGE_ANOMALIES), allInsights);
+        ForecastEngine.ForecastResult forecast = results.get(STAGE_FORECAST);
+        if (forecast != null) {
             forecastLiveData.postValue(forecast);
-            
-            // Add forecast insights
-            if (forecast.getForecastSavings() < 0) {
-                insights.add(String.format("📉 Forecast: Projected deficit of $%.2f next month", 
-                    Math.abs(forecast.getForecastSavings())));
-            } else if (forecast.getForecastSavings() > 1000) {
-                insights.add(String.format("💰 Forecast: Projected savings of $%.2f next month!", 
-                    forecast.getForecastSavings()));
+            allInsights.addAll(describeForecast(forecast));
+        }
+        addInsights(results.get(STAGE_EFFICIENCY), allInsights);
+        addInsights(results.get(STAGE_GOALS), allInsights);
+        SummaryGenerator.WeeklySummary summary = results.get(STAGE_WEEKLY_SUMMARY);
+        if (summary != null) {
+            weeklySummaryLiveData.postValue(summary);
+        }
+        
+        // Update live data
+        insightsLiveData.postValue(allInsights);
+        
+        progressLiveData.postValue(new AnalysisProgress(AnalysisProgress.State.COMPLETED,
+            results.getFinishedCount(), results.getStageCount(), allInsights.size(), durationMillis,
+            results.getIncomplete()));
+        
+        if (results.isComplete()) {
+            Log.d(TAG, "Complete AI analysis finished with " + allInsights.size() + " insights, " + results);
+        } else {
+            Log.w(TAG, "Partial AI analysis with " + allInsights.size() + " insights, " + results);
+        }
+    }
+
+    /**
+     * The context is built first; every engine reads only the context, so
+     * all of them run in parallel once it is ready.
+     *
+     * An engine whose inputs are unchanged since its cached result returns
+     * that result instead, without recomputing or notifying again. Inputs
+     * are the transactions, the budgets for engines that read them, and the
+     * calendar day their windows end on. When every engine is cached the
+     * context is not built at all.
+     *
+     * The context build and the recurring and anomaly engines, whose work
+     * grows with the history, stop at their cancellation checks when the run
+     * is cancelled or their stage times out. The other engines read only the
+     * context's totals and finish quickly.
+     */
+    private InsightPipeline buildPipeline(RepositorySnapshot snapshot, TransactionColumns columns, long now) {
+        long day = AnalysisContext.dayNumber(now);
+        Map<String, CachedResult> hits = new HashMap<>();
+        for (Map.Entry<String, CachedResult> entry : resultCache.entrySet()) {
+            if (entry.getValue().matches(snapshot, day, STAGES_READING_BUDGETS.contains(entry.getKey()))) {
+                hits.put(entry.getKey(), entry.getValue());
             }
-            
-            switch (forecast.getTrend()) {
-                case INCREASING:
-                    insights.add("📈 Your spending trend is increasing. Consider reviewing your budget.");
-                    break;
-                case DECREASING:
-                    insights.add("📉 Great! Your spending trend is decreasing.");
-                    break;
+        }
+        boolean contextNeeded = !hits.keySet().containsAll(ENGINE_STAGES);
+        if (!hits.isEmpty()) {
+            Log.d(TAG, "Reusing cached " + hits.keySet());
+        }
+
+        return new InsightPipeline()
+            .add(STAGE_CONTEXT, CONTEXT_BUDGET_MILLIS, in -> contextNeeded
+                ? AnalysisContext.build(snapshot.getTransactions(), snapshot.getBudgets(), columns, now, in)
+                : null)
+            .add(STAGE_RECURRING, ENGINE_BUDGET_MILLIS, cached(STAGE_RECURRING, hits, snapshot, day,
+                in -> analyzeRecurringPatterns(in.get(STAGE_CONTEXT), in)), STAGE_CONTEXT)
+            .add(STAGE_ANOMALIES, ENGINE_BUDGET_MILLIS, cached(STAGE_ANOMALIES, hits, snapshot, day,
+                in -> analyzeAnomalies(in.get(STAGE_CONTEXT), snapshot.getTransactionsVersion(), in)), STAGE_CONTEXT)
+            .add(STAGE_FORECAST, ENGINE_BUDGET_MILLIS, cached(STAGE_FORECAST, hits, snapshot, day,
+                in -> forecastEngine.generateForecast((AnalysisContext) in.get(STAGE_CONTEXT))), STAGE_CONTEXT)
+            .add(STAGE_EFFICIENCY, ENGINE_BUDGET_MILLIS, cached(STAGE_EFFICIENCY, hits, snapshot, day,
+                in -> analyzeBudgetEfficiency(in.get(STAGE_CONTEXT))), STAGE_CONTEXT)
+            .add(STAGE_GOALS, ENGINE_BUDGET_MILLIS, cached(STAGE_GOALS, hits, snapshot, day,
+                in -> generateGoalRecommendations(in.get(STAGE_CONTEXT))), STAGE_CONTEXT)
+            .add(STAGE_WEEKLY_SUMMARY, ENGINE_BUDGET_MILLIS, cached(STAGE_WEEKLY_SUMMARY, hits, snapshot, day,
+                in -> summaryGenerator.generateWeeklySummary((AnalysisContext) in.get(STAGE_CONTEXT))), STAGE_CONTEXT);
+    }
+
+    /**
+     * Returns the hit for {@code name} if there is one, else runs the engine
+     * and caches what it returns. The hits are decided once per run, so a
+     * stage never finds the context missing.
+     */
+    private InsightPipeline.Stage cached(String name, Map<String, CachedResult> hits, RepositorySnapshot snapshot,
+                                         long day, InsightPipeline.Stage engine) {
+        CachedResult hit = hits.get(name);
+        if (hit != null) {
+            return in -> hit.value;
+        }
+        return in -> {
+            Object value = engine.run(in);
+            resultCache.put(name, new CachedResult(snapshot, day, value));
+            return value;
+        };
+    }
+
+    private static void addInsights(List<String> stageInsights, List<String> insights) {
+        if (stageInsights != null) {
+            insights.addAll(stageInsights);
+        }
+    }
+
+    private List<String> analyzeRecurringPatterns(AnalysisContext analysis, InsightPipeline.Cancellation cancellation) {
+        List<String> insights = new ArrayList<>();
+        List<RecurringDetector.RecurringPattern> patterns =
+            recurringDetector.detectRecurringTransactions(analysis, cancellation);
+        
+        for (RecurringDetector.RecurringPattern pattern : patterns) {
+            if (!pattern.isMarkedAsRecurring()) {
+                insights.add(String.format("🔁 Detected recurring pattern: %s every %d days ($%.2f)",
+                    pattern.getDescription(), pattern.getIntervalDays(), pattern.getAmount()));
             }
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error generating forecast", e);
         }
+        
+        if (patterns.size() > 3) {
+            insights.add(String.format("📅 You have %d recurring transaction patterns. Consider automating these!", patterns.size()));
+        }
+        return insights;
     }
 
-    private void analyzeBudgetEfficiency(List<Budget> budgets, List<Transaction> transactions, List<String> insights) {
-        try {
-            List<EfficiencyTracker.EfficiencyResult> results = efficiencyTracker.analyzeBudgetEfficiency(budgets, transactions);
-            
-            for (EfficiencyTracker.EfficiencyResult result : results) {
-                switch (result.getStatus()) {
-                    case OVER_BUDGET:
-                        insights.add(String.format("🚨 %s budget exceeded by $%.2f", 
-                            result.getCategory(), result.getActualSpent() - result.getBudgetAmount()));
-                        break;
-                    case SPENDING_TOO_FAST:
-                        insights.add(String.format("⚡ %s: %.0f%% used with %d days remaining", 
-                            result.getCategory(), result.getBudgetUsedPercent(), result.getDaysRemaining()));
-                        break;
-                    case ON_TRACK:
-                        if (result.getEfficiencyScore() > 90) {
-                            insights.add(String.format("✅ %s budget is perfectly on track!", result.getCategory()));
-                        }
-                        break;
-                }
+    private List<String> analyzeAnomalies(AnalysisContext analysis, long transactionsVersion,
+                                          InsightPipeline.Cancellation cancellation) {
+        List<String> insights = new ArrayList<>();
+        List<AnomalyDetector.AnomalyResult> anomalies =
+            anomalyDetector.detectAnomalies(analysis, transactionsVersion, cancellation);
+        
+        // Add high-priority anomalies to insights
+        for (AnomalyDetector.AnomalyResult anomaly : anomalies) {
+            if (anomaly.getSeverity() == AnomalyDetector.AnomalySeverity.HIGH ||
+                anomaly.getSeverity() == AnomalyDetector.AnomalySeverity.CRITICAL) {
+                insights.add(String.format("⚠️ %s", anomaly.getDescription()));
             }
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error analyzing budget efficiency", e);
         }
+        
+        if (anomalies.size() > 5) {
+            insights.add("🔍 Multiple unusual spending patterns detected. Review your recent transactions.");
+        }
+        return insights;
     }
 
-    private void generateGoalRecommendations(List<Transaction> transactions, List<String> insights) {
-        try {
-            List<GoalRecommender.GoalRecommendation> recommendations = goalRecommender.generateGoalRecommendations(transactions);
-            
-            // Add high-priority goal recommendations
-            for (GoalRecommender.GoalRecommendation rec : recommendations) {
-                if (rec.getPriority() == GoalRecommender.GoalPriority.HIGH) {
-                    insights.add(String.format("🎯 Goal suggestion: %s", rec.getTitle()));
-                }
+    private List<String> describeForecast(ForecastEngine.ForecastResult forecast) {
+        List<String> insights = new ArrayList<>();
+        
+        // Add forecast insights
+        if (forecast.getForecastSavings() < 0) {
+            insights.add(String.format("📉 Forecast: Projected deficit of $%.2f next month", 
+                Math.abs(forecast.getForecastSavings())));
+        } else if (forecast.getForecastSavings() > 1000) {
+            insights.add(String.format("💰 Forecast: Projected savings of $%.2f next month!", 
+                forecast.getForecastSavings()));
+        }
+        
+        switch (forecast.getTrend()) {
+            case INCREASING:
+                insights.add("📈 Your spending trend is increasing. Consider reviewing your budget.");
+                break;
+            case DECREASING:
+                insights.add("📉 Great! Your spending trend is decreasing.");
+                break;
+        }
+        return insights;
+    }
+
+    private List<String> analyzeBudgetEfficiency(AnalysisContext analysis) {
+        List<String> insights = new ArrayList<>();
+        List<EfficiencyTracker.EfficiencyResult> results = efficiencyTracker.analyzeBudgetEfficiency(analysis);
+        
+        for (EfficiencyTracker.EfficiencyResult result : results) {
+            switch (result.getStatus()) {
+                case OVER_BUDGET:
+                    insights.add(String.format("🚨 %s budget exceeded by $%.2f", 
+                        result.getCategory(), result.getActualSpent() - result.getBudgetAmount()));
+                    break;
+                case SPENDING_TOO_FAST:
+                    insights.add(String.format("⚡ %s: %.0f%% used with %d days remaining", 
+                        result.getCategory(), result.getBudgetUsedPercent(), result.getDaysRemaining()));
+                    break;
+                case ON_TRACK:
+                    if (result.getEfficiencyScore() > 90) {
+                        insights.add(String.format("✅ %s budget is perfectly on track!", result.getCategory()));
+                    }
+                    break;
             }
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error generating goal recommendations", e);
         }
+        return insights;
     }
 
-    private void generateWeeklySummary(List<Transaction> transactions, List<Budget> budgets) {
-        try {
-            SummaryGenerator.WeeklySummary summary = summaryGenerator.generateWeeklySummary(transactions, budgets);
-            weeklySummaryLiveData.postValue(summary);
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error generating weekly summary", e);
+    private List<String> generateGoalRecommendations(AnalysisContext analysis) {
+        List<String> insights = new ArrayList<>();
+        List<GoalRecommender.GoalRecommendation> recommendations = goalRecommender.generateGoalRecommendations(analysis);
+        
+        // Add high-priority goal recommendations
+        for (GoalRecommender.GoalRecommendation rec : recommendations) {
+            if (rec.getPriority() == GoalRecommender.GoalPriority.HIGH) {
+                insights.add(String.format("🎯 Goal suggestion: %s", rec.getTitle()));
+            }
         }
+        return insights;
     }
 
     // Public methods for specific AI features
     public DuplicateGuard.DuplicateCheckResult checkForDuplicate(Transaction newTransaction) {
-        List<Transaction> existingTransactions = repository.getCachedTransactions();
+        long time = newTransaction.getDate().getTime();
+        List<Transaction> existingTransactions = repository.getTransactionsBetween(
+            time - DuplicateGuard.DUPLICATE_TIME_WINDOW, time + DuplicateGuard.DUPLICATE_TIME_WINDOW);
         return duplicateGuard.checkForDuplicate(newTransaction, existingTransactions);
     }
 
@@ -288,4 +491,79 @@ public class EnhancedIntelligenceService {
     public MutableLiveData<SummaryGenerator.WeeklySummary> getWeeklySummaryLiveData() {
         return weeklySummaryLiveData;
     }
+
+    public LiveData<AnalysisProgress> getProgressLiveData() {
+        return progressLiveData;
+    }
+
+    private static final class CachedResult {
+        final long transactionsVersion;
+        final long budgetsVersion;
+        final long day;
+        final Object value;
+
+        CachedResult(RepositorySnapshot snapshot, long day, Object value) {
+            this.transactionsVersion = snapshot.getTransactionsVersion();
+            this.budgetsVersion = snapshot.getBudgetsVersion();
+            this.day = day;
+            this.value = value;
+        }
+
+        boolean matches(RepositorySnapshot snapshot, long day, boolean readsBudgets) {
+            return this.day == day
+                && transactionsVersion == snapshot.getTransactionsVersion()
+                && (!readsBudgets || budgetsVersion == snapshot.getBudgetsVersion());
+        }
+    }
+
+    private static final class ScheduledRun {
+        // Version of the data being analyzed, or -1 while it is still being read
+        volatile long dataVersion = -1;
+        volatile boolean cancelled;
+        volatile InsightPipeline.Run pipelineRun;
+
+        void cancel() {
+            cancelled = true;
+            InsightPipeline.Run current = pipelineRun;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        void setPipelineRun(InsightPipeline.Run run) {
+            pipelineRun = run;
+            // Cancelled before the pipeline existed
+            if (cancelled) {
+                run.cancel();
+            }
+        }
+    }
+
+    public static class AnalysisProgress {
+        public enum State {
+            QUEUED, RUNNING, COMPLETED, FAILED
+        }
+
+        public final State state;
+        public final int stagesFinished;
+        public final int stagesTotal;
+        public final int insightCount;
+        public final long durationMillis;
+        // Stages that did not finish, with the reason; empty or null if none
+        public final List<String> incompleteStages;
+
+        AnalysisProgress(State state, int stagesFinished, int stagesTotal, int insightCount,
+                         long durationMillis, List<String> incompleteStages) {
+            this.state = state;
+            this.stagesFinished = stagesFinished;
+            this.stagesTotal = stagesTotal;
+            this.insightCount = insightCount;
+            this.durationMillis = durationMillis;
+            this.incompleteStages = incompleteStages;
+        }
+
+        public boolean isInProgress() {
+            return state == State.QUEUED || state == State.RUNNING;
+        }
+    }
 }
\ No newline at end of file
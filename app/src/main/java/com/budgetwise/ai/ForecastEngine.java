@@ -3,8 +3,8 @@ package com.budgetwise.ai;
 import android.content.Context;
 import android.util.Log;
 import com.budgetwise.data.models.Transaction;
+import com.budgetwise.data.repository.TransactionColumns;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class ForecastEngine {
     private static final String TAG = "ForecastEngine";
@@ -20,24 +20,22 @@ public class ForecastEngine {
     }
 
     public ForecastResult generateForecast(List<Transaction> transactions) {
-        long now = System.currentTimeMillis();
-        long analysisStart = now - (ANALYSIS_DAYS * 24 * 60 * 60 * 1000L);
-        
-        // Filter recent transactions for analysis
-        List<Transaction> recentTransactions = transactions.stream()
-            .filter(t -> t.getDate().getTime() >= analysisStart)
-            .collect(Collectors.toList());
+        return generateForecast(AnalysisContext.of(transactions, Collections.emptyList()));
+    }
+
+    public ForecastResult generateForecast(AnalysisContext context) {
+        AnalysisContext.Window analysis = context.getWindow(ANALYSIS_DAYS);
 
-        if (recentTransactions.size() < 10) {
+        if (analysis.size() < 10) {
             return new ForecastResult(0, 0, 0, ForecastTrend.STABLE, "Insufficient data for forecast");
         }
 
         // Calculate spending patterns
-        double avgDailySpending = calculateAverageDaily(recentTransactions, Transaction.TransactionType.EXPENSE);
-        double avgDailyIncome = calculateAverageDaily(recentTransactions, Transaction.TransactionType.INCOME);
+        double avgDailySpending = analysis.getExpenses() / ANALYSIS_DAYS;
+        double avgDailyIncome = analysis.getIncome() / ANALYSIS_DAYS;
         
         // Apply trend analysis
-        ForecastTrend trend = analyzeTrend(recentTransactions);
+        ForecastTrend trend = analyzeTrend(analysis, context.getWindow(ANALYSIS_DAYS / 2));
         double trendMultiplier = getTrendMultiplier(trend);
         
         // Generate forecasts
@@ -52,38 +50,16 @@ public class ForecastEngine {
         return new ForecastResult(forecastSpending, forecastIncome, forecastSavings, trend, insights);
     }
 
-    private double calculateAverageDaily(List<Transaction> transactions, Transaction.TransactionType type) {
-        List<Transaction> filtered = transactions.stream()
-            .filter(t -> t.getType() == type)
-            .collect(Collectors.toList());
-        
-        if (filtered.isEmpty()) return 0;
-        
-        double total = filtered.stream().mapToDouble(Transaction::getAmount).sum();
-        return total / ANALYSIS_DAYS;
-    }
-
-    private ForecastTrend analyzeTrend(List<Transaction> transactions) {
+    private ForecastTrend analyzeTrend(AnalysisContext.Window analysis, AnalysisContext.Window secondHalf) {
         // Split into two periods and compare
-        long now = System.currentTimeMillis();
-        long midPoint = now - (ANALYSIS_DAYS * 24 * 60 * 60 * 1000L / 2);
-        
-        List<Transaction> firstHalf = transactions.stream()
-            .filter(t -> t.getDate().getTime() < midPoint)
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .collect(Collectors.toList());
-        
-        List<Transaction> secondHalf = transactions.stream()
-            .filter(t -> t.getDate().getTime() >= midPoint)
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .collect(Collectors.toList());
+        int firstHalfCount = analysis.getExpenseCount() - secondHalf.getExpenseCount();
         
-        if (firstHalf.isEmpty() || secondHalf.isEmpty()) {
+        if (firstHalfCount == 0 || secondHalf.getExpenseCount() == 0) {
             return ForecastTrend.STABLE;
         }
         
-        double firstHalfAvg = firstHalf.stream().mapToDouble(Transaction::getAmount).sum() / (ANALYSIS_DAYS / 2);
-        double secondHalfAvg = secondHalf.stream().mapToDouble(Transaction::getAmount).sum() / (ANALYSIS_DAYS / 2);
+        double firstHalfAvg = (analysis.getExpenses() - secondHalf.getExpenses()) / (ANALYSIS_DAYS / 2);
+        double secondHalfAvg = secondHalf.getExpenses() / (ANALYSIS_DAYS / 2);
         
         double changePercent = ((secondHalfAvg - firstHalfAvg) / firstHalfAvg) * 100;
         
@@ -151,21 +127,13 @@ public class ForecastEngine {
     }
 
     public Map<String, Double> getCategoryForecasts(List<Transaction> transactions) {
+        TransactionColumns columns = TransactionColumns.of(transactions);
+        long[] centsByCategory = columns.sumCentsByCategory(TransactionColumns.TYPE_EXPENSE, 0, columns.size());
+
         Map<String, Double> forecasts = new HashMap<>();
-        
-        // Group by category and calculate forecasts
-        Map<String, List<Transaction>> byCategory = transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .collect(Collectors.groupingBy(Transaction::getCategory));
-        
-        for (Map.Entry<String, List<Transaction>> entry : byCategory.entrySet()) {
-            String category = entry.getKey();
-            List<Transaction> categoryTransactions = entry.getValue();
-            
-            double avgDaily = calculateAverageDaily(categoryTransactions, Transaction.TransactionType.EXPENSE);
-            double forecast = avgDaily * FORECAST_DAYS;
-            
-            forecasts.put(category, forecast);
+        for (Map.Entry<String, Double> entry : columns.toCategoryAmounts(centsByCategory).entrySet()) {
+            double avgDaily = entry.getValue() / ANALYSIS_DAYS;
+            forecasts.put(entry.getKey(), avgDaily * FORECAST_DAYS);
         }
         
         return forecasts;
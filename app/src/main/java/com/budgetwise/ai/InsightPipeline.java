@@ -0,0 +1,357 @@
+package com.budgetwise.ai;
+
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs analysis stages as a dependency graph on a ForkJoinPool. A stage is
+ * started as soon as every stage it reads has finished, so independent
+ * engines run side by side and a run takes as long as its slowest path
+ * instead of the sum of all stages.
+ *
+ * Each stage has its own time budget, and its deadline is the latest
+ * deadline among its inputs plus that budget. A stage that fails or misses
+ * its deadline is left out of the results together with everything
+ * downstream of it; the other stages are unaffected. Stages hand their
+ * {@link Inputs} to the engines as a {@link Cancellation}, and the engines
+ * check it between units of work, so a stage that timed out, or whose run
+ * was cancelled, stops early instead of finishing work nobody waits for.
+ * Running stages are never interrupted; they stop only at those checks.
+ */
+final class InsightPipeline {
+    private static final String TAG = "InsightPipeline";
+
+    private static final int PENDING = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+    private static final int FAILED = 3;
+    private static final int TIMED_OUT = 4;
+    private static final int CANCELLED = 5;
+
+    interface Stage {
+        Object run(Inputs inputs) throws Exception;
+    }
+
+    /**
+     * Lets engine code stop between units of work once its stage has timed
+     * out or its run was cancelled.
+     */
+    interface Cancellation {
+        Cancellation NONE = () -> { };
+
+        /**
+         * Throws CancellationException if the work should stop.
+         */
+        void checkCancelled();
+    }
+
+    interface ProgressListener {
+        void onStageFinished(String stage, int finished, int total);
+    }
+
+    // In insertion order, which is a topological order since inputs must exist first
+    private final Map<String, StageSpec> stages = new LinkedHashMap<>();
+
+    /**
+     * Adds a stage reading the results of {@code inputs}, which must have
+     * been added already.
+     */
+    InsightPipeline add(String name, long budgetMillis, Stage stage, String... inputs) {
+        if (stages.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate stage " + name);
+        }
+        StageSpec spec = new StageSpec(name, budgetMillis, stage, inputs);
+        for (String input : inputs) {
+            StageSpec dependency = stages.get(input);
+            if (dependency == null) {
+                throw new IllegalArgumentException("Stage " + name + " reads unknown stage " + input);
+            }
+            dependency.dependents.add(spec);
+        }
+        stages.put(name, spec);
+        return this;
+    }
+
+    Run start(ForkJoinPool pool) {
+        return start(pool, null);
+    }
+
+    /**
+     * Starts a run that reports each stage finishing in time to
+     * {@code listener}, on the thread that ran the stage.
+     */
+    Run start(ForkJoinPool pool, ProgressListener listener) {
+        Run run = new Run(pool, listener);
+        run.start();
+        return run;
+    }
+
+    private static final class StageSpec {
+        final String name;
+        final long budgetMillis;
+        final Stage stage;
+        final String[] inputs;
+        final List<StageSpec> dependents = new ArrayList<>();
+
+        StageSpec(String name, long budgetMillis, Stage stage, String[] inputs) {
+            this.name = name;
+            this.budgetMillis = budgetMillis;
+            this.stage = stage;
+            this.inputs = inputs;
+        }
+    }
+
+    private static final class StageRun {
+        final StageSpec spec;
+        final long deadline;
+        final AtomicInteger state = new AtomicInteger(PENDING);
+        final AtomicInteger pendingInputs;
+        final CountDownLatch finished = new CountDownLatch(1);
+        volatile ForkJoinTask<?> task;
+        volatile Object result;
+        volatile long millis;
+
+        StageRun(StageSpec spec, long deadline) {
+            this.spec = spec;
+            this.deadline = deadline;
+            this.pendingInputs = new AtomicInteger(spec.inputs.length);
+        }
+
+        /**
+         * Moves a stage that has not finished to {@code state}. Returns false
+         * if it had already finished. Cancelling the task only keeps a stage
+         * that has not started from running; one already running sees the
+         * new state at its next cancellation check.
+         */
+        boolean stop(int state) {
+            if (this.state.compareAndSet(PENDING, state) || this.state.compareAndSet(RUNNING, state)) {
+                if (task != null) {
+                    task.cancel(false);
+                }
+                finished.countDown();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * One execution of the pipeline.
+     */
+    final class Run {
+        private final ForkJoinPool pool;
+        private final ProgressListener listener;
+        private final Map<String, StageRun> runs = new HashMap<>();
+        private final AtomicInteger finishedCount = new AtomicInteger();
+        private volatile boolean cancelled;
+
+        private Run(ForkJoinPool pool, ProgressListener listener) {
+            this.pool = pool;
+            this.listener = listener;
+        }
+
+        private void start() {
+            long now = SystemClock.elapsedRealtime();
+            for (StageSpec spec : stages.values()) {
+                long inputsDeadline = now;
+                for (String input : spec.inputs) {
+                    inputsDeadline = Math.max(inputsDeadline, runs.get(input).deadline);
+                }
+                runs.put(spec.name, new StageRun(spec, inputsDeadline + spec.budgetMillis));
+            }
+            for (StageRun stageRun : runs.values()) {
+                if (stageRun.spec.inputs.length == 0) {
+                    submit(stageRun);
+                }
+            }
+        }
+
+        private void submit(StageRun stageRun) {
+            if (!cancelled && stageRun.state.compareAndSet(PENDING, RUNNING)) {
+                stageRun.task = pool.submit(() -> execute(stageRun));
+            }
+        }
+
+        private void execute(StageRun stageRun) {
+            long start = SystemClock.elapsedRealtime();
+            try {
+                Inputs inputs = new Inputs(this, stageRun);
+                inputs.checkCancelled();
+                stageRun.result = stageRun.spec.stage.run(inputs);
+                if (stageRun.state.compareAndSet(RUNNING, DONE)) {
+                    stageRun.millis = SystemClock.elapsedRealtime() - start;
+                    stageRun.finished.countDown();
+                    if (listener != null) {
+                        listener.onStageFinished(stageRun.spec.name, finishedCount.incrementAndGet(), runs.size());
+                    }
+                    for (StageSpec dependent : stageRun.spec.dependents) {
+                        StageRun next = runs.get(dependent.name);
+                        if (next.pendingInputs.decrementAndGet() == 0) {
+                            submit(next);
+                        }
+                    }
+                }
+            } catch (CancellationException e) {
+                // Past its deadline, or stopped from outside; stop() keeps a state already set
+                stageRun.stop(TIMED_OUT);
+            } catch (Exception e) {
+                Log.e(TAG, "Stage " + stageRun.spec.name + " failed", e);
+                stageRun.stop(FAILED);
+            }
+        }
+
+        /**
+         * Stops the run. Stages not started yet never start, and running ones
+         * stop at their next cancellation check; until then they keep their
+         * pool thread.
+         */
+        void cancel() {
+            cancelled = true;
+            for (StageRun stageRun : runs.values()) {
+                stageRun.stop(CANCELLED);
+            }
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Waits for each stage until it finishes or its deadline passes, and
+         * returns whatever finished in time. Blocks, so never call from the
+         * main thread.
+         */
+        Results await() throws InterruptedException {
+            Results results = new Results();
+            for (StageSpec spec : stages.values()) {
+                StageRun stageRun = runs.get(spec.name);
+                boolean runnable = inputsDone(spec);
+                if (!cancelled && runnable) {
+                    long remaining = stageRun.deadline - SystemClock.elapsedRealtime();
+                    if (remaining > 0) {
+                        stageRun.finished.await(remaining, TimeUnit.MILLISECONDS);
+                    }
+                }
+                stageRun.stop(runnable ? TIMED_OUT : CANCELLED);
+                switch (stageRun.state.get()) {
+                    case DONE:
+                        results.values.put(spec.name, stageRun.result);
+                        results.millis.put(spec.name, stageRun.millis);
+                        break;
+                    case TIMED_OUT:
+                        results.incomplete.add(spec.name + " (timed out)");
+                        break;
+                    case FAILED:
+                        results.incomplete.add(spec.name + " (failed)");
+                        break;
+                    default:
+                        results.incomplete.add(spec.name + (cancelled ? " (cancelled)" : " (skipped)"));
+                        break;
+                }
+            }
+            return results;
+        }
+
+        private boolean inputsDone(StageSpec spec) {
+            for (String input : spec.inputs) {
+                if (runs.get(input).state.get() != DONE) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * What a running stage sees: the results of the stages it declared as
+     * inputs, and whether it should stop.
+     */
+    static final class Inputs implements Cancellation {
+        private final Run run;
+        private final StageRun stageRun;
+
+        private Inputs(Run run, StageRun stageRun) {
+            this.run = run;
+            this.stageRun = stageRun;
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> T get(String name) {
+            for (String input : stageRun.spec.inputs) {
+                if (input.equals(name)) {
+                    return (T) run.runs.get(name).result;
+                }
+            }
+            throw new IllegalArgumentException(stageRun.spec.name + " does not read " + name);
+        }
+
+        /**
+         * Throws CancellationException once the stage has timed out or the
+         * run was cancelled.
+         */
+        @Override
+        public void checkCancelled() {
+            if (stageRun.state.get() != RUNNING || SystemClock.elapsedRealtime() > stageRun.deadline) {
+                throw new CancellationException(stageRun.spec.name + " stopped");
+            }
+        }
+    }
+
+    /**
+     * Results of the stages that finished in time, by stage name.
+     */
+    static final class Results {
+        private final Map<String, Object> values = new HashMap<>();
+        private final Map<String, Long> millis = new LinkedHashMap<>();
+        private final List<String> incomplete = new ArrayList<>();
+
+        @SuppressWarnings("unchecked")
+        <T> T get(String name) {
+            return (T) values.get(name);
+        }
+
+        /**
+         * Whether {@code name} finished in time. A stage may finish with a
+         * null result, so this is not the same as {@code get(name) != null}.
+         */
+        boolean isDone(String name) {
+            return values.containsKey(name);
+        }
+
+        boolean isComplete() {
+            return incomplete.isEmpty();
+        }
+
+        int getFinishedCount() {
+            return values.size();
+        }
+
+        int getStageCount() {
+            return values.size() + incomplete.size();
+        }
+
+        /**
+         * Stages that did not finish, each with the reason.
+         */
+        List<String> getIncomplete() {
+            return Collections.unmodifiableList(incomplete);
+        }
+
+        @Override
+        public String toString() {
+            return "stage times " + millis + (incomplete.isEmpty() ? "" : ", incomplete " + incomplete);
+        }
+    }
+}
@@ -21,10 +21,19 @@ public class RecurringDetector {
     }
 
     public List<RecurringPattern> detectRecurringTransactions(List<Transaction> transactions) {
+        return detectRecurringTransactions(AnalysisContext.of(transactions, Collections.emptyList()));
+    }
+
+    public List<RecurringPattern> detectRecurringTransactions(AnalysisContext context) {
+        return detectRecurringTransactions(context, InsightPipeline.Cancellation.NONE);
+    }
+
+    List<RecurringPattern> detectRecurringTransactions(AnalysisContext context,
+                                                       InsightPipeline.Cancellation cancellation) {
         List<RecurringPattern> patterns = new ArrayList<>();
-        Map<String, List<Transaction>> groupedByDescription = groupTransactionsByDescription(transactions);
         
-        for (Map.Entry<String, List<Transaction>> entry : groupedByDescription.entrySet()) {
+        for (Map.Entry<String, List<Transaction>> entry : context.getTransactionsByDescription().entrySet()) {
+            cancellation.checkCancelled();
             List<Transaction> similarTransactions = entry.getValue();
             if (similarTransactions.size() >= 3) { // Need at least 3 occurrences
                 RecurringPattern pattern = analyzePattern(similarTransactions);
@@ -47,30 +56,17 @@ public class RecurringDetector {
         return patterns;
     }
 
-    private Map<String, List<Transaction>> groupTransactionsByDescription(List<Transaction> transactions) {
-        Map<String, List<Transaction>> grouped = new HashMap<>();
-        
-        for (Transaction transaction : transactions) {
-            String key = normalizeDescription(transaction.getDescription());
-            grouped.computeIfAbsent(key, k -> new ArrayList<>()).add(transaction);
-        }
-        
-        return grouped;
-    }
-
-    private String normalizeDescription(String description) {
+    static String normalizeDescription(String description) {
         return description.toLowerCase()
             .replaceAll("\\d+", "") // Remove numbers
             .replaceAll("[^a-zA-Z\\s]", "") // Remove special characters
             .trim();
     }
 
+    // Groups come from the context in date order and are shared, so they are not sorted here
     private RecurringPattern analyzePattern(List<Transaction> transactions) {
         if (transactions.size() < 3) return null;
         
-        // Sort by date
-        transactions.sort((t1, t2) -> t1.getDate().compareTo(t2.getDate()));
-        
         List<Long> intervals = new ArrayList<>();
         for (int i = 1; i < transactions.size(); i++) {
             long interval = transactions.get(i).getDate().getTime() - 
@@ -0,0 +1,192 @@
+package com.budgetwise.ai;
+
+import com.budgetwise.data.models.Transaction;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Running statistics over a set of transactions that is edited in place:
+ * mean and variance of expense amounts per category, kept with Welford's
+ * method, and how many transactions fall in each hour of the day. Adding or
+ * removing a transaction is O(1), so the statistics follow the repository
+ * change by change instead of being recomputed from the whole history.
+ *
+ * Variances are population variances, as the batch calculation used.
+ * Thread-safe.
+ */
+final class SpendingStatistics {
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final Map<String, Moments> categories = new HashMap<>();
+    private final int[] hourCounts = new int[24];
+    private int transactionCount;
+    // Transactions version the statistics are current for, or -1 if unknown
+    private long version = -1;
+
+    synchronized void clear() {
+        categories.clear();
+        Arrays.fill(hourCounts, 0);
+        transactionCount = 0;
+        version = -1;
+    }
+
+    synchronized void setVersion(long version) {
+        this.version = version;
+    }
+
+    synchronized void add(Transaction transaction) {
+        transactionCount++;
+        if (transaction.getDate() != null) {
+            hourCounts[hourOf(transaction.getDate().getTime())]++;
+        }
+        if (isCategorizedExpense(transaction)) {
+            Moments moments = categories.get(transaction.getCategory());
+            if (moments == null) {
+                moments = new Moments();
+                categories.put(transaction.getCategory(), moments);
+            }
+            moments.add(transaction.getAmount());
+        }
+    }
+
+    /**
+     * Removes a transaction added earlier; {@code transaction} must carry the
+     * values it was added with.
+     */
+    synchronized void remove(Transaction transaction) {
+        transactionCount--;
+        if (transaction.getDate() != null) {
+            hourCounts[hourOf(transaction.getDate().getTime())]--;
+        }
+        if (isCategorizedExpense(transaction)) {
+            Moments moments = categories.get(transaction.getCategory());
+            if (moments != null) {
+                moments.remove(transaction.getAmount());
+                if (moments.count == 0) {
+                    categories.remove(transaction.getCategory());
+                }
+            }
+        }
+    }
+
+    synchronized int getTransactionCount() {
+        return transactionCount;
+    }
+
+    /**
+     * Copy of the moments of {@code category}, or null if it has no expenses.
+     */
+    synchronized Moments getMoments(String category) {
+        Moments moments = categories.get(category);
+        return moments != null ? moments.copy() : null;
+    }
+
+    synchronized int[] getHourCounts() {
+        return hourCounts.clone();
+    }
+
+    /**
+     * Copy of the statistics if they are current for {@code version} and
+     * hold {@code transactionCount} transactions, or null. Loading more of
+     * the same version only adds transactions, so together the two identify
+     * one set.
+     */
+    synchronized SpendingStatistics copyIfCurrent(long version, int transactionCount) {
+        if (version < 0 || version != this.version || transactionCount != this.transactionCount) {
+            return null;
+        }
+        SpendingStatistics copy = new SpendingStatistics();
+        for (Map.Entry<String, Moments> entry : categories.entrySet()) {
+            copy.categories.put(entry.getKey(), entry.getValue().copy());
+        }
+        System.arraycopy(hourCounts, 0, copy.hourCounts, 0, hourCounts.length);
+        copy.transactionCount = transactionCount;
+        copy.version = version;
+        return copy;
+    }
+
+    static int hourOf(long time) {
+        long local = time + TimeZone.getDefault().getOffset(time);
+        return (int) (Math.floorMod(local, AnalysisContext.DAY_MILLIS) / HOUR_MILLIS);
+    }
+
+    static int[] hourCountsOf(List<Transaction> transactions) {
+        int[] counts = new int[24];
+        for (Transaction transaction : transactions) {
+            if (transaction.getDate() != null) {
+                counts[hourOf(transaction.getDate().getTime())]++;
+            }
+        }
+        return counts;
+    }
+
+    private static boolean isCategorizedExpense(Transaction transaction) {
+        return transaction.getType() == Transaction.TransactionType.EXPENSE && transaction.getCategory() != null;
+    }
+
+    /**
+     * Count, mean and sum of squared deviations of a series of amounts.
+     */
+    static final class Moments {
+        int count;
+        double mean;
+        double m2;
+
+        static Moments of(List<Transaction> transactions) {
+            Moments moments = new Moments();
+            for (Transaction transaction : transactions) {
+                moments.add(transaction.getAmount());
+            }
+            return moments;
+        }
+
+        void add(double value) {
+            count++;
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+        }
+
+        void remove(double value) {
+            if (count <= 1) {
+                count = 0;
+                mean = 0;
+                m2 = 0;
+                return;
+            }
+            double previousMean = (count * mean - value) / (count - 1);
+            m2 -= (value - mean) * (value - previousMean);
+            mean = previousMean;
+            count--;
+            // Rounding can leave a tiny negative sum once the values are all equal
+            if (m2 < 0) {
+                m2 = 0;
+            }
+        }
+
+        double standardDeviation() {
+            return count > 0 ? Math.sqrt(m2 / count) : 0;
+        }
+
+        /**
+         * Standard deviations between {@code value} and the mean, or NaN if
+         * the amounts do not vary.
+         */
+        double zScore(double value) {
+            double standardDeviation = standardDeviation();
+            return standardDeviation > 1e-9 ? Math.abs(value - mean) / standardDeviation : Double.NaN;
+        }
+
+        Moments copy() {
+            Moments copy = new Moments();
+            copy.count = count;
+            copy.mean = mean;
+            copy.m2 = m2;
+            return copy;
+        }
+    }
+}
@@ -5,7 +5,6 @@ import com.budgetwise.data.models.Budget;
 import com.budgetwise.data.models.Transaction;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class SummaryGenerator {
     private final Context context;
@@ -18,14 +17,11 @@ public class SummaryGenerator {
     }
 
     public WeeklySummary generateWeeklySummary(List<Transaction> transactions, List<Budget> budgets) {
-        long now = System.currentTimeMillis();
-        long weekAgo = now - (7L * 24 * 60 * 60 * 1000);
-        
-        List<Transaction> weeklyTransactions = transactions.stream()
-            .filter(t -> t.getDate().getTime() > weekAgo)
-            .collect(Collectors.toList());
-        
-        WeeklySummary summary = analyzeWeeklyData(weeklyTransactions, budgets);
+        return generateWeeklySummary(AnalysisContext.of(transactions, budgets));
+    }
+
+    public WeeklySummary generateWeeklySummary(AnalysisContext context) {
+        WeeklySummary summary = analyzeWeeklyData(context.getWindow(7), context.getWindow(14), context.getBudgets());
         
         // Trigger weekly summary notification
         triggerWeeklySummaryNotification(summary);
@@ -34,36 +30,22 @@ public class SummaryGenerator {
     }
 
     public MonthlySummary generateMonthlySummary(List<Transaction> transactions, List<Budget> budgets) {
-        long now = System.currentTimeMillis();
-        long monthAgo = now - (30L * 24 * 60 * 60 * 1000);
-        
-        List<Transaction> monthlyTransactions = transactions.stream()
-            .filter(t -> t.getDate().getTime() > monthAgo)
-            .collect(Collectors.toList());
-        
-        return analyzeMonthlyData(monthlyTransactions, budgets);
+        return generateMonthlySummary(AnalysisContext.of(transactions, budgets));
     }
 
-    private WeeklySummary analyzeWeeklyData(List<Transaction> transactions, List<Budget> budgets) {
-        double totalIncome = transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.INCOME)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
-        
-        double totalExpenses = transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
+    public MonthlySummary generateMonthlySummary(AnalysisContext context) {
+        return analyzeMonthlyData(context, context.getWindow(30));
+    }
+
+    private WeeklySummary analyzeWeeklyData(AnalysisContext.Window week, AnalysisContext.Window twoWeeks,
+                                            List<Budget> budgets) {
+        double totalIncome = week.getIncome();
+        double totalExpenses = week.getExpenses();
         
         double netSavings = totalIncome - totalExpenses;
         
         // Analyze spending by category
-        Map<String, Double> categorySpending = transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .collect(Collectors.groupingBy(
-                Transaction::getCategory,
-                Collectors.summingDouble(Transaction::getAmount)
-            ));
+        Map<String, Double> categorySpending = week.getCategoryExpenses();
         
         // Find top spending category
         String topCategory = categorySpending.entrySet().stream()
@@ -74,14 +56,14 @@ public class SummaryGenerator {
         double topCategoryAmount = categorySpending.getOrDefault(topCategory, 0.0);
         
         // Analyze budget performance
-        List<BudgetPerformance> budgetPerformances = analyzeBudgetPerformance(budgets, transactions);
+        List<BudgetPerformance> budgetPerformances = analyzeBudgetPerformance(budgets, categorySpending);
         
         // Generate insights
         List<String> insights = generateWeeklyInsights(totalIncome, totalExpenses, netSavings, 
                                                      categorySpending, budgetPerformances);
         
         // Calculate comparison with previous week
-        WeeklyComparison comparison = calculateWeeklyComparison(transactions);
+        WeeklyComparison comparison = calculateWeeklyComparison(week, twoWeeks);
         
         return new WeeklySummary(
             totalIncome, totalExpenses, netSavings, categorySpending,
@@ -89,53 +71,39 @@ public class SummaryGenerator {
         );
     }
 
-    private MonthlySummary analyzeMonthlyData(List<Transaction> transactions, List<Budget> budgets) {
-        double totalIncome = transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.INCOME)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
-        
-        double totalExpenses = transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
+    private MonthlySummary analyzeMonthlyData(AnalysisContext context, AnalysisContext.Window month) {
+        double totalIncome = month.getIncome();
+        double totalExpenses = month.getExpenses();
         
         double netSavings = totalIncome - totalExpenses;
         double savingsRate = totalIncome > 0 ? (netSavings / totalIncome) * 100 : 0;
         
         // Daily spending analysis
-        Map<String, Double> dailySpending = analyzeDailySpending(transactions);
+        Map<String, Double> dailySpending = analyzeDailySpending(context, month.getDays());
         double avgDailySpending = dailySpending.values().stream()
             .mapToDouble(Double::doubleValue)
             .average()
             .orElse(0.0);
         
         // Category analysis
-        Map<String, Double> categorySpending = transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .collect(Collectors.groupingBy(
-                Transaction::getCategory,
-                Collectors.summingDouble(Transaction::getAmount)
-            ));
+        Map<String, Double> categorySpending = month.getCategoryExpenses();
         
         return new MonthlySummary(
             totalIncome, totalExpenses, netSavings, savingsRate,
             categorySpending, dailySpending, avgDailySpending,
-            transactions.size(), generateMonthlyInsights(totalIncome, totalExpenses, savingsRate)
+            month.size(), generateMonthlyInsights(totalIncome, totalExpenses, savingsRate)
         );
     }
 
-    private List<BudgetPerformance> analyzeBudgetPerformance(List<Budget> budgets, List<Transaction> transactions) {
+    private List<BudgetPerformance> analyzeBudgetPerformance(List<Budget> budgets,
+                                                             Map<String, Double> categorySpending) {
         List<BudgetPerformance> performances = new ArrayList<>();
         
         for (Budget budget : budgets) {
             if (!budget.isActive()) continue;
             
-            double spent = transactions.stream()
-                .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-                .filter(t -> t.getCategory().equals(budget.getCategory()))
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+            Double spentInCategory = categorySpending.get(budget.getCategory());
+            double spent = spentInCategory != null ? spentInCategory : 0;
             
             double percentUsed = (spent / budget.getBudgetAmount()) * 100;
             BudgetStatus status = determineBudgetStatus(percentUsed);
@@ -208,22 +176,9 @@ public class SummaryGenerator {
         return insights;
     }
 
-    private WeeklyComparison calculateWeeklyComparison(List<Transaction> allTransactions) {
-        long now = System.currentTimeMillis();
-        long thisWeekStart = now - (7L * 24 * 60 * 60 * 1000);
-        long lastWeekStart = thisWeekStart - (7L * 24 * 60 * 60 * 1000);
-        
-        double thisWeekSpending = allTransactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .filter(t -> t.getDate().getTime() > thisWeekStart)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
-        
-        double lastWeekSpending = allTransactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .filter(t -> t.getDate().getTime() > lastWeekStart && t.getDate().getTime() <= thisWeekStart)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
+    private WeeklyComparison calculateWeeklyComparison(AnalysisContext.Window week, AnalysisContext.Window twoWeeks) {
+        double thisWeekSpending = week.getExpenses();
+        double lastWeekSpending = twoWeeks.getExpenses() - week.getExpenses();
         
         double changePercent = lastWeekSpending > 0 ? 
             ((thisWeekSpending - lastWeekSpending) / lastWeekSpending) * 100 : 0;
@@ -231,13 +186,17 @@ public class SummaryGenerator {
         return new WeeklyComparison(thisWeekSpending, lastWeekSpending, changePercent);
     }
 
-    private Map<String, Double> analyzeDailySpending(List<Transaction> transactions) {
-        return transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .collect(Collectors.groupingBy(
-                t -> dateFormat.format(t.getDate()),
-                Collectors.summingDouble(Transaction::getAmount)
-            ));
+    // Days without expenses are left out, as before
+    private Map<String, Double> analyzeDailySpending(AnalysisContext context, int days) {
+        Map<String, Double> dailySpending = new HashMap<>();
+        for (int daysAgo = 0; daysAgo < days; daysAgo++) {
+            double spent = context.getDailyExpenses(daysAgo);
+            if (spent != 0) {
+                dailySpending.put(dateFormat.format(
+                    new Date(context.getNow() - daysAgo * AnalysisContext.DAY_MILLIS)), spent);
+            }
+        }
+        return dailySpending;
     }
 
     private void triggerWeeklySummaryNotification(WeeklySummary summary) {
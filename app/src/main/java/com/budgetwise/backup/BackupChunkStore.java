@@ -0,0 +1,161 @@
+package com.budgetwise.backup;
+
+import android.util.Log;
+import com.budgetwise.security.EncryptionManager;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Content-addressed store shared by all backup manifests. A chunk is one
+ * encoded month of transactions or the budget list, named by a keyed
+ * HMAC-SHA256 of its plaintext (see {@link EncryptionManager#nameContent}),
+ * so content that did not change between backups is encrypted and written
+ * once and only referenced afterwards. The store lives in public storage;
+ * without the key a name says nothing about the chunk's contents.
+ *
+ * Names depend on the data key version the store is opened with, which each
+ * manifest records. Chunks are deflated and stream-encrypted, and written
+ * under a temporary name first so a chunk file with a final name is always
+ * complete. The name is checked again on every read.
+ */
+final class BackupChunkStore {
+    private static final String TAG = "BackupChunkStore";
+    private static final String CHUNK_EXTENSION = ".bwc";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final int CHUNK_MAGIC = 0x4257434B; // "BWCK"
+    private static final int CHUNK_FORMAT_VERSION = 1;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final long STALE_TEMP_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final File directory;
+    private final EncryptionManager encryptionManager;
+    private final int keyVersion;
+
+    BackupChunkStore(File directory, EncryptionManager encryptionManager, int keyVersion) {
+        this.directory = directory;
+        this.encryptionManager = encryptionManager;
+        this.keyVersion = keyVersion;
+    }
+
+    String hash(byte[] plaintext) throws IOException {
+        try {
+            byte[] digest = encryptionManager.nameContent(plaintext, keyVersion);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Backup naming key v" + keyVersion + " unavailable", e);
+        }
+    }
+
+    boolean contains(String hash) {
+        return fileFor(hash).exists();
+    }
+
+    /**
+     * Stores a chunk unless one with the same hash exists. Returns the bytes
+     * written, 0 if the chunk was already there.
+     */
+    long put(String hash, byte[] plaintext) throws IOException {
+        File file = fileFor(hash);
+        if (file.exists()) {
+            return 0;
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Failed to create chunk directory");
+        }
+
+        File temp = new File(directory, hash + TEMP_EXTENSION);
+        try (OutputStream encrypted = encryptionManager.newEncryptingStream(
+                new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE))) {
+            DataOutputStream preamble = new DataOutputStream(encrypted);
+            preamble.writeInt(CHUNK_MAGIC);
+            preamble.writeInt(CHUNK_FORMAT_VERSION);
+            OutputStream out = new DeflaterOutputStream(encrypted);
+            out.write(plaintext);
+            // Finishes the deflate stream and seals the last chunk
+            out.close();
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Failed to store chunk " + hash);
+        }
+        return file.length();
+    }
+
+    byte[] get(String hash) throws IOException {
+        try (InputStream in = encryptionManager.newDecryptingStream(
+                new BufferedInputStream(new FileInputStream(fileFor(hash)), BUFFER_SIZE))) {
+            DataInputStream preamble = new DataInputStream(in);
+            if (preamble.readInt() != CHUNK_MAGIC || preamble.readInt() != CHUNK_FORMAT_VERSION) {
+                throw new IOException("Invalid backup chunk " + hash);
+            }
+            ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+            try (InputStream inflated = new InflaterInputStream(in)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int length;
+                while ((length = inflated.read(buffer)) != -1) {
+                    plaintext.write(buffer, 0, length);
+                }
+            }
+            byte[] data = plaintext.toByteArray();
+            if (!hash.equals(hash(data))) {
+                throw new IOException("Backup chunk " + hash + " does not match its hash");
+            }
+            return data;
+        }
+    }
+
+    long sizeOf(String hash) {
+        return fileFor(hash).length();
+    }
+
+    /**
+     * Deletes chunks no manifest refers to any more, along with temporary
+     * files an interrupted backup left behind a day or more ago. Returns the
+     * number deleted.
+     */
+    int removeUnreferenced(Set<String> referenced) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int removed = 0;
+        for (File file : files) {
+            String name = file.getName();
+            boolean orphan = name.endsWith(TEMP_EXTENSION)
+                ? System.currentTimeMillis() - file.lastModified() > STALE_TEMP_MILLIS
+                : name.endsWith(CHUNK_EXTENSION)
+                    && !referenced.contains(name.substring(0, name.length() - CHUNK_EXTENSION.length()));
+            if (orphan && file.delete()) {
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            Log.d(TAG, "Removed " + removed + " unreferenced chunks");
+        }
+        return removed;
+    }
+
+    private File fileFor(String hash) {
+        return new File(directory, hash + CHUNK_EXTENSION);
+    }
+}
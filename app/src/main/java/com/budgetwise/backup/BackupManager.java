@@ -1,37 +1,82 @@
 package com.budgetwise.backup;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
 import android.os.Environment;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import com.budgetwise.BudgetWiseApplication;
 import com.budgetwise.data.models.Budget;
 import com.budgetwise.data.models.Transaction;
 import com.budgetwise.data.repository.BudgetRepository;
+import com.budgetwise.data.repository.RepositorySnapshot;
+import com.budgetwise.data.storage.RecordCodec;
+import com.budgetwise.data.storage.TransactionPartitionStore;
 import com.budgetwise.security.EncryptionManager;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class BackupManager {
     private static final String TAG = "BackupManager";
     private static final String BACKUP_FOLDER = "BudgetWise";
     private static final String BACKUP_FILE_PREFIX = "backup_";
-    private static final String BACKUP_FILE_EXTENSION = ".json";
-    private static final int MAX_BACKUP_FILES = 3;
+    private static final String LEGACY_BACKUP_FILE_EXTENSION = ".json";
+    private static final String MANIFEST_FILE_EXTENSION = ".bwm";
+    private static final String CHUNK_FOLDER = "chunks";
+    private static final int MAX_BACKUP_MANIFESTS = 10;
+
+    private static final String PREFS_NAME = "BudgetWiseBackup";
+    private static final String AUTO_BACKUP_WORK_NAME = "auto_backup";
+    private static final long AUTO_BACKUP_INTERVAL_HOURS = 24;
+    private static final String KEY_AUTO_LAST_RUN = "auto_last_run";
+    private static final String KEY_AUTO_OUTCOME = "auto_outcome";
+    private static final String KEY_AUTO_DURATION = "auto_duration_millis";
+    private static final String KEY_AUTO_BYTES = "auto_bytes_written";
     
     private final Context context;
     private final BudgetRepository repository;
     private final EncryptionManager encryptionManager;
     private final ExecutorService executorService;
     private final Gson gson;
+    private final SharedPreferences state;
+    // Repository version of the last backup in this process; only touched on the executor
+    private long lastBackupVersion = -1;
 
     public BackupManager(Context context, BudgetRepository repository, EncryptionManager encryptionManager) {
         this.context = context;
@@ -42,6 +87,7 @@ public class BackupManager {
             .setPrettyPrinting()
             .setDateFormat("yyyy-MM-dd HH:mm:ss")
             .create();
+        this.state = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
     }
 
     public interface BackupCallback {
@@ -49,35 +95,34 @@ public class BackupManager {
         void onError(String error);
     }
 
+    /**
+     * Writes a backup into the chunk store. Only months whose contents
+     * changed since the latest backup are encoded, encrypted and written;
+     * the new manifest refers to the stored chunks for the rest.
+     *
+     * This month-chunk deduplication is what makes backups incremental;
+     * there is no chain of record-level deltas on a full base. Every
+     * manifest lists all months, so a restore reads one manifest and its
+     * chunks with nothing to replay. The unit of change is the month: a
+     * one-record edit rewrites that month's whole chunk. Backup size
+     * therefore follows the number of months touched since the last
+     * backup, not the number of records.
+     */
     public void createBackup(BackupCallback callback) {
         executorService.execute(() -> {
             try {
-                // Create backup data structure
-                BackupData backupData = new BackupData();
-                backupData.transactions = repository.getCachedTransactions();
-                backupData.budgets = repository.getCachedBudgets();
-                backupData.timestamp = System.currentTimeMillis();
-                backupData.version = "1.0";
-
-                // Convert to JSON
-                String jsonData = gson.toJson(backupData);
-                
-                // Encrypt the data
-                String encryptedData = encryptionManager.encrypt(jsonData);
-                
-                // Create backup file
-                File backupFile = createBackupFile();
-                
-                // Write encrypted data to file
-                try (FileWriter writer = new FileWriter(backupFile)) {
-                    writer.write(encryptedData);
-                }
+                // Transactions and budgets come from one consistent snapshot
+                RepositorySnapshot snapshot = repository.getCompleteSnapshot();
+                File manifestFile = createBackupFile();
+                BackupManifest manifest = writeChunks(snapshot, readLatestManifest());
+                writeManifest(manifest, manifestFile);
+                lastBackupVersion = snapshot.getVersion();
                 
                 // Clean up old backups
                 cleanupOldBackups();
                 
-                Log.d(TAG, "Backup created successfully: " + backupFile.getAbsolutePath());
-                callback.onSuccess(backupFile.getAbsolutePath());
+                Log.d(TAG, "Backup created successfully: " + manifestFile.getAbsolutePath());
+                callback.onSuccess(manifestFile.getAbsolutePath());
                 
             } catch (Exception e) {
                 Log.e(TAG, "Failed to create backup", e);
@@ -95,21 +140,9 @@ public class BackupManager {
                     return;
                 }
 
-                // Read encrypted data from file
-                StringBuilder encryptedData = new StringBuilder();
-                try (FileReader reader = new FileReader(backupFile)) {
-                    char[] buffer = new char[1024];
-                    int length;
-                    while ((length = reader.read(buffer)) != -1) {
-                        encryptedData.append(buffer, 0, length);
-                    }
-                }
-
-                // Decrypt the data
-                String jsonData = encryptionManager.decrypt(encryptedData.toString());
-                
-                // Parse JSON
-                BackupData backupData = gson.fromJson(jsonData, BackupData.class);
+                BackupData backupData = isManifestFile(backupFile)
+                    ? readManifestBackup(backupFile)
+                    : readLegacyBackup(backupFile);
                 
                 // Validate backup data
                 if (backupData == null || backupData.transactions == null || backupData.budgets == null) {
@@ -117,8 +150,7 @@ public class BackupManager {
                     return;
                 }
 
-                // Clear existing data and restore from backup
-                // Note: In a real implementation, you might want to ask user for confirmation
+                // Replaces existing data; callers confirm with the user first
                 restoreDataFromBackup(backupData);
                 
                 Log.d(TAG, "Backup restored successfully from: " + filePath);
@@ -131,65 +163,493 @@ public class BackupManager {
         });
     }
 
+    /**
+     * Stores the snapshot as month chunks plus a budgets chunk, named under
+     * the current data key. A month whose record count and digest match the
+     * previous manifest reuses its chunk without being encoded again, as long
+     * as that manifest used the same key; any other month is encoded with its
+     * records sorted by id, so equal contents always hash the same.
+     */
+    private BackupManifest writeChunks(RepositorySnapshot snapshot, BackupManifest previous) throws IOException {
+        int keyVersion = currentKeyVersion();
+        BackupChunkStore chunks = getChunkStore(keyVersion);
+        Map<String, BackupManifest.ChunkRef> previousMonths = new HashMap<>();
+        if (previous != null && previous.chunkKeyVersion == keyVersion) {
+            for (BackupManifest.ChunkRef month : previous.months) {
+                previousMonths.put(month.month, month);
+            }
+        }
+
+        Map<String, List<Transaction>> transactionsByMonth = new TreeMap<>();
+        for (Transaction transaction : snapshot.getTransactions()) {
+            String month = TransactionPartitionStore.partitionOf(transaction.getDate());
+            List<Transaction> bucket = transactionsByMonth.get(month);
+            if (bucket == null) {
+                bucket = new ArrayList<>();
+                transactionsByMonth.put(month, bucket);
+            }
+            bucket.add(transaction);
+        }
+        Map<String, Long> digests = monthDigests(snapshot.getTransactions());
+
+        BackupManifest manifest = new BackupManifest();
+        manifest.timestamp = System.currentTimeMillis();
+        manifest.chunkKeyVersion = keyVersion;
+        int written = 0;
+        long bytesWritten = 0;
+        for (Map.Entry<String, List<Transaction>> entry : transactionsByMonth.entrySet()) {
+            BackupManifest.ChunkRef month = new BackupManifest.ChunkRef();
+            month.month = entry.getKey();
+            month.count = entry.getValue().size();
+            month.digest = digests.get(entry.getKey());
+            for (Transaction transaction : entry.getValue()) {
+                long date = transaction.getDate().getTime();
+                month.firstDate = month.firstDate == 0 ? date : Math.min(month.firstDate, date);
+                month.lastDate = Math.max(month.lastDate, date);
+                if (transaction.getCategory() != null) {
+                    month.categories.add(transaction.getCategory());
+                }
+            }
+
+            BackupManifest.ChunkRef before = previousMonths.get(month.month);
+            if (before != null && before.digest == month.digest && before.count == month.count
+                    && chunks.contains(before.hash)) {
+                month.hash = before.hash;
+            } else {
+                List<Transaction> records = entry.getValue();
+                Collections.sort(records, (t1, t2) -> t1.getId().compareTo(t2.getId()));
+                byte[] plaintext = RecordCodec.encodeTransactions(records);
+                month.hash = chunks.hash(plaintext);
+                long size = chunks.put(month.hash, plaintext);
+                if (size > 0) {
+                    written++;
+                    bytesWritten += size;
+                }
+            }
+            manifest.months.add(month);
+        }
+
+        byte[] budgets = RecordCodec.encodeBudgets(snapshot.getBudgets());
+        manifest.budgetsHash = chunks.hash(budgets);
+        manifest.budgetCount = snapshot.getBudgets().size();
+        manifest.seal();
+        long size = chunks.put(manifest.budgetsHash, budgets);
+        if (size > 0) {
+            written++;
+            bytesWritten += size;
+        }
+
+        manifest.bytesWritten = bytesWritten;
+        Log.d(TAG, "Wrote " + written + " of " + (manifest.months.size() + 1)
+            + " chunks (" + bytesWritten + " bytes)");
+        return manifest;
+    }
+
+    /**
+     * Schedules a daily backup that runs while the device is idle and the
+     * battery is not low. Already scheduled work is kept as is.
+     */
+    public void scheduleAutomaticBackups() {
+        Constraints.Builder constraints = new Constraints.Builder()
+            .setRequiresBatteryNotLow(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            constraints.setRequiresDeviceIdle(true);
+        }
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(
+                BackupWorker.class, AUTO_BACKUP_INTERVAL_HOURS, TimeUnit.HOURS)
+            .setConstraints(constraints.build())
+            .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(
+            AUTO_BACKUP_WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    /**
+     * Writes an incremental chunk-store backup unless nothing changed since
+     * the latest one, and records the outcome. Runs on the backup executor,
+     * so it never overlaps a manual backup or a restore.
+     */
+    AutoBackupStatus runAutomaticBackup() throws Exception {
+        return executorService.submit(() -> {
+            long start = SystemClock.elapsedRealtime();
+            AutoBackupStatus status = new AutoBackupStatus();
+            status.lastRun = System.currentTimeMillis();
+            try {
+                RepositorySnapshot snapshot = repository.getCompleteSnapshot();
+                BackupManifest latest = snapshot.getVersion() == lastBackupVersion ? null : readLatestManifest();
+                if (snapshot.getVersion() == lastBackupVersion || isUnchangedSince(snapshot, latest)) {
+                    status.outcome = AutoBackupStatus.Outcome.SKIPPED;
+                } else {
+                    File manifestFile = createBackupFile();
+                    BackupManifest manifest = writeChunks(snapshot, latest);
+                    writeManifest(manifest, manifestFile);
+                    cleanupOldBackups();
+                    status.outcome = AutoBackupStatus.Outcome.CREATED;
+                    status.bytesWritten = manifest.bytesWritten + manifestFile.length();
+                }
+                lastBackupVersion = snapshot.getVersion();
+            } catch (Exception e) {
+                Log.e(TAG, "Automatic backup failed", e);
+                status.outcome = AutoBackupStatus.Outcome.FAILED;
+            }
+            status.durationMillis = SystemClock.elapsedRealtime() - start;
+            state.edit()
+                .putLong(KEY_AUTO_LAST_RUN, status.lastRun)
+                .putString(KEY_AUTO_OUTCOME, status.outcome.name())
+                .putLong(KEY_AUTO_DURATION, status.durationMillis)
+                .putLong(KEY_AUTO_BYTES, status.bytesWritten)
+                .apply();
+            Log.d(TAG, "Automatic backup " + status.outcome + " in " + status.durationMillis
+                + "ms (" + status.bytesWritten + " bytes)");
+            return status;
+        }).get();
+    }
+
+    /**
+     * Outcome of the most recent automatic backup, or null if none has run.
+     */
+    public AutoBackupStatus getAutoBackupStatus() {
+        String outcome = state.getString(KEY_AUTO_OUTCOME, null);
+        if (outcome == null) {
+            return null;
+        }
+        AutoBackupStatus status = new AutoBackupStatus();
+        status.lastRun = state.getLong(KEY_AUTO_LAST_RUN, 0);
+        status.outcome = AutoBackupStatus.Outcome.valueOf(outcome);
+        status.durationMillis = state.getLong(KEY_AUTO_DURATION, 0);
+        status.bytesWritten = state.getLong(KEY_AUTO_BYTES, 0);
+        return status;
+    }
+
+    /**
+     * True if the latest backup is intact and holds exactly this snapshot.
+     * The repository version starts over with every process, so the check
+     * compares the month digests and the budgets instead; that costs one
+     * pass over the records but no encryption or writes.
+     */
+    private boolean isUnchangedSince(RepositorySnapshot snapshot, BackupManifest latest) throws IOException {
+        // After a key rotation the next backup names its chunks under the new key
+        if (latest == null || latest.verify() != null
+                || latest.chunkKeyVersion != currentKeyVersion()
+                || latest.transactionCount != snapshot.getTransactions().size()) {
+            return false;
+        }
+        BackupChunkStore chunks = getChunkStore(latest.chunkKeyVersion);
+        Map<String, Long> digests = monthDigests(snapshot.getTransactions());
+        if (digests.size() != latest.months.size()) {
+            return false;
+        }
+        for (BackupManifest.ChunkRef month : latest.months) {
+            Long digest = digests.get(month.month);
+            if (digest == null || digest != month.digest || !chunks.contains(month.hash)) {
+                return false;
+            }
+        }
+        String budgetsHash = chunks.hash(RecordCodec.encodeBudgets(snapshot.getBudgets()));
+        return budgetsHash.equals(latest.budgetsHash) && chunks.contains(latest.budgetsHash);
+    }
+
+    private void writeManifest(BackupManifest manifest, File manifestFile) throws IOException {
+        File temp = new File(manifestFile.getParentFile(), manifestFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                encryptionManager.newEncryptingStream(new FileOutputStream(temp))))) {
+            manifest.write(out, encryptionManager);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        if (!temp.renameTo(manifestFile)) {
+            temp.delete();
+            throw new IOException("Failed to write backup manifest");
+        }
+    }
+
+    private BackupManifest readManifest(File manifestFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                encryptionManager.newDecryptingStream(new BufferedInputStream(new FileInputStream(manifestFile)))))) {
+            return BackupManifest.read(in, encryptionManager);
+        }
+    }
+
+    /**
+     * Manifest of the newest backup, or null if there is none or it cannot
+     * be read; then every month is simply encoded again.
+     */
+    private BackupManifest readLatestManifest() {
+        File[] manifestFiles = listManifestFiles();
+        if (manifestFiles.length == 0) {
+            return null;
+        }
+        try {
+            return readManifest(manifestFiles[manifestFiles.length - 1]);
+        } catch (IOException e) {
+            Log.w(TAG, "Latest backup manifest unreadable", e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads a whole chunk-store backup, checking the manifest first and every
+     * chunk's hash and record count on the way, so nothing is handed to the
+     * repository unless the backup is intact.
+     */
+    private BackupData readManifestBackup(File manifestFile) throws IOException {
+        BackupManifest manifest = readManifest(manifestFile);
+        String problem = manifest.verify();
+        if (problem != null) {
+            throw new IOException("Backup failed verification: " + problem);
+        }
+        BackupChunkStore chunks = getChunkStore(manifest.chunkKeyVersion);
+        BackupData backupData = new BackupData();
+        backupData.version = String.valueOf(manifest.formatVersion);
+        backupData.timestamp = manifest.timestamp;
+        backupData.transactions = new ArrayList<>(manifest.transactionCount);
+        for (BackupManifest.ChunkRef month : manifest.months) {
+            List<Transaction> transactions = RecordCodec.decodeTransactions(chunks.get(month.hash));
+            if (transactions.size() != month.count) {
+                throw new IOException("Backup failed verification: chunk " + month.month + " is incomplete");
+            }
+            backupData.transactions.addAll(transactions);
+        }
+        backupData.budgets = RecordCodec.decodeBudgets(chunks.get(manifest.budgetsHash));
+        if (backupData.budgets.size() != manifest.budgetCount) {
+            throw new IOException("Backup failed verification: budgets are incomplete");
+        }
+        return backupData;
+    }
+
+    /**
+     * Order-independent digest of each month's (id, updatedAt) pairs, so a
+     * month whose records were added, removed or edited shows a new value.
+     */
+    private static Map<String, Long> monthDigests(List<Transaction> transactions) {
+        Map<String, Long> digests = new TreeMap<>();
+        for (Transaction transaction : transactions) {
+            long hash = 0xcbf29ce484222325L;
+            String id = transaction.getId();
+            for (int i = 0; i < id.length(); i++) {
+                hash = (hash ^ id.charAt(i)) * 0x100000001b3L;
+            }
+            hash = (hash ^ transaction.getUpdatedAt()) * 0x100000001b3L;
+            hash ^= hash >>> 29;
+            Long current = digests.get(TransactionPartitionStore.partitionOf(transaction.getDate()));
+            digests.put(TransactionPartitionStore.partitionOf(transaction.getDate()),
+                current == null ? hash : current + hash);
+        }
+        return digests;
+    }
+
+    /**
+     * Reads a backup written before the chunk store: the whole backup as one
+     * encrypted JSON document.
+     */
+    private BackupData readLegacyBackup(File backupFile) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(backupFile))) {
+            ByteArrayOutputStream encryptedData = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                encryptedData.write(buffer, 0, length);
+            }
+            String json = encryptionManager.decrypt(new String(encryptedData.toByteArray(), StandardCharsets.UTF_8));
+            return gson.fromJson(json, BackupData.class);
+        }
+    }
+
+    private static boolean isBackupFileName(String name) {
+        return name.startsWith(BACKUP_FILE_PREFIX)
+            && (name.endsWith(MANIFEST_FILE_EXTENSION) || name.endsWith(LEGACY_BACKUP_FILE_EXTENSION));
+    }
+
+    private static boolean isManifestFile(File file) {
+        return file.getName().endsWith(MANIFEST_FILE_EXTENSION);
+    }
+
     private File createBackupFile() throws IOException {
         // Create backup directory
-        File documentsDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS);
-        File backupDir = new File(documentsDir, BACKUP_FOLDER);
+        File backupDir = getBackupDir();
         
         if (!backupDir.exists() && !backupDir.mkdirs()) {
             throw new IOException("Failed to create backup directory");
         }
 
         // Create backup file with timestamp
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault());
+        // Milliseconds keep two backups in one second from overwriting each other
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.US);
         String timestamp = dateFormat.format(new Date());
-        String fileName = BACKUP_FILE_PREFIX + timestamp + BACKUP_FILE_EXTENSION;
+        String fileName = BACKUP_FILE_PREFIX + timestamp + MANIFEST_FILE_EXTENSION;
         
         return new File(backupDir, fileName);
     }
 
-    private void cleanupOldBackups() {
+    private File getBackupDir() {
+        File documentsDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS);
+        return new File(documentsDir, BACKUP_FOLDER);
+    }
+
+    /**
+     * Backup files oldest first.
+     */
+    private File[] listBackupFiles() {
+        File backupDir = getBackupDir();
+        File[] backupFiles = backupDir.exists() ? backupDir.listFiles((dir, name) -> isBackupFileName(name)) : null;
+        if (backupFiles == null) {
+            return new File[0];
+        }
+        java.util.Arrays.sort(backupFiles, (f1, f2) ->
+            Long.compare(f1.lastModified(), f2.lastModified()));
+        return backupFiles;
+    }
+
+    private int currentKeyVersion() throws IOException {
         try {
-            File documentsDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS);
-            File backupDir = new File(documentsDir, BACKUP_FOLDER);
-            
-            if (!backupDir.exists()) return;
+            return encryptionManager.getCurrentKeyVersion();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Data key unavailable", e);
+        }
+    }
 
-            File[] backupFiles = backupDir.listFiles((dir, name) -> 
-                name.startsWith(BACKUP_FILE_PREFIX) && name.endsWith(BACKUP_FILE_EXTENSION));
-            
-            if (backupFiles == null || backupFiles.length <= MAX_BACKUP_FILES) return;
+    private BackupChunkStore getChunkStore(int keyVersion) {
+        return new BackupChunkStore(new File(getBackupDir(), CHUNK_FOLDER), encryptionManager, keyVersion);
+    }
 
-            // Sort files by last modified date (oldest first)
-            java.util.Arrays.sort(backupFiles, (f1, f2) -> 
-                Long.compare(f1.lastModified(), f2.lastModified()));
+    private File[] listManifestFiles() {
+        List<File> manifestFiles = new ArrayList<>();
+        for (File backupFile : listBackupFiles()) {
+            if (isManifestFile(backupFile)) {
+                manifestFiles.add(backupFile);
+            }
+        }
+        return manifestFiles.toArray(new File[0]);
+    }
 
-            // Delete oldest files
-            int filesToDelete = backupFiles.length - MAX_BACKUP_FILES;
+    /**
+     * Keeps the newest MAX_BACKUP_MANIFESTS backups, then deletes the chunks
+     * none of them refers to. Single-file backups from older versions are
+     * left alone.
+     */
+    private void cleanupOldBackups() {
+        try {
+            File[] manifestFiles = listManifestFiles();
+            int filesToDelete = Math.max(0, manifestFiles.length - MAX_BACKUP_MANIFESTS);
             for (int i = 0; i < filesToDelete; i++) {
-                if (backupFiles[i].delete()) {
-                    Log.d(TAG, "Deleted old backup: " + backupFiles[i].getName());
+                if (manifestFiles[i].delete()) {
+                    Log.d(TAG, "Deleted old backup: " + manifestFiles[i].getName());
                 }
             }
+
+            Set<String> referenced = new HashSet<>();
+            for (int i = filesToDelete; i < manifestFiles.length; i++) {
+                // A manifest that cannot be read might still need any chunk
+                referenced.addAll(readManifest(manifestFiles[i]).getChunkHashes());
+            }
+            getChunkStore(currentKeyVersion()).removeUnreferenced(referenced);
             
         } catch (Exception e) {
             Log.e(TAG, "Failed to cleanup old backups", e);
         }
     }
 
-    private void restoreDataFromBackup(BackupData backupData) {
-        // Clear existing data
-        // Note: This is a simplified implementation
-        // In production, you might want to create a transaction-like operation
-        
-        // Restore transactions
-        for (Transaction transaction : backupData.transactions) {
-            repository.addTransaction(transaction);
+    /**
+     * Restores part of a backup and merges it into the current data instead
+     * of replacing it; see {@link BudgetRepository#mergeAll} for how records
+     * already present are resolved. For chunk-store backups only the months
+     * that can hold matching transactions are decrypted.
+     */
+    public void restorePartial(String filePath, RestoreSelection selection, BackupCallback callback) {
+        executorService.execute(() -> {
+            try {
+                File backupFile = new File(filePath);
+                if (!backupFile.exists()) {
+                    callback.onError("Backup file not found");
+                    return;
+                }
+
+                BackupData selected = isManifestFile(backupFile)
+                    ? readManifestSelection(backupFile, selection)
+                    : select(readLegacyBackup(backupFile), selection);
+                try {
+                    repository.mergeAll(selected.transactions, selected.budgets).get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+
+                Log.d(TAG, "Partial restore of " + selected.transactions.size() + " transactions and "
+                    + selected.budgets.size() + " budgets from: " + filePath);
+                callback.onSuccess(String.format(Locale.US, "Restored %d transactions and %d budgets",
+                    selected.transactions.size(), selected.budgets.size()));
+
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to restore backup", e);
+                callback.onError("Failed to restore backup: " + e.getMessage());
+            }
+        });
+    }
+
+    private BackupData readManifestSelection(File manifestFile, RestoreSelection selection) throws IOException {
+        BackupManifest manifest = readManifest(manifestFile);
+        String problem = manifest.verify();
+        if (problem != null) {
+            throw new IOException("Backup failed verification: " + problem);
         }
-        
-        // Restore budgets
-        for (Budget budget : backupData.budgets) {
-            repository.addBudget(budget);
+        BackupChunkStore chunks = getChunkStore(manifest.chunkKeyVersion);
+        BackupData backupData = new BackupData();
+        backupData.transactions = new ArrayList<>();
+        backupData.budgets = new ArrayList<>();
+        int decrypted = 0;
+        if (selection.includeTransactions) {
+            for (BackupManifest.ChunkRef month : manifest.months) {
+                if (!month.mayOverlap(selection.startMillis, selection.endMillis)
+                        || (selection.categories != null && !month.mayContainAny(selection.categories))) {
+                    continue;
+                }
+                List<Transaction> transactions = RecordCodec.decodeTransactions(chunks.get(month.hash));
+                if (transactions.size() != month.count) {
+                    throw new IOException("Backup failed verification: chunk " + month.month + " is incomplete");
+                }
+                backupData.transactions.addAll(transactions);
+                decrypted++;
+            }
+        }
+        if (selection.budgetIds != null) {
+            backupData.budgets = RecordCodec.decodeBudgets(chunks.get(manifest.budgetsHash));
+            decrypted++;
+        }
+        Log.d(TAG, "Partial restore decrypted " + decrypted + " of " + (manifest.months.size() + 1) + " chunks");
+        return select(backupData, selection);
+    }
+
+    private static BackupData select(BackupData backupData, RestoreSelection selection) {
+        BackupData selected = new BackupData();
+        selected.timestamp = backupData.timestamp;
+        selected.version = backupData.version;
+        selected.transactions = new ArrayList<>();
+        selected.budgets = new ArrayList<>();
+        if (selection.includeTransactions && backupData.transactions != null) {
+            for (Transaction transaction : backupData.transactions) {
+                if (selection.matches(transaction)) {
+                    selected.transactions.add(transaction);
+                }
+            }
+        }
+        if (selection.budgetIds != null && backupData.budgets != null) {
+            for (Budget budget : backupData.budgets) {
+                if (selection.budgetIds.isEmpty() || selection.budgetIds.contains(budget.getId())) {
+                    selected.budgets.add(budget);
+                }
+            }
+        }
+        return selected;
+    }
+
+    private void restoreDataFromBackup(BackupData backupData) throws Exception {
+        // Replaces existing data in one atomic commit, and waits for it so
+        // success is only reported once the restore is durable
+        try {
+            repository.replaceAll(
+                backupData.transactions != null ? backupData.transactions : new ArrayList<>(),
+                backupData.budgets != null ? backupData.budgets : new ArrayList<>()).get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
         }
     }
 
@@ -204,8 +664,7 @@ public class BackupManager {
                     return;
                 }
 
-                File[] backupFiles = backupDir.listFiles((dir, name) -> 
-                    name.startsWith(BACKUP_FILE_PREFIX) && name.endsWith(BACKUP_FILE_EXTENSION));
+                File[] backupFiles = backupDir.listFiles((dir, name) -> isBackupFileName(name));
                 
                 if (backupFiles == null) {
                     callback.onSuccess(new File[0]);
@@ -230,6 +689,191 @@ public class BackupManager {
         void onError(String error);
     }
 
+    /**
+     * Lists backups newest first with what their manifests say about them.
+     * Each chunk-store backup gets the quick check of
+     * {@link #verifyBackup}: no chunk is decrypted, so this stays fast
+     * however large the backups are. Single-file backups from older versions
+     * have no manifest and are listed with their file only.
+     */
+    public void getBackupInfos(BackupInfoCallback callback) {
+        executorService.execute(() -> {
+            try {
+                File[] backupFiles = listBackupFiles();
+                List<BackupInfo> backups = new ArrayList<>(backupFiles.length);
+                for (int i = backupFiles.length - 1; i >= 0; i--) {
+                    backups.add(inspect(backupFiles[i], false));
+                }
+                callback.onSuccess(backups);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to get available backups", e);
+                callback.onError("Failed to get available backups: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Checks a backup. The quick check covers the manifest signature, its
+     * totals and Merkle root, and that every chunk is present; a deep check
+     * also decrypts every chunk and compares its hash and record count.
+     */
+    public void verifyBackup(String filePath, boolean deep, BackupVerifyCallback callback) {
+        executorService.execute(() -> {
+            try {
+                callback.onVerified(inspect(new File(filePath), deep));
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to verify backup", e);
+                callback.onError("Failed to verify backup: " + e.getMessage());
+            }
+        });
+    }
+
+    private BackupInfo inspect(File backupFile, boolean deep) {
+        BackupInfo info = new BackupInfo(backupFile);
+        info.timestamp = backupFile.lastModified();
+        if (!isManifestFile(backupFile)) {
+            info.problem = "Older backup without a manifest";
+            return info;
+        }
+
+        BackupManifest manifest;
+        try {
+            manifest = readManifest(backupFile);
+        } catch (IOException e) {
+            info.problem = "Manifest unreadable";
+            return info;
+        }
+        info.indexed = true;
+        info.formatVersion = manifest.formatVersion;
+        info.timestamp = manifest.timestamp;
+        info.transactionCount = manifest.transactionCount;
+        info.budgetCount = manifest.budgetCount;
+        info.firstTransactionDate = manifest.firstTransactionDate;
+        info.lastTransactionDate = manifest.lastTransactionDate;
+        for (BackupManifest.ChunkRef month : manifest.months) {
+            info.categories.addAll(month.categories);
+        }
+        info.problem = manifest.verify();
+        if (info.problem != null) {
+            return info;
+        }
+
+        BackupChunkStore chunks = getChunkStore(manifest.chunkKeyVersion);
+        for (String hash : manifest.getChunkHashes()) {
+            if (!chunks.contains(hash)) {
+                info.problem = "Missing chunk " + hash.substring(0, 12);
+                return info;
+            }
+            info.storedBytes += chunks.sizeOf(hash);
+        }
+        if (deep) {
+            try {
+                for (BackupManifest.ChunkRef month : manifest.months) {
+                    if (RecordCodec.decodeTransactions(chunks.get(month.hash)).size() != month.count) {
+                        info.problem = "Chunk " + month.month + " is incomplete";
+                        return info;
+                    }
+                }
+                if (RecordCodec.decodeBudgets(chunks.get(manifest.budgetsHash)).size() != manifest.budgetCount) {
+                    info.problem = "Budgets are incomplete";
+                    return info;
+                }
+            } catch (IOException e) {
+                info.problem = e.getMessage();
+                return info;
+            }
+        }
+        info.verified = true;
+        return info;
+    }
+
+    /**
+     * What a partial restore takes from a backup. A transaction is restored
+     * if it falls within the date range and, when categories are given, has
+     * one of them. Budgets are only restored when budgetIds is set; an empty
+     * set means all of them.
+     */
+    public static class RestoreSelection {
+        public boolean includeTransactions = true;
+        public long startMillis = Long.MIN_VALUE;
+        public long endMillis = Long.MAX_VALUE;
+        public Set<String> categories;
+        public Set<String> budgetIds;
+
+        boolean matches(Transaction transaction) {
+            long date = transaction.getDate().getTime();
+            return date >= startMillis && date <= endMillis
+                && (categories == null || categories.contains(transaction.getCategory()));
+        }
+    }
+
+    public interface BackupInfoCallback {
+        void onSuccess(List<BackupInfo> backups);
+        void onError(String error);
+    }
+
+    public interface BackupVerifyCallback {
+        void onVerified(BackupInfo backup);
+        void onError(String error);
+    }
+
+    /**
+     * What a backup's manifest says about it. Counts are -1 and dates 0 for
+     * backups without a manifest.
+     */
+    public static class BackupInfo {
+        public final File file;
+        public long timestamp;
+        public int formatVersion;
+        public int transactionCount = -1;
+        public int budgetCount = -1;
+        public long firstTransactionDate;
+        public long lastTransactionDate;
+        // Categories of the backed-up transactions, for choosing a partial restore
+        public final Set<String> categories = new TreeSet<>();
+        // Size of the chunks the backup refers to; shared chunks count fully
+        public long storedBytes;
+        public boolean indexed;
+        public boolean verified;
+        // Why the backup did not verify, if it did not
+        public String problem;
+
+        BackupInfo(File file) {
+            this.file = file;
+        }
+    }
+
+    public static class AutoBackupStatus {
+        public enum Outcome {
+            CREATED, SKIPPED, FAILED
+        }
+
+        public long lastRun;
+        public Outcome outcome;
+        public long durationMillis;
+        public long bytesWritten;
+    }
+
+    public static class BackupWorker extends Worker {
+        public BackupWorker(Context context, WorkerParameters params) {
+            super(context, params);
+        }
+
+        @Override
+        public Result doWork() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            BackupManager manager = BudgetWiseApplication.getInstance().getBackupManager();
+            try {
+                AutoBackupStatus status = manager.runAutomaticBackup();
+                // A failed run is not retried early; the next period tries again
+                return status.outcome == AutoBackupStatus.Outcome.FAILED ? Result.failure() : Result.success();
+            } catch (Exception e) {
+                Log.e(TAG, "Automatic backup interrupted", e);
+                return Result.retry();
+            }
+        }
+    }
+
     private static class BackupData {
         public List<Transaction> transactions;
         public List<Budget> budgets;
@@ -0,0 +1,263 @@
+package com.budgetwise.backup;
+
+import com.budgetwise.security.EncryptionManager;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * One backup in the chunk store: the chunks that make up the backed-up state.
+ * Transactions are referenced one month chunk at a time, with the record
+ * count, date range, categories and the month's (id, updatedAt) digest, so
+ * the next backup can tell an unchanged month apart without encoding it
+ * again, and a partial restore can skip months that cannot match.
+ *
+ * The manifest also carries totals, the overall date range, the data key
+ * version its chunks are named under and a Merkle root over all chunk
+ * hashes, and is signed (see {@link EncryptionManager#sign}). A backup can
+ * then be listed and checked from its manifest alone, without decrypting any
+ * chunk.
+ *
+ * Layout: magic, format version, then the signed body and the signature,
+ * each length-prefixed.
+ */
+final class BackupManifest {
+    static final int MAGIC = 0x42574D46; // "BWMF"
+    static final int FORMAT_VERSION = 4;
+    private static final int MAX_SIGNED_BODY_LENGTH = 4 * 1024 * 1024;
+
+    int formatVersion = FORMAT_VERSION;
+    long timestamp;
+    int chunkKeyVersion;
+    final List<ChunkRef> months = new ArrayList<>();
+    String budgetsHash;
+    int budgetCount;
+    int transactionCount;
+    long firstTransactionDate;
+    long lastTransactionDate;
+    String merkleRoot;
+    // Set when read
+    boolean signatureValid;
+    // Set when written: bytes of the new chunks this backup stored
+    long bytesWritten;
+
+    /**
+     * Fills in the totals, date range and Merkle root from the chunk list.
+     */
+    void seal() {
+        transactionCount = 0;
+        firstTransactionDate = 0;
+        lastTransactionDate = 0;
+        for (ChunkRef month : months) {
+            transactionCount += month.count;
+            if (firstTransactionDate == 0 || month.firstDate < firstTransactionDate) {
+                firstTransactionDate = month.firstDate;
+            }
+            lastTransactionDate = Math.max(lastTransactionDate, month.lastDate);
+        }
+        merkleRoot = computeMerkleRoot();
+    }
+
+    void write(DataOutputStream out, EncryptionManager encryptionManager) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        writeBody(new DataOutputStream(buffer));
+        byte[] body = buffer.toByteArray();
+        byte[] signature = encryptionManager.sign(body);
+
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(body.length);
+        out.write(body);
+        out.writeInt(signature.length);
+        out.write(signature);
+    }
+
+    static BackupManifest read(DataInputStream in, EncryptionManager encryptionManager) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Invalid backup manifest");
+        }
+        int formatVersion = in.readInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported backup manifest format " + formatVersion);
+        }
+
+        byte[] body = readBlock(in);
+        byte[] signature = readBlock(in);
+        BackupManifest manifest = readBody(new DataInputStream(new ByteArrayInputStream(body)));
+        manifest.signatureValid = encryptionManager.verifySignature(body, signature);
+        return manifest;
+    }
+
+    private void writeBody(DataOutputStream out) throws IOException {
+        out.writeLong(timestamp);
+        out.writeInt(chunkKeyVersion);
+        out.writeInt(transactionCount);
+        out.writeInt(budgetCount);
+        out.writeLong(firstTransactionDate);
+        out.writeLong(lastTransactionDate);
+        out.writeInt(months.size());
+        for (ChunkRef month : months) {
+            out.writeUTF(month.month);
+            out.writeUTF(month.hash);
+            out.writeInt(month.count);
+            out.writeLong(month.digest);
+            out.writeLong(month.firstDate);
+            out.writeLong(month.lastDate);
+            out.writeInt(month.categories.size());
+            for (String category : month.categories) {
+                out.writeUTF(category);
+            }
+        }
+        out.writeUTF(budgetsHash);
+        out.writeUTF(merkleRoot);
+        out.flush();
+    }
+
+    private static BackupManifest readBody(DataInputStream in) throws IOException {
+        BackupManifest manifest = new BackupManifest();
+        manifest.timestamp = in.readLong();
+        manifest.chunkKeyVersion = in.readInt();
+        manifest.transactionCount = in.readInt();
+        manifest.budgetCount = in.readInt();
+        manifest.firstTransactionDate = in.readLong();
+        manifest.lastTransactionDate = in.readLong();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            ChunkRef month = new ChunkRef();
+            month.month = in.readUTF();
+            month.hash = in.readUTF();
+            month.count = in.readInt();
+            month.digest = in.readLong();
+            month.firstDate = in.readLong();
+            month.lastDate = in.readLong();
+            int categories = in.readInt();
+            for (int j = 0; j < categories; j++) {
+                month.categories.add(in.readUTF());
+            }
+            manifest.months.add(month);
+        }
+        manifest.budgetsHash = in.readUTF();
+        manifest.merkleRoot = in.readUTF();
+        return manifest;
+    }
+
+    private static byte[] readBlock(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_SIGNED_BODY_LENGTH) {
+            throw new IOException("Invalid backup manifest");
+        }
+        byte[] block = new byte[length];
+        in.readFully(block);
+        return block;
+    }
+
+    /**
+     * Checks that the manifest is signed and internally consistent: totals
+     * and the Merkle root match its chunk list. Returns null if so, else the
+     * problem found.
+     */
+    String verify() {
+        if (!signatureValid) {
+            return "Manifest signature invalid";
+        }
+        int total = 0;
+        for (ChunkRef month : months) {
+            total += month.count;
+        }
+        if (total != transactionCount) {
+            return "Transaction count mismatch";
+        }
+        if (!computeMerkleRoot().equals(merkleRoot)) {
+            return "Merkle root mismatch";
+        }
+        return null;
+    }
+
+    /**
+     * Chunk hashes in manifest order: the months, then the budgets.
+     */
+    List<String> getChunkHashes() {
+        List<String> hashes = new ArrayList<>(months.size() + 1);
+        for (ChunkRef month : months) {
+            hashes.add(month.hash);
+        }
+        hashes.add(budgetsHash);
+        return hashes;
+    }
+
+    /**
+     * Root of a binary hash tree over the chunk hashes. Leaves and inner
+     * nodes are hashed with distinct prefixes, and an odd node out is
+     * carried up unchanged.
+     */
+    String computeMerkleRoot() {
+        List<byte[]> level = new ArrayList<>();
+        for (String hash : getChunkHashes()) {
+            level.add(sha256((byte) 0, hash.getBytes(StandardCharsets.US_ASCII), null));
+        }
+        while (level.size() > 1) {
+            List<byte[]> next = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i < level.size(); i += 2) {
+                next.add(i + 1 < level.size() ? sha256((byte) 1, level.get(i), level.get(i + 1)) : level.get(i));
+            }
+            level = next;
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : level.get(0)) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] sha256(byte prefix, byte[] left, byte[] right) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(prefix);
+            digest.update(left);
+            if (right != null) {
+                digest.update(right);
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    static class ChunkRef {
+        String month;
+        String hash;
+        int count;
+        long digest;
+        long firstDate;
+        long lastDate;
+        Set<String> categories = new TreeSet<>();
+
+        /**
+         * False only if the month certainly has no transaction in the range.
+         */
+        boolean mayOverlap(long startMillis, long endMillis) {
+            return lastDate >= startMillis && firstDate <= endMillis;
+        }
+
+        /**
+         * False only if the month certainly has none of the categories.
+         */
+        boolean mayContainAny(Set<String> wanted) {
+            for (String category : wanted) {
+                if (categories.contains(category)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
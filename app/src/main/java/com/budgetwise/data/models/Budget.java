@@ -21,7 +21,7 @@ public class Budget {
     public Budget() {
         this.id = UUID.randomUUID().toString();
         this.createdAt = System.currentTimeMillis();
-        this.updatedAt = System.currentTimeMillis();
+        this.updatedAt = UpdateClock.next();
         this.isActive = true;
         this.spentAmount = 0.0;
     }
@@ -34,6 +34,24 @@ public class Budget {
         calculatePeriodDates();
     }
 
+    /**
+     * Field-by-field copy, including id and timestamps.
+     */
+    public Budget copy() {
+        Budget copy = new Budget();
+        copy.id = id;
+        copy.category = category;
+        copy.budgetAmount = budgetAmount;
+        copy.spentAmount = spentAmount;
+        copy.period = period;
+        copy.startDate = startDate;
+        copy.endDate = endDate;
+        copy.isActive = isActive;
+        copy.createdAt = createdAt;
+        copy.updatedAt = updatedAt;
+        return copy;
+    }
+
     private void calculatePeriodDates() {
         long now = System.currentTimeMillis();
         this.startDate = now;
@@ -73,36 +91,43 @@ public class Budget {
     public String getCategory() { return category; }
     public void setCategory(String category) { 
         this.category = category;
-        this.updatedAt = System.currentTimeMillis();
+        this.updatedAt = UpdateClock.next();
     }
 
     public double getBudgetAmount() { return budgetAmount; }
     public void setBudgetAmount(double budgetAmount) { 
         this.budgetAmount = budgetAmount;
-        this.updatedAt = System.currentTimeMillis();
+        this.updatedAt = UpdateClock.next();
     }
 
     public double getSpentAmount() { return spentAmount; }
     public void setSpentAmount(double spentAmount) { 
         this.spentAmount = spentAmount;
-        this.updatedAt = System.currentTimeMillis();
+        this.updatedAt = UpdateClock.next();
     }
 
     public BudgetPeriod getPeriod() { return period; }
     public void setPeriod(BudgetPeriod period) { 
         this.period = period;
         calculatePeriodDates();
-        this.updatedAt = System.currentTimeMillis();
+        this.updatedAt = UpdateClock.next();
     }
 
     public long getStartDate() { return startDate; }
+    public void setStartDate(long startDate) { this.startDate = startDate; }
+
     public long getEndDate() { return endDate; }
+    public void setEndDate(long endDate) { this.endDate = endDate; }
+
     public boolean isActive() { return isActive; }
     public void setActive(boolean active) { 
         isActive = active;
-        this.updatedAt = System.currentTimeMillis();
+        this.updatedAt = UpdateClock.next();
     }
 
     public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+
     public long getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(long updatedAt) { this.updatedAt = updatedAt; }
 }
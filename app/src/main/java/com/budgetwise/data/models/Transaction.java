@@ -25,7 +25,7 @@ public class Transaction implements Serializable {
         this.id = UUID.randomUUID().toString();
         this.date = new Date();
         this.createdAt = System.currentTimeMillis();
-        this.updatedAt = System.currentTimeMillis();
+        this.updatedAt = UpdateClock.next();
     }
 
     public Transaction(double amount, String description, String category, TransactionType type) {
@@ -36,6 +36,24 @@ public class Transaction implements Serializable {
         this.type = type;
     }
 
+    /**
+     * Field-by-field copy, including id and timestamps.
+     */
+    public Transaction copy() {
+        Transaction copy = new Transaction();
+        copy.id = id;
+        copy.amount = amount;
+        copy.description = description;
+        copy.category = category;
+        copy.type = type;
+        copy.date = date != null ? new Date(date.getTime()) : null;
+        copy.notes = notes;
+        copy.isRecurring = isRecurring;
+        copy.createdAt = createdAt;
+        copy.updatedAt = updatedAt;
+        return copy;
+    }
+
     // Getters and Setters
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
@@ -43,45 +61,48 @@ public class Transaction implements Serializable {
     public double getAmount() { return amount; }
     public void setAmount(double amount) { 
         this.amount = amount;
-        this.updatedAt = System.currentTimeMillis();
+        this.updatedAt = UpdateClock.next();
     }
 
     public String getDescription() { return description; }
     public void setDescription(String description) { 
         this.description = description;
-        this.updatedAt = System.currentTimeMillis();
+        this.updatedAt = UpdateClock.next();
     }
 
     public String getCategory() { return category; }
     public void setCategory(String category) { 
         this.category = category;
-        this.updatedAt = System.currentTimeMillis();
+        this.updatedAt = UpdateClock.next();
     }
 
     public TransactionType getType() { return type; }
     public void setType(TransactionType type) { 
         this.type = type;
-        this.updatedAt = System.currentTimeMillis();
+        this.updatedAt = UpdateClock.next();
     }
 
     public Date getDate() { return date; }
     public void setDate(Date date) { 
         this.date = date;
-        this.updatedAt = System.currentTimeMillis();
+        this.updatedAt = UpdateClock.next();
     }
 
     public String getNotes() { return notes; }
     public void setNotes(String notes) { 
         this.notes = notes;
-        this.updatedAt = System.currentTimeMillis();
+        this.updatedAt = UpdateClock.next();
     }
 
     public boolean isRecurring() { return isRecurring; }
     public void setRecurring(boolean recurring) { 
         isRecurring = recurring;
-        this.updatedAt = System.currentTimeMillis();
+        this.updatedAt = UpdateClock.next();
     }
 
     public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+
     public long getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(long updatedAt) { this.updatedAt = updatedAt; }
 }
@@ -0,0 +1,27 @@
+package com.budgetwise.data.models;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Source of updatedAt values: wall-clock milliseconds, but strictly
+ * increasing within the process, so two edits in the same millisecond still
+ * get different versions. Storage uses updatedAt to tell which records need
+ * rewriting, and equal versions would make it skip the later edit.
+ */
+final class UpdateClock {
+    private static final AtomicLong last = new AtomicLong();
+
+    private UpdateClock() {
+    }
+
+    static long next() {
+        long now = System.currentTimeMillis();
+        while (true) {
+            long previous = last.get();
+            long next = Math.max(now, previous + 1);
+            if (last.compareAndSet(previous, next)) {
+                return next;
+            }
+        }
+    }
+}
@@ -1,54 +1,172 @@
 package com.budgetwise.data.repository;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import com.budgetwise.data.models.Budget;
 import com.budgetwise.data.models.Transaction;
+import com.budgetwise.data.storage.PartitionSummary;
 import com.budgetwise.data.storage.SecurePreferences;
+import com.budgetwise.data.storage.StorageEngine;
+import com.budgetwise.data.storage.StorageEngines;
+import com.budgetwise.data.storage.TransactionJournal;
+import com.budgetwise.data.storage.TransactionPartitionStore;
 import com.budgetwise.security.EncryptionManager;
-import com.google.gson.reflect.TypeToken;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class BudgetRepository {
     private static final String TAG = "BudgetRepository";
-    private static final String TRANSACTIONS_KEY = "transactions";
-    private static final String BUDGETS_KEY = "budgets";
-    
+    private static final int JOURNAL_COMPACTION_THRESHOLD = 256;
+    // Partitions overlapping this window are decrypted eagerly; it covers the
+    // 30-day windows shown on the dashboard
+    private static final long EAGER_WINDOW_MILLIS = 31L * 24 * 60 * 60 * 1000;
+
     private final SecurePreferences securePreferences;
-    private final ExecutorService executorService;
-    
+    private final StorageEngine storage;
+    private final TransactionJournal journal;
+    private final RepositoryWriter writer;
+
     private final MutableLiveData<List<Transaction>> transactionsLiveData = new MutableLiveData<>();
     private final MutableLiveData<List<Budget>> budgetsLiveData = new MutableLiveData<>();
-    
-    private List<Transaction> cachedTransactions = new ArrayList<>();
-    private List<Budget> cachedBudgets = new ArrayList<>();
+
+    private final TransactionIndex transactionIndex = new TransactionIndex();
+    private final Map<String, Budget> budgetsById = new HashMap<>();
+    // Budgets in insertion order, keyed by sequence like the transaction index
+    private final Map<String, Long> budgetSequences = new HashMap<>();
+    private PersistentSequence<Budget> orderedBudgets = PersistentSequence.empty();
+    private long nextBudgetSequence;
+    // Replaced, never mutated, at the end of every commit that changed data
+    private volatile RepositorySnapshot snapshot = new RepositorySnapshot(
+        0, 0, 0, PersistentSequence.empty(), PersistentSequence.empty());
+    // Columns of a published date order, rebuilt lazily once it changes
+    private volatile ColumnsCache columnsCache;
+    // Live objects by id as of the last commit, for lock-free lookups
+    private final Map<String, Transaction> committedById = new ConcurrentHashMap<>();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<RepositoryChange.Listener<Transaction>> transactionListeners = new CopyOnWriteArrayList<>();
+    private final List<RepositoryChange.Listener<Budget>> budgetListeners = new CopyOnWriteArrayList<>();
+    private List<RepositoryChange<Transaction>> pendingTransactionChanges = new ArrayList<>();
+    private List<RepositoryChange<Budget>> pendingBudgetChanges = new ArrayList<>();
+    private long dataVersion;
+    // dataVersion as of the last transaction change and the last budget change
+    private long transactionsVersion;
+    private long budgetsVersion;
+    private boolean transactionsChanged;
+    // Set by bulk mutations, which rewrite partitions instead of journaling
+    private boolean snapshotRequested;
+    private boolean budgetsChanged;
+
+    private SortedMap<String, PartitionSummary> partitionIndex;
+    private final Set<String> loadedPartitions = new HashSet<>();
+    private final Set<String> dirtyPartitions = new TreeSet<>();
 
     public BudgetRepository(Context context, EncryptionManager encryptionManager) {
         this.securePreferences = new SecurePreferences(context, encryptionManager);
-        this.executorService = Executors.newFixedThreadPool(2);
+        this.storage = StorageEngines.open(context, encryptionManager, securePreferences);
+        this.journal = new TransactionJournal(context, encryptionManager);
+        this.writer = new RepositoryWriter(this, this::commit);
         loadDataFromStorage();
     }
 
     private void loadDataFromStorage() {
-        executorService.execute(() -> {
+        writer.submit(() -> {
             try {
-                // Load transactions
-                Type transactionListType = new TypeToken<List<Transaction>>(){}.getType();
-                cachedTransactions = securePreferences.getList(TRANSACTIONS_KEY, transactionListType);
-                transactionsLiveData.postValue(new ArrayList<>(cachedTransactions));
-
-                // Load budgets
-                Type budgetListType = new TypeToken<List<Budget>>(){}.getType();
-                cachedBudgets = securePreferences.getList(BUDGETS_KEY, budgetListType);
-                budgetsLiveData.postValue(new ArrayList<>(cachedBudgets));
-                
-                Log.d(TAG, "Data loaded from storage");
+                partitionIndex = storage.load();
+
+                List<Budget> snapshotBudgets = storage.readBudgets();
+
+                // Collect journaled mutations first so we know which older
+                // partitions they touch and must be decrypted before replay
+                List<Runnable> pendingOps = new ArrayList<>();
+                long now = System.currentTimeMillis();
+                Set<String> partitionsToLoad = new TreeSet<>(
+                    TransactionPartitionStore.partitionsBetween(now - EAGER_WINDOW_MILLIS, now));
+                boolean[] loadAll = {false};
+
+                transactionIndex.clear();
+                budgetsById.clear();
+                budgetSequences.clear();
+                orderedBudgets = PersistentSequence.empty();
+                for (Budget budget : snapshotBudgets) {
+                    putBudget(budget);
+                }
+
+                int replayed = journal.replay(new TransactionJournal.ReplayHandler() {
+                    @Override
+                    public void onPutTransaction(Transaction transaction, String previousPartition) {
+                        if (previousPartition != null) {
+                            partitionsToLoad.add(previousPartition);
+                        }
+                        pendingOps.add(() -> {
+                            putTransaction(transaction);
+                            markDirty(previousPartition);
+                            markDirty(TransactionPartitionStore.partitionOf(transaction.getDate()));
+                        });
+                    }
+
+                    @Override
+                    public void onDeleteTransaction(String transactionId, String partition) {
+                        if (partition != null) {
+                            partitionsToLoad.add(partition);
+                        } else {
+                            loadAll[0] = true;
+                        }
+                        pendingOps.add(() -> {
+                            if (transactionIndex.contains(transactionId)) {
+                                markDirty(TransactionPartitionStore.partitionOf(
+                                    transactionIndex.filedTimeOf(transactionId)));
+                                removeTransaction(transactionId);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onPutBudget(Budget budget) {
+                        pendingOps.add(() -> putBudget(budget));
+                    }
+
+                    @Override
+                    public void onDeleteBudget(String budgetId) {
+                        pendingOps.add(() -> removeBudget(budgetId));
+                    }
+                });
+
+                Collection<String> initialPartitions = loadAll[0] ? partitionIndex.keySet() : partitionsToLoad;
+                for (String partition : initialPartitions) {
+                    if (partitionIndex.containsKey(partition)) {
+                        for (Transaction transaction : storage.readPartition(partition)) {
+                            loadTransaction(transaction);
+                        }
+                        loadedPartitions.add(partition);
+                    }
+                }
+                for (Runnable op : pendingOps) {
+                    op.run();
+                }
+
+                // Publish even an empty result so observers leave their loading state
+                transactionsChanged = true;
+                budgetsChanged = true;
+                Log.d(TAG, "Data loaded from storage (" + loadedPartitions.size() + "/"
+                    + partitionIndex.size() + " partitions, " + replayed + " journal records replayed)");
             } catch (Exception e) {
                 Log.e(TAG, "Failed to load data from storage", e);
             }
@@ -60,87 +178,723 @@ public class BudgetRepository {
         return transactionsLiveData;
     }
 
-    public void addTransaction(Transaction transaction) {
-        executorService.execute(() -> {
-            cachedTransactions.add(transaction);
-            securePreferences.putList(TRANSACTIONS_KEY, cachedTransactions);
-            transactionsLiveData.postValue(new ArrayList<>(cachedTransactions));
-            updateBudgetSpending(transaction);
+    /**
+     * Mutations are applied in submission order by a single writer. The
+     * returned future completes once the change has been committed.
+     */
+    public Future<Void> addTransaction(Transaction transaction) {
+        return writer.submit(() -> {
+            checkTransaction(transaction);
+            putTransaction(transaction);
+            markDirty(TransactionPartitionStore.partitionOf(transaction.getDate()));
+            journal.appendPutTransaction(transaction, null);
+            updateBudgetSpending(transaction, true);
         });
     }
 
-    public void updateTransaction(Transaction transaction) {
-        executorService.execute(() -> {
-            for (int i = 0; i < cachedTransactions.size(); i++) {
-                if (cachedTransactions.get(i).getId().equals(transaction.getId())) {
-                    cachedTransactions.set(i, transaction);
-                    break;
+    public Future<Void> updateTransaction(Transaction transaction) {
+        return writer.submit(() -> {
+            checkTransaction(transaction);
+            // The index remembers the date it filed the old version under,
+            // even if the caller mutated the same object in place
+            String previousPartition = transactionIndex.contains(transaction.getId())
+                ? TransactionPartitionStore.partitionOf(transactionIndex.filedTimeOf(transaction.getId()))
+                : null;
+            putTransaction(transaction);
+            markDirty(previousPartition);
+            markDirty(TransactionPartitionStore.partitionOf(transaction.getDate()));
+            journal.appendPutTransaction(transaction, previousPartition);
+        });
+    }
+
+    public Future<Void> deleteTransaction(String transactionId) {
+        return writer.submit(() -> {
+            if (transactionIndex.contains(transactionId)) {
+                String partition = TransactionPartitionStore.partitionOf(transactionIndex.filedTimeOf(transactionId));
+                removeTransaction(transactionId);
+                markDirty(partition);
+                journal.appendDeleteTransaction(transactionId, partition);
+            }
+        });
+    }
+
+    /**
+     * Inserts or replaces every transaction in one atomic commit: a single
+     * snapshot of the touched months and a single change notification.
+     */
+    public Future<Void> addTransactions(Collection<Transaction> transactions) {
+        List<Transaction> batch = new ArrayList<>(transactions);
+        return writer.submit(() -> {
+            checkTransactions(batch);
+            for (Transaction transaction : batch) {
+                if (transactionIndex.contains(transaction.getId())) {
+                    markDirty(TransactionPartitionStore.partitionOf(transactionIndex.filedTimeOf(transaction.getId())));
+                } else {
+                    updateBudgetSpending(transaction, false);
                 }
+                putTransaction(transaction);
+                markDirty(TransactionPartitionStore.partitionOf(transaction.getDate()));
             }
-            securePreferences.putList(TRANSACTIONS_KEY, cachedTransactions);
-            transactionsLiveData.postValue(new ArrayList<>(cachedTransactions));
+            snapshotRequested = true;
         });
     }
 
-    public void deleteTransaction(String transactionId) {
-        executorService.execute(() -> {
-            cachedTransactions.removeIf(t -> t.getId().equals(transactionId));
-            securePreferences.putList(TRANSACTIONS_KEY, cachedTransactions);
-            transactionsLiveData.postValue(new ArrayList<>(cachedTransactions));
+    public Future<Void> deleteTransactions(Collection<String> transactionIds) {
+        List<String> batch = new ArrayList<>(transactionIds);
+        return writer.submit(() -> {
+            for (String transactionId : batch) {
+                if (transactionIndex.contains(transactionId)) {
+                    markDirty(TransactionPartitionStore.partitionOf(transactionIndex.filedTimeOf(transactionId)));
+                    removeTransaction(transactionId);
+                }
+            }
+            snapshotRequested = true;
+        });
+    }
+
+    /**
+     * Atomically replaces all transactions and budgets, including months that
+     * were never decrypted, with the given ones. Budget spending is taken as
+     * given rather than recomputed. If any record is invalid nothing is
+     * replaced and the future fails with IllegalArgumentException.
+     */
+    public Future<Void> replaceAll(Collection<Transaction> transactions, Collection<Budget> budgets) {
+        List<Transaction> newTransactions = new ArrayList<>(transactions);
+        List<Budget> newBudgets = new ArrayList<>(budgets);
+        return writer.submit(() -> {
+            // Everything is checked before the first record is removed
+            checkTransactions(newTransactions);
+            checkBudgets(newBudgets);
+            removeEverything();
+            for (Transaction transaction : newTransactions) {
+                putTransaction(transaction);
+                markDirty(TransactionPartitionStore.partitionOf(transaction.getDate()));
+            }
+            for (Budget budget : newBudgets) {
+                putBudget(budget);
+            }
+            snapshotRequested = true;
+        });
+    }
+
+    /**
+     * Merges transactions and budgets from elsewhere, such as a partial
+     * restore, in one atomic commit. Records are matched by id across all
+     * months, decrypting unloaded ones first; where both sides have a
+     * record, the more recently updated version is kept.
+     */
+    public Future<Void> mergeAll(Collection<Transaction> transactions, Collection<Budget> budgets) {
+        List<Transaction> incomingTransactions = new ArrayList<>(transactions);
+        List<Budget> incomingBudgets = new ArrayList<>(budgets);
+        return writer.submit(() -> {
+            checkTransactions(incomingTransactions);
+            checkBudgets(incomingBudgets);
+            ensureAllPartitionsLoaded();
+            for (Transaction transaction : incomingTransactions) {
+                Transaction existing = transactionIndex.get(transaction.getId());
+                if (existing != null) {
+                    if (existing.getUpdatedAt() > transaction.getUpdatedAt()) {
+                        continue;
+                    }
+                    markDirty(TransactionPartitionStore.partitionOf(transactionIndex.filedTimeOf(transaction.getId())));
+                } else {
+                    updateBudgetSpending(transaction, false);
+                }
+                putTransaction(transaction);
+                markDirty(TransactionPartitionStore.partitionOf(transaction.getDate()));
+            }
+            for (Budget budget : incomingBudgets) {
+                Budget existing = budgetsById.get(budget.getId());
+                if (existing == null || existing.getUpdatedAt() <= budget.getUpdatedAt()) {
+                    putBudget(budget);
+                }
+            }
+            snapshotRequested = true;
+        });
+    }
+
+    public Future<Void> clear() {
+        return writer.submit(() -> {
+            removeEverything();
+            snapshotRequested = true;
+        });
+    }
+
+    // Mutations check their input before changing anything, so a bad record
+    // fails the mutation instead of leaving it half applied and then committed
+
+    private static void checkTransaction(Transaction transaction) {
+        if (transaction == null || transaction.getId() == null || transaction.getDate() == null) {
+            throw new IllegalArgumentException("Transaction needs an id and a date: "
+                + (transaction != null ? transaction.getId() : null));
+        }
+    }
+
+    private static void checkTransactions(Collection<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            checkTransaction(transaction);
+        }
+    }
+
+    private static void checkBudget(Budget budget) {
+        if (budget == null || budget.getId() == null || budget.getCategory() == null) {
+            throw new IllegalArgumentException("Budget needs an id and a category: "
+                + (budget != null ? budget.getId() : null));
+        }
+    }
+
+    private static void checkBudgets(Collection<Budget> budgets) {
+        for (Budget budget : budgets) {
+            checkBudget(budget);
+        }
+    }
+
+    private void removeEverything() {
+        for (Transaction transaction : transactionIndex.filedCopies()) {
+            removeTransaction(transaction.getId());
+        }
+        for (String budgetId : new ArrayList<>(budgetsById.keySet())) {
+            removeBudget(budgetId);
+        }
+        if (partitionIndex != null) {
+            // Stored months are emptied without decrypting them; memory is now
+            // authoritative for all of them
+            for (String partition : partitionIndex.keySet()) {
+                markDirty(partition);
+                loadedPartitions.add(partition);
+            }
+        }
+    }
+
+    /**
+     * Decrypts any not-yet-loaded month partitions overlapping the range and
+     * publishes the enlarged transaction list.
+     */
+    public Future<Void> loadTransactionsBetween(long startMillis, long endMillis) {
+        return writer.submit(() ->
+            ensurePartitionsLoaded(TransactionPartitionStore.partitionsBetween(startMillis, endMillis)));
+    }
+
+    public Future<Void> loadAllTransactions() {
+        return loadAllTransactions(null);
+    }
+
+    /**
+     * Loads every partition in the background, then runs {@code onLoaded} on
+     * the writer thread, before the loaded records are published.
+     */
+    public Future<Void> loadAllTransactions(Runnable onLoaded) {
+        return writer.submit(() -> {
+            ensureAllPartitionsLoaded();
+            if (onLoaded != null) {
+                onLoaded.run();
+            }
         });
     }
 
+    /**
+     * Returns the complete transaction history, decrypting older partitions
+     * first if needed. Blocks, so never call from the main thread.
+     */
+    public List<Transaction> getAllTransactions() {
+        return getCompleteSnapshot().getTransactions();
+    }
+
+    /**
+     * Loads every partition through the writer, so the load is ordered after
+     * anything already queued, and waits for it.
+     */
+    private void awaitAllPartitionsLoaded() {
+        if (writer.isWriterThread()) {
+            ensureAllPartitionsLoaded();
+            return;
+        }
+        try {
+            writer.submit(this::ensureAllPartitionsLoaded).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Failed to load all partitions", e.getCause());
+        }
+    }
+
+    private synchronized void ensureAllPartitionsLoaded() {
+        if (partitionIndex != null) {
+            ensurePartitionsLoaded(new ArrayList<>(partitionIndex.keySet()));
+        }
+    }
+
+    private synchronized void ensurePartitionsLoaded(Collection<String> partitions) {
+        if (partitionIndex == null) {
+            return;
+        }
+
+        int added = 0;
+        for (String partition : partitions) {
+            if (loadedPartitions.contains(partition) || !partitionIndex.containsKey(partition)) {
+                continue;
+            }
+            // In-memory records are newer than anything persisted, so they win
+            for (Transaction transaction : storage.readPartition(partition)) {
+                if (!transactionIndex.contains(transaction.getId())) {
+                    loadTransaction(transaction);
+                    added++;
+                }
+            }
+            loadedPartitions.add(partition);
+        }
+
+        if (added > 0) {
+            Log.d(TAG, "Loaded " + added + " transactions from older partitions");
+        }
+    }
+
+    /**
+     * Net income minus expenses of partitions that have not been decrypted
+     * yet, taken from the partition index, as of the last commit.
+     */
+    public double getUnloadedBalance() {
+        return snapshot.unloadedBalance;
+    }
+
+    public int getTotalTransactionCount() {
+        RepositorySnapshot current = snapshot;
+        return current.getTransactions().size() + current.unloadedCount;
+    }
+
     // Budget methods
     public LiveData<List<Budget>> getBudgets() {
         return budgetsLiveData;
     }
 
-    public void addBudget(Budget budget) {
-        executorService.execute(() -> {
-            cachedBudgets.add(budget);
-            securePreferences.putList(BUDGETS_KEY, cachedBudgets);
-            budgetsLiveData.postValue(new ArrayList<>(cachedBudgets));
+    public Future<Void> addBudget(Budget budget) {
+        return writer.submit(() -> {
+            checkBudget(budget);
+            putBudget(budget);
+            journal.appendPutBudget(budget);
         });
     }
 
-    public void updateBudget(Budget budget) {
-        executorService.execute(() -> {
-            for (int i = 0; i < cachedBudgets.size(); i++) {
-                if (cachedBudgets.get(i).getId().equals(budget.getId())) {
-                    cachedBudgets.set(i, budget);
-                    break;
-                }
+    public Future<Void> updateBudget(Budget budget) {
+        return writer.submit(() -> {
+            checkBudget(budget);
+            // Replay would insert an unknown budget, so only existing ones are journaled
+            if (budgetsById.containsKey(budget.getId())) {
+                putBudget(budget);
+                journal.appendPutBudget(budget);
             }
-            securePreferences.putList(BUDGETS_KEY, cachedBudgets);
-            budgetsLiveData.postValue(new ArrayList<>(cachedBudgets));
         });
     }
 
-    public void deleteBudget(String budgetId) {
-        executorService.execute(() -> {
-            cachedBudgets.removeIf(b -> b.getId().equals(budgetId));
-            securePreferences.putList(BUDGETS_KEY, cachedBudgets);
-            budgetsLiveData.postValue(new ArrayList<>(cachedBudgets));
+    public Future<Void> deleteBudget(String budgetId) {
+        return writer.submit(() -> {
+            removeBudget(budgetId);
+            journal.appendDeleteBudget(budgetId);
         });
     }
 
-    private void updateBudgetSpending(Transaction transaction) {
+    // Runs inside the adding mutation so the budget change lands in the same commit
+    private void updateBudgetSpending(Transaction transaction, boolean journaled) {
         if (transaction.getType() == Transaction.TransactionType.EXPENSE) {
-            for (Budget budget : cachedBudgets) {
+            for (Budget budget : orderedBudgets) {
                 if (budget.getCategory().equals(transaction.getCategory()) && budget.isActive()) {
-                    budget.setSpentAmount(budget.getSpentAmount() + transaction.getAmount());
-                    updateBudget(budget);
+                    // Published snapshots and the change's before still hold the old object
+                    Budget updated = budget.copy();
+                    updated.setSpentAmount(budget.getSpentAmount() + transaction.getAmount());
+                    putBudget(updated);
+                    if (journaled) {
+                        journal.appendPutBudget(updated);
+                    }
                     break;
                 }
             }
         }
     }
 
+    /**
+     * Called by the writer after each batch: one journal flush, compaction if
+     * due, then one notification per kind of data that changed.
+     */
+    private boolean commit() {
+        boolean durable = journal.flush();
+        if (!durable) {
+            Log.e(TAG, "Journal commit failed");
+        }
+        // Bulk changes are not journaled, so for them the snapshot is the commit
+        boolean bulk = snapshotRequested;
+        boolean compacted = maybeCompactJournal();
+        durable &= compacted || !bulk;
+        publishTransactions();
+        publishBudgets();
+        // Loads change the transactions without moving the version
+        RepositorySnapshot current = currentState();
+        if (snapshot.getVersion() != current.getVersion() || snapshot.getTransactions() != current.getTransactions()
+                || snapshot.getBudgets() != current.getBudgets() || snapshot.unloadedCount != current.unloadedCount) {
+            snapshot = current;
+        }
+        return durable;
+    }
+
+    /**
+     * A snapshot of the state as it is now. Only the writer thread, or a
+     * holder of the lock, sees a consistent one.
+     */
+    private RepositorySnapshot currentState() {
+        double unloadedBalance = 0.0;
+        int unloadedCount = 0;
+        if (partitionIndex != null) {
+            for (PartitionSummary summary : partitionIndex.values()) {
+                if (!loadedPartitions.contains(summary.partition)) {
+                    unloadedBalance += summary.income - summary.expense;
+                    unloadedCount += summary.count;
+                }
+            }
+        }
+        return new RepositorySnapshot(dataVersion, transactionsVersion, budgetsVersion, transactionIndex.values(),
+            orderedBudgets, transactionIndex.byDate(), unloadedBalance, unloadedCount);
+    }
+
+    /**
+     * Runs a maintenance task against the stored data on the writer thread,
+     * so it never interleaves with a compaction or a write. A task reports
+     * failure by throwing, which fails the returned future.
+     */
+    public Future<Void> runStorageTask(StorageTask task) {
+        return writer.submit(() -> task.run(storage, securePreferences));
+    }
+
+    /**
+     * Reseals a stored partition under the current data key on the calling
+     * thread rather than the writer; store the result with a storage task
+     * calling {@link StorageEngine#storeResealed}.
+     */
+    public StorageEngine.Resealed resealPartition(String partition) {
+        return storage.resealPartition(partition);
+    }
+
+    /**
+     * Folds the journal into storage now rather than at the threshold, e.g.
+     * so no entry stays encrypted under a retiring key.
+     */
+    public Future<Void> compactJournal() {
+        return writer.submit(() -> snapshotRequested = true);
+    }
+
+    /**
+     * Month partitions currently held by the storage engine, oldest first.
+     */
+    public synchronized List<String> getStoredPartitions() {
+        return partitionIndex == null ? new ArrayList<>() : new ArrayList<>(partitionIndex.keySet());
+    }
+
+    public WriteMetrics getWriteMetrics() {
+        return writer.getMetrics();
+    }
+
+    private void markDirty(String partition) {
+        if (partition != null) {
+            dirtyPartitions.add(partition);
+        }
+    }
+
+    /**
+     * Folds the journal into the partitions it touched once it grows past the
+     * threshold, so replay time on startup stays bounded. Only dirty months
+     * are re-encrypted. Partitions and the index are committed synchronously
+     * before the journal is cleared; replay is idempotent, so a crash between
+     * the two steps only means the records are applied twice.
+     */
+    private synchronized boolean maybeCompactJournal() {
+        if (partitionIndex == null
+                || (!snapshotRequested && journal.getEntryCount() < JOURNAL_COMPACTION_THRESHOLD)) {
+            return true;
+        }
+
+        // A dirty month must be fully in memory before it can be rewritten
+        ensurePartitionsLoaded(dirtyPartitions);
+
+        Map<String, List<Transaction>> dirtyContents = new LinkedHashMap<>();
+        for (String partition : dirtyPartitions) {
+            dirtyContents.put(partition, new ArrayList<>());
+        }
+        for (Transaction transaction : transactionIndex.values()) {
+            List<Transaction> bucket = dirtyContents.get(TransactionPartitionStore.partitionOf(transaction.getDate()));
+            if (bucket != null) {
+                bucket.add(transaction);
+            }
+        }
+
+        boolean saved = true;
+        for (Map.Entry<String, List<Transaction>> entry : dirtyContents.entrySet()) {
+            saved &= storage.writePartition(entry.getKey(), entry.getValue());
+        }
+        saved &= storage.commitIndex();
+        saved &= storage.writeBudgets(new ArrayList<>(orderedBudgets));
+
+        if (saved) {
+            partitionIndex = storage.getIndex();
+            loadedPartitions.addAll(dirtyContents.keySet());
+            dirtyPartitions.clear();
+            journal.reset();
+            snapshotRequested = false;
+            Log.d(TAG, "Journal compacted into " + dirtyContents.size() + " partitions");
+        } else {
+            Log.w(TAG, "Snapshot commit failed, keeping journal");
+        }
+        return saved;
+    }
+
+    // All index and budget map writes go through these so every one of them
+    // is recorded as a change for listeners
+
+    private void putTransaction(Transaction transaction) {
+        transactionsChanged = true;
+        Transaction before = transactionIndex.put(transaction);
+        Transaction after = transactionIndex.filedCopyOf(transaction.getId());
+        pendingTransactionChanges.add(new RepositoryChange<>(
+            before == null ? RepositoryChange.Kind.INSERTED : RepositoryChange.Kind.UPDATED,
+            before, after, transactionsVersion = ++dataVersion));
+    }
+
+    /**
+     * Brings a stored record into memory. The data itself is unchanged, so
+     * listeners get a LOADED change and the version does not move.
+     */
+    private void loadTransaction(Transaction transaction) {
+        transactionsChanged = true;
+        transactionIndex.put(transaction);
+        pendingTransactionChanges.add(new RepositoryChange<>(RepositoryChange.Kind.LOADED,
+            null, transactionIndex.filedCopyOf(transaction.getId()), dataVersion));
+    }
+
+    private void removeTransaction(String transactionId) {
+        transactionsChanged = true;
+        Transaction before = transactionIndex.remove(transactionId);
+        if (before != null) {
+            pendingTransactionChanges.add(new RepositoryChange<>(
+                RepositoryChange.Kind.REMOVED, before, null, transactionsVersion = ++dataVersion));
+        }
+    }
+
+    private void putBudget(Budget budget) {
+        budgetsChanged = true;
+        Budget before = budgetsById.put(budget.getId(), budget);
+        Long sequence = budgetSequences.get(budget.getId());
+        if (sequence == null) {
+            sequence = nextBudgetSequence++;
+            budgetSequences.put(budget.getId(), sequence);
+        }
+        orderedBudgets = orderedBudgets.with(sequence, budget);
+        pendingBudgetChanges.add(new RepositoryChange<>(
+            before == null ? RepositoryChange.Kind.INSERTED : RepositoryChange.Kind.UPDATED,
+            before, budget, budgetsVersion = ++dataVersion));
+    }
+
+    private void removeBudget(String budgetId) {
+        budgetsChanged = true;
+        Budget before = budgetsById.remove(budgetId);
+        Long sequence = budgetSequences.remove(budgetId);
+        if (sequence != null) {
+            orderedBudgets = orderedBudgets.without(sequence);
+        }
+        if (before != null) {
+            pendingBudgetChanges.add(new RepositoryChange<>(
+                RepositoryChange.Kind.REMOVED, before, null, budgetsVersion = ++dataVersion));
+        }
+    }
+
+    private void publishTransactions() {
+        if (!transactionsChanged) {
+            return;
+        }
+        transactionsChanged = false;
+        transactionsLiveData.postValue(transactionIndex.values());
+        List<RepositoryChange<Transaction>> changes = pendingTransactionChanges;
+        for (RepositoryChange<Transaction> change : changes) {
+            // A later change in the batch may have removed it again
+            String id = change.getAfter() != null ? change.getAfter().getId() : change.getBefore().getId();
+            Transaction live = transactionIndex.get(id);
+            if (live != null) {
+                committedById.put(id, live);
+            } else {
+                committedById.remove(id);
+            }
+        }
+        pendingTransactionChanges = new ArrayList<>();
+        dispatch(transactionListeners, changes);
+    }
+
+    private void publishBudgets() {
+        if (!budgetsChanged) {
+            return;
+        }
+        budgetsChanged = false;
+        budgetsLiveData.postValue(orderedBudgets);
+        List<RepositoryChange<Budget>> changes = pendingBudgetChanges;
+        pendingBudgetChanges = new ArrayList<>();
+        dispatch(budgetListeners, changes);
+    }
+
+    private <T> void dispatch(List<RepositoryChange.Listener<T>> listeners, List<RepositoryChange<T>> changes) {
+        if (changes.isEmpty() || listeners.isEmpty()) {
+            return;
+        }
+        List<RepositoryChange<T>> delivered = Collections.unmodifiableList(changes);
+        for (RepositoryChange.Listener<T> listener : listeners) {
+            mainHandler.post(() -> {
+                // Skip listeners removed after this commit was queued
+                if (listeners.contains(listener)) {
+                    listener.onChanges(delivered);
+                }
+            });
+        }
+    }
+
+    /**
+     * Registers a listener for transaction changes and returns the loaded
+     * transactions it should start from, as snapshots. Every change committed
+     * after that point is delivered to the listener exactly once.
+     */
+    public synchronized List<Transaction> addTransactionListener(RepositoryChange.Listener<Transaction> listener) {
+        transactionListeners.add(listener);
+        return transactionIndex.filedCopies();
+    }
+
+    public synchronized void removeTransactionListener(RepositoryChange.Listener<Transaction> listener) {
+        transactionListeners.remove(listener);
+    }
+
+    /**
+     * Budget counterpart of {@link #addTransactionListener}.
+     */
+    public synchronized List<Budget> addBudgetListener(RepositoryChange.Listener<Budget> listener) {
+        budgetListeners.add(listener);
+        return orderedBudgets;
+    }
+
+    public synchronized void removeBudgetListener(RepositoryChange.Listener<Budget> listener) {
+        budgetListeners.remove(listener);
+    }
+
+    /**
+     * Version of the most recent committed change; increases with every change.
+     */
+    public long getDataVersion() {
+        return snapshot.getVersion();
+    }
+
+    /**
+     * The state as of the last commit. Lock-free and zero-copy; the snapshot
+     * never changes, so it can be read on any thread for as long as needed.
+     */
+    public RepositorySnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Loaded transactions as of the last commit, as an immutable list.
+     */
     public List<Transaction> getCachedTransactions() {
-        return new ArrayList<>(cachedTransactions);
+        return snapshot.getTransactions();
     }
 
+    /**
+     * Budgets as of the last commit, as an immutable list.
+     */
     public List<Budget> getCachedBudgets() {
-        return new ArrayList<>(cachedBudgets);
+        return snapshot.getBudgets();
+    }
+
+    /**
+     * Snapshot that includes every stored month, decrypting older partitions
+     * first if needed. Blocks, so never call from the main thread.
+     */
+    public RepositorySnapshot getCompleteSnapshot() {
+        awaitAllPartitionsLoaded();
+        // On the writer the load is not committed yet, but nothing else can change the state
+        return writer.isWriterThread() ? currentState() : snapshot;
+    }
+
+    /**
+     * {@link #getCompleteSnapshot()} with the transactions sorted by date,
+     * oldest first.
+     */
+    public RepositorySnapshot getCompleteSnapshotByDate() {
+        return getCompleteSnapshot().byDate();
+    }
+
+    // The queries below read the snapshot published by the last commit and
+    // never take the lock, so the main thread does not wait for a commit's
+    // disk I/O or for storage tasks running on the writer
+
+    public Transaction getTransactionById(String transactionId) {
+        return committedById.get(transactionId);
+    }
+
+    public int getBudgetCount() {
+        return snapshot.getBudgets().size();
+    }
+
+    public Budget getBudgetById(String budgetId) {
+        for (Budget budget : snapshot.getBudgets()) {
+            if (budgetId.equals(budget.getId())) {
+                return budget;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Loaded transactions dated within [startMillis, endMillis], oldest first,
+     * in O(log n + k). Call {@link #loadTransactionsBetween} first if the
+     * range may reach into months that are not decrypted yet.
+     */
+    public List<Transaction> getTransactionsBetween(long startMillis, long endMillis) {
+        return TransactionIndex.between(snapshot.transactionsByDate, startMillis, endMillis);
+    }
+
+    /**
+     * The {@code limit} most recent loaded transactions, newest first.
+     */
+    public List<Transaction> getRecentTransactions(int limit) {
+        return TransactionIndex.recent(snapshot.transactionsByDate, limit);
+    }
+
+    /**
+     * Columnar snapshot of the loaded transactions for analytics. The returned
+     * object is immutable and shared until the next change; the first call
+     * after a change builds it on the calling thread.
+     */
+    public TransactionColumns getTransactionColumns() {
+        PersistentSequence<Transaction> byDate = snapshot.transactionsByDate;
+        ColumnsCache cached = columnsCache;
+        if (cached == null || cached.source != byDate) {
+            // Racing callers build equal columns, so either may win
+            cached = new ColumnsCache(byDate, TransactionColumns.of(byDate));
+            columnsCache = cached;
+        }
+        return cached.columns;
+    }
+
+    /**
+     * Complete history sorted oldest first, decrypting older partitions on the
+     * calling thread if needed. Never call from the main thread.
+     */
+    public List<Transaction> getAllTransactionsByDate() {
+        return getCompleteSnapshotByDate().getTransactions();
+    }
+
+    private static final class ColumnsCache {
+        final PersistentSequence<Transaction> source;
+        final TransactionColumns columns;
+
+        ColumnsCache(PersistentSequence<Transaction> source, TransactionColumns columns) {
+            this.source = source;
+            this.columns = columns;
+        }
+    }
+
+    public interface StorageTask {
+        void run(StorageEngine storage, SecurePreferences preferences);
     }
 }
@@ -0,0 +1,236 @@
+package com.budgetwise.data.repository;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable list ordered by a long key and then a long tie-breaker, backed by
+ * a persistent AVL tree with subtree sizes. {@link #with} and {@link #without} return a new list in
+ * O(log n), copying only the path to the changed node and sharing everything
+ * else with the original, so old versions stay valid and cost nothing to
+ * hand out. Positional {@link #get} is O(log n); iteration is O(1) amortized.
+ *
+ * Repository code uses insertion sequence numbers as keys, which keeps
+ * insertion order while allowing O(log n) removal from the middle, and
+ * (date, sequence) pairs for the date order.
+ */
+final class PersistentSequence<T> extends AbstractList<T> {
+    private static final PersistentSequence<Object> EMPTY = new PersistentSequence<>(null);
+
+    private final Node<T> root;
+
+    private PersistentSequence(Node<T> root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> PersistentSequence<T> empty() {
+        return (PersistentSequence<T>) EMPTY;
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+        }
+        Node<T> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node.value;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Inserts {@code value} under {@code key}, replacing any value already there.
+     */
+    PersistentSequence<T> with(long key, T value) {
+        return with(key, 0, value);
+    }
+
+    PersistentSequence<T> with(long key, long tie, T value) {
+        return new PersistentSequence<>(insert(root, key, tie, value));
+    }
+
+    PersistentSequence<T> without(long key) {
+        return without(key, 0);
+    }
+
+    PersistentSequence<T> without(long key, long tie) {
+        Node<T> newRoot = remove(root, key, tie);
+        return newRoot == root ? this : new PersistentSequence<>(newRoot);
+    }
+
+    /**
+     * Number of values ordered before (key, tie), in O(log n); the position
+     * (key, tie) would be inserted at.
+     */
+    int rank(long key, long tie) {
+        int rank = 0;
+        Node<T> node = root;
+        while (node != null) {
+            if (compare(key, tie, node) <= 0) {
+                node = node.left;
+            } else {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private final Deque<Node<T>> stack = new ArrayDeque<>();
+
+            {
+                pushLeft(root);
+            }
+
+            private void pushLeft(Node<T> node) {
+                while (node != null) {
+                    stack.push(node);
+                    node = node.left;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                if (stack.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node<T> node = stack.pop();
+                pushLeft(node.right);
+                return node.value;
+            }
+        };
+    }
+
+    private static int compare(long key, long tie, Node<?> node) {
+        int byKey = Long.compare(key, node.key);
+        return byKey != 0 ? byKey : Long.compare(tie, node.tie);
+    }
+
+    private static <T> Node<T> insert(Node<T> node, long key, long tie, T value) {
+        if (node == null) {
+            return new Node<>(key, tie, value, null, null);
+        }
+        int order = compare(key, tie, node);
+        if (order < 0) {
+            return balance(node.with(insert(node.left, key, tie, value), node.right));
+        }
+        if (order > 0) {
+            return balance(node.with(node.left, insert(node.right, key, tie, value)));
+        }
+        return new Node<>(key, tie, value, node.left, node.right);
+    }
+
+    private static <T> Node<T> remove(Node<T> node, long key, long tie) {
+        if (node == null) {
+            return null;
+        }
+        int order = compare(key, tie, node);
+        if (order < 0) {
+            Node<T> left = remove(node.left, key, tie);
+            return left == node.left ? node : balance(node.with(left, node.right));
+        }
+        if (order > 0) {
+            Node<T> right = remove(node.right, key, tie);
+            return right == node.right ? node : balance(node.with(node.left, right));
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node<T> successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(new Node<>(successor.key, successor.tie, successor.value, node.left,
+            remove(node.right, successor.key, successor.tie)));
+    }
+
+    private static <T> Node<T> balance(Node<T> node) {
+        int difference = height(node.left) - height(node.right);
+        if (difference > 1) {
+            Node<T> left = node.left;
+            if (height(left.left) < height(left.right)) {
+                left = rotateLeft(left);
+            }
+            return rotateRight(node.with(left, node.right));
+        }
+        if (difference < -1) {
+            Node<T> right = node.right;
+            if (height(right.right) < height(right.left)) {
+                right = rotateRight(right);
+            }
+            return rotateLeft(node.with(node.left, right));
+        }
+        return node;
+    }
+
+    private static <T> Node<T> rotateRight(Node<T> node) {
+        Node<T> left = node.left;
+        return left.with(left.left, node.with(left.right, node.right));
+    }
+
+    private static <T> Node<T> rotateLeft(Node<T> node) {
+        Node<T> right = node.right;
+        return right.with(node.with(node.left, right.left), right.right);
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static final class Node<T> {
+        final long key;
+        final long tie;
+        final T value;
+        final Node<T> left;
+        final Node<T> right;
+        final int size;
+        final int height;
+
+        Node(long key, long tie, T value, Node<T> left, Node<T> right) {
+            this.key = key;
+            this.tie = tie;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.size = size(left) + size(right) + 1;
+            this.height = Math.max(height(left), height(right)) + 1;
+        }
+
+        // This entry with different children
+        Node<T> with(Node<T> left, Node<T> right) {
+            return new Node<>(key, tie, value, left, right);
+        }
+    }
+}
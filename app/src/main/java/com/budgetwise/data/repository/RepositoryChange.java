@@ -0,0 +1,48 @@
+package com.budgetwise.data.repository;
+
+import java.util.List;
+
+/**
+ * One committed mutation of a transaction or budget. {@code before} is null
+ * for insertions and {@code after} is null for removals. Versions increase by
+ * one per change across the whole repository, so consumers can tell whether
+ * they have already seen a change.
+ *
+ * LOADED is not a mutation: a stored transaction was read into memory, for
+ * example when an older month is decrypted. Consumers that track the loaded
+ * records treat it like an insertion, while consumers that react to data
+ * changes can ignore it. It carries the current version without advancing it.
+ *
+ * For transactions both values are snapshots taken when the change was
+ * committed, so later in-place edits of the live objects do not show up here.
+ * Budget changes carry the live Budget objects.
+ */
+public final class RepositoryChange<T> {
+    public enum Kind {
+        INSERTED, UPDATED, REMOVED, LOADED
+    }
+
+    /**
+     * Receives the changes of one commit, in order, on the main thread.
+     */
+    public interface Listener<T> {
+        void onChanges(List<RepositoryChange<T>> changes);
+    }
+
+    private final Kind kind;
+    private final T before;
+    private final T after;
+    private final long version;
+
+    RepositoryChange(Kind kind, T before, T after, long version) {
+        this.kind = kind;
+        this.before = before;
+        this.after = after;
+        this.version = version;
+    }
+
+    public Kind getKind() { return kind; }
+    public T getBefore() { return before; }
+    public T getAfter() { return after; }
+    public long getVersion() { return version; }
+}
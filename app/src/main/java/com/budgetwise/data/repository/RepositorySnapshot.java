@@ -0,0 +1,62 @@
+package com.budgetwise.data.repository;
+
+import com.budgetwise.data.models.Budget;
+import com.budgetwise.data.models.Transaction;
+import java.util.List;
+
+/**
+ * Consistent, immutable view of the loaded transactions and the budgets as of
+ * one repository version. The lists share structure with the repository's
+ * live state, so taking a snapshot copies nothing and later writes never
+ * affect it. The Transaction and Budget objects themselves are the live ones.
+ *
+ * Besides the overall version, each side carries the version of its own most
+ * recent change, so a reader of only one side can tell whether it changed.
+ * Loading older months into memory is not a change: two snapshots of the
+ * same version hold the same data, though one may have more of it loaded.
+ */
+public final class RepositorySnapshot {
+    private final long version;
+    private final long transactionsVersion;
+    private final long budgetsVersion;
+    private final List<Transaction> transactions;
+    private final List<Budget> budgets;
+    // What BudgetRepository answers its lock-free queries from
+    final PersistentSequence<Transaction> transactionsByDate;
+    final double unloadedBalance;
+    final int unloadedCount;
+
+    RepositorySnapshot(long version, long transactionsVersion, long budgetsVersion,
+                       List<Transaction> transactions, List<Budget> budgets) {
+        this(version, transactionsVersion, budgetsVersion, transactions, budgets,
+            PersistentSequence.empty(), 0.0, 0);
+    }
+
+    RepositorySnapshot(long version, long transactionsVersion, long budgetsVersion,
+                       List<Transaction> transactions, List<Budget> budgets,
+                       PersistentSequence<Transaction> transactionsByDate, double unloadedBalance,
+                       int unloadedCount) {
+        this.version = version;
+        this.transactionsVersion = transactionsVersion;
+        this.budgetsVersion = budgetsVersion;
+        this.transactions = transactions;
+        this.budgets = budgets;
+        this.transactionsByDate = transactionsByDate;
+        this.unloadedBalance = unloadedBalance;
+        this.unloadedCount = unloadedCount;
+    }
+
+    /**
+     * The same snapshot with the transactions in date order, oldest first.
+     */
+    RepositorySnapshot byDate() {
+        return new RepositorySnapshot(version, transactionsVersion, budgetsVersion, transactionsByDate, budgets,
+            transactionsByDate, unloadedBalance, unloadedCount);
+    }
+
+    public long getVersion() { return version; }
+    public long getTransactionsVersion() { return transactionsVersion; }
+    public long getBudgetsVersion() { return budgetsVersion; }
+    public List<Transaction> getTransactions() { return transactions; }
+    public List<Budget> getBudgets() { return budgets; }
+}
@@ -0,0 +1,195 @@
+package com.budgetwise.data.repository;
+
+import android.util.Log;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single-writer pipeline for BudgetRepository. Mutations run one at a time on
+ * one thread, in submission order. Whatever has queued up while the previous
+ * batch was committing is applied as the next batch and made durable with a
+ * single commit (group commit), so bursts cost one journal flush and one
+ * change notification instead of one per mutation.
+ */
+class RepositoryWriter {
+    private static final String TAG = "RepositoryWriter";
+    private static final int MAX_BATCH_SIZE = 512;
+    private static final int LOG_EVERY_COMMITS = 100;
+
+    /**
+     * Runs on the writer thread, under the repository lock, after each batch.
+     * Returns false if the batch could not be made durable.
+     */
+    interface Committer {
+        boolean commit();
+    }
+
+    private final Object lock;
+    private final Committer committer;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final LinkedBlockingQueue<Write> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private volatile Thread writerThread;
+
+    // Guarded by metricsLock
+    private final Object metricsLock = new Object();
+    private long commitCount;
+    private long mutationCount;
+    private long totalCommitNanos;
+    private long maxCommitNanos;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+    private int maxQueueDepth;
+
+    RepositoryWriter(Object lock, Committer committer) {
+        this.lock = lock;
+        this.committer = committer;
+    }
+
+    /**
+     * Queues a mutation. The returned future completes once the batch it was
+     * applied in has been committed, or fails with the mutation's exception or
+     * an IOException if the commit failed. A mutation must check its input
+     * before changing anything: one that throws midway is not rolled back, and
+     * what it already changed is committed with the rest of the batch.
+     */
+    Future<Void> submit(Runnable mutation) {
+        Write write = new Write(mutation);
+        int depth = queueDepth.incrementAndGet();
+        synchronized (metricsLock) {
+            maxQueueDepth = Math.max(maxQueueDepth, depth);
+        }
+        queue.add(write);
+        executor.execute(this::drain);
+        return write.future;
+    }
+
+    boolean isWriterThread() {
+        return Thread.currentThread() == writerThread;
+    }
+
+    int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    WriteMetrics getMetrics() {
+        synchronized (metricsLock) {
+            return new WriteMetrics(queueDepth.get(), maxQueueDepth, commitCount, mutationCount,
+                average(totalCommitNanos, commitCount), maxCommitNanos / 1_000_000.0,
+                average(totalLatencyNanos, mutationCount), maxLatencyNanos / 1_000_000.0);
+        }
+    }
+
+    // One drain is scheduled per submit; a drain that finds the queue already
+    // emptied by an earlier one simply returns
+    private void drain() {
+        writerThread = Thread.currentThread();
+        List<Write> batch = new ArrayList<>();
+        while (queue.drainTo(batch, MAX_BATCH_SIZE) > 0) {
+            commitBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void commitBatch(List<Write> batch) {
+        long start = System.nanoTime();
+        boolean durable;
+        synchronized (lock) {
+            for (Write write : batch) {
+                try {
+                    write.mutation.run();
+                } catch (Throwable e) {
+                    // Not rolled back: partial effects are committed with the batch; see submit
+                    Log.e(TAG, "Mutation failed", e);
+                    write.error = e;
+                }
+            }
+            try {
+                durable = committer.commit();
+            } catch (Throwable e) {
+                // Every future in the batch must still complete
+                Log.e(TAG, "Commit failed", e);
+                durable = false;
+            }
+        }
+        long end = System.nanoTime();
+        queueDepth.addAndGet(-batch.size());
+
+        for (Write write : batch) {
+            if (write.error != null) {
+                write.future.fail(write.error);
+            } else if (!durable) {
+                write.future.fail(new IOException("Commit failed"));
+            } else {
+                write.future.complete();
+            }
+        }
+
+        recordMetrics(batch, start, end);
+    }
+
+    private void recordMetrics(List<Write> batch, long start, long end) {
+        WriteMetrics snapshot = null;
+        synchronized (metricsLock) {
+            commitCount++;
+            mutationCount += batch.size();
+            totalCommitNanos += end - start;
+            maxCommitNanos = Math.max(maxCommitNanos, end - start);
+            for (Write write : batch) {
+                long latency = end - write.enqueuedAt;
+                totalLatencyNanos += latency;
+                maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+            }
+            if (commitCount % LOG_EVERY_COMMITS == 0) {
+                snapshot = getMetrics();
+            }
+        }
+        if (snapshot != null) {
+            Log.d(TAG, snapshot.toString());
+        }
+    }
+
+    private static double average(long totalNanos, long count) {
+        return count == 0 ? 0.0 : totalNanos / (count * 1_000_000.0);
+    }
+
+    private static class Write {
+        final Runnable mutation;
+        final long enqueuedAt = System.nanoTime();
+        final CommitFuture future = new CommitFuture();
+        Throwable error;
+
+        Write(Runnable mutation) {
+            this.mutation = mutation;
+        }
+    }
+
+    /**
+     * A future completed by the writer rather than by running a task.
+     */
+    private static class CommitFuture extends FutureTask<Void> {
+        CommitFuture() {
+            super(() -> null);
+        }
+
+        @Override
+        public void run() {
+            // Completed only through complete() and fail()
+        }
+
+        void complete() {
+            set(null);
+        }
+
+        void fail(Throwable error) {
+            setException(error);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.budgetwise.data.repository;
+
+import com.budgetwise.data.models.Transaction;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only columnar snapshot of transactions sorted by date, oldest first.
+ * Each field lives in its own primitive array so analytics passes can run as
+ * plain indexed loops without touching Transaction objects, boxing or Dates.
+ *
+ * Amounts are stored as whole cents. Types are {@link Transaction.TransactionType}
+ * ordinals, or {@link #TYPE_NONE}. Categories are ids into a dictionary, with
+ * id 0 reserved for a null category.
+ */
+public final class TransactionColumns {
+    public static final byte TYPE_NONE = -1;
+    public static final byte TYPE_INCOME = (byte) Transaction.TransactionType.INCOME.ordinal();
+    public static final byte TYPE_EXPENSE = (byte) Transaction.TransactionType.EXPENSE.ordinal();
+    public static final byte TYPE_TRANSFER = (byte) Transaction.TransactionType.TRANSFER.ordinal();
+
+    private static final TransactionColumns EMPTY = new TransactionColumns(
+        new long[0], new long[0], new byte[0], new int[0], new String[] {null});
+
+    private final long[] timeMillis;
+    private final long[] amountCents;
+    private final byte[] types;
+    private final int[] categoryIds;
+    private final String[] categories;
+
+    private TransactionColumns(long[] timeMillis, long[] amountCents, byte[] types,
+                               int[] categoryIds, String[] categories) {
+        this.timeMillis = timeMillis;
+        this.amountCents = amountCents;
+        this.types = types;
+        this.categoryIds = categoryIds;
+        this.categories = categories;
+    }
+
+    public static TransactionColumns empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Builds columns from transactions in any order. Records without a date
+     * are filed at epoch 0, matching the repository's date index.
+     */
+    public static TransactionColumns of(List<Transaction> transactions) {
+        if (transactions.isEmpty()) {
+            return EMPTY;
+        }
+        List<Transaction> sorted = transactions;
+        for (int i = 1; i < transactions.size(); i++) {
+            if (timeOf(transactions.get(i)) < timeOf(transactions.get(i - 1))) {
+                sorted = new ArrayList<>(transactions);
+                sorted.sort((t1, t2) -> Long.compare(timeOf(t1), timeOf(t2)));
+                break;
+            }
+        }
+
+        int size = sorted.size();
+        long[] timeMillis = new long[size];
+        long[] amountCents = new long[size];
+        byte[] types = new byte[size];
+        int[] categoryIds = new int[size];
+        Map<String, Integer> categoryLookup = new HashMap<>();
+        List<String> categories = new ArrayList<>();
+        categories.add(null);
+
+        for (int i = 0; i < size; i++) {
+            Transaction transaction = sorted.get(i);
+            timeMillis[i] = timeOf(transaction);
+            amountCents[i] = Math.round(transaction.getAmount() * 100);
+            types[i] = transaction.getType() != null ? (byte) transaction.getType().ordinal() : TYPE_NONE;
+
+            String category = transaction.getCategory();
+            if (category != null) {
+                Integer id = categoryLookup.get(category);
+                if (id == null) {
+                    id = categories.size();
+                    categoryLookup.put(category, id);
+                    categories.add(category);
+                }
+                categoryIds[i] = id;
+            }
+        }
+
+        return new TransactionColumns(timeMillis, amountCents, types, categoryIds,
+            categories.toArray(new String[0]));
+    }
+
+    public int size() {
+        return timeMillis.length;
+    }
+
+    public long timeAt(int index) {
+        return timeMillis[index];
+    }
+
+    public long amountCentsAt(int index) {
+        return amountCents[index];
+    }
+
+    public double amountAt(int index) {
+        return amountCents[index] / 100.0;
+    }
+
+    public byte typeAt(int index) {
+        return types[index];
+    }
+
+    public int categoryIdAt(int index) {
+        return categoryIds[index];
+    }
+
+    /**
+     * Number of category ids in use, including the reserved null id 0.
+     */
+    public int categoryCount() {
+        return categories.length;
+    }
+
+    public String categoryName(int categoryId) {
+        return categories[categoryId];
+    }
+
+    /**
+     * Index of the first transaction dated at or after {@code time}.
+     */
+    public int indexAtOrAfter(long time) {
+        int low = 0;
+        int high = timeMillis.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timeMillis[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Index of the first transaction dated strictly after {@code time}.
+     */
+    public int indexAfter(long time) {
+        return time == Long.MAX_VALUE ? timeMillis.length : indexAtOrAfter(time + 1);
+    }
+
+    /**
+     * Sum in cents of transactions of {@code type} within index range [from, to).
+     */
+    public long sumCents(byte type, int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            if (types[i] == type) {
+                sum += amountCents[i];
+            }
+        }
+        return sum;
+    }
+
+    public int count(byte type, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (types[i] == type) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Per-category sums in cents of transactions of {@code type} within
+     * [from, to), indexed by category id.
+     */
+    public long[] sumCentsByCategory(byte type, int from, int to) {
+        long[] sums = new long[categories.length];
+        for (int i = from; i < to; i++) {
+            if (types[i] == type) {
+                sums[categoryIds[i]] += amountCents[i];
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Converts per-category sums to the category name keyed map the UI expects,
+     * skipping categories with nothing in them.
+     */
+    public Map<String, Double> toCategoryAmounts(long[] centsByCategory) {
+        Map<String, Double> amounts = new HashMap<>();
+        for (int id = 0; id < centsByCategory.length; id++) {
+            if (centsByCategory[id] != 0) {
+                amounts.put(categories[id], centsByCategory[id] / 100.0);
+            }
+        }
+        return amounts;
+    }
+
+    private static long timeOf(Transaction transaction) {
+        return transaction.getDate() != null ? transaction.getDate().getTime() : 0L;
+    }
+}
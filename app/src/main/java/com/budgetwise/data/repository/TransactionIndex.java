@@ -0,0 +1,179 @@
+package com.budgetwise.data.repository;
+
+import com.budgetwise.data.models.Transaction;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory transaction set indexed by id (insertion ordered) and by date.
+ * A copy of each record as it was filed is kept alongside the live object, so
+ * a caller mutating a Transaction in place before updating it can neither
+ * leave a stale entry in the date index nor lose the previous values.
+ *
+ * Insertion order and date order are both kept in a
+ * {@link PersistentSequence}, so {@link #values()} and {@link #byDate()} are
+ * immutable snapshots that cost nothing to hand out and stay valid after
+ * later changes. The range queries work on such a snapshot, so readers can
+ * run them without any lock. Records dated in the same millisecond are in
+ * insertion order.
+ *
+ * Not thread-safe; BudgetRepository guards it.
+ */
+class TransactionIndex {
+    private final Map<String, Transaction> byId = new HashMap<>();
+    private PersistentSequence<Transaction> ordered = PersistentSequence.empty();
+    private long nextSequence;
+    private final Map<String, DateKey> dateKeys = new HashMap<>();
+    // Keyed by (date, sequence)
+    private PersistentSequence<Transaction> byDate = PersistentSequence.empty();
+
+    int size() {
+        return byId.size();
+    }
+
+    boolean contains(String id) {
+        return byId.containsKey(id);
+    }
+
+    Transaction get(String id) {
+        return byId.get(id);
+    }
+
+    /**
+     * The date (epoch millis) the record with this id is currently filed under.
+     */
+    long filedTimeOf(String id) {
+        DateKey key = dateKeys.get(id);
+        return key != null ? key.time : 0L;
+    }
+
+    /**
+     * The record's values as of its last put. Callers must not modify it.
+     */
+    Transaction filedCopyOf(String id) {
+        DateKey key = dateKeys.get(id);
+        return key != null ? key.filed : null;
+    }
+
+    /**
+     * Inserts or replaces by id, returning the filed copy of the previous
+     * version if any.
+     */
+    Transaction put(Transaction transaction) {
+        byId.put(transaction.getId(), transaction);
+        DateKey oldKey = dateKeys.get(transaction.getId());
+        if (oldKey != null) {
+            byDate = byDate.without(oldKey.time, oldKey.sequence);
+        }
+        // Replacements keep their original position
+        long sequence = oldKey != null ? oldKey.sequence : nextSequence++;
+        ordered = ordered.with(sequence, transaction);
+        Transaction filed = transaction.copy();
+        DateKey key = new DateKey(timeOf(filed), filed, sequence);
+        dateKeys.put(transaction.getId(), key);
+        byDate = byDate.with(key.time, sequence, transaction);
+        return oldKey != null ? oldKey.filed : null;
+    }
+
+    /**
+     * Removes by id, returning the filed copy of the removed record if any.
+     */
+    Transaction remove(String id) {
+        byId.remove(id);
+        DateKey key = dateKeys.remove(id);
+        if (key == null) {
+            return null;
+        }
+        byDate = byDate.without(key.time, key.sequence);
+        ordered = ordered.without(key.sequence);
+        return key.filed;
+    }
+
+    void clear() {
+        byId.clear();
+        dateKeys.clear();
+        byDate = PersistentSequence.empty();
+        ordered = PersistentSequence.empty();
+    }
+
+    /**
+     * Immutable snapshot of every record in insertion order.
+     */
+    List<Transaction> values() {
+        return ordered;
+    }
+
+    /**
+     * Immutable snapshot of every record in date order, oldest first.
+     */
+    PersistentSequence<Transaction> byDate() {
+        return byDate;
+    }
+
+    List<Transaction> between(long startMillis, long endMillis) {
+        return between(byDate, startMillis, endMillis);
+    }
+
+    List<Transaction> recent(int limit) {
+        return recent(byDate, limit);
+    }
+
+    /**
+     * Transactions of a {@link #byDate()} snapshot dated within
+     * [startMillis, endMillis], oldest first, in O(log n + k).
+     */
+    static List<Transaction> between(PersistentSequence<Transaction> byDate, long startMillis, long endMillis) {
+        if (startMillis > endMillis) {
+            return new ArrayList<>();
+        }
+        int from = byDate.rank(startMillis, Long.MIN_VALUE);
+        int to = endMillis == Long.MAX_VALUE ? byDate.size() : byDate.rank(endMillis + 1, Long.MIN_VALUE);
+        return new ArrayList<>(byDate.subList(from, to));
+    }
+
+    /**
+     * The {@code limit} most recent transactions of a {@link #byDate()}
+     * snapshot, newest first.
+     */
+    static List<Transaction> recent(PersistentSequence<Transaction> byDate, int limit) {
+        int count = Math.max(0, Math.min(limit, byDate.size()));
+        List<Transaction> recent = new ArrayList<>(count);
+        for (int i = byDate.size() - 1; recent.size() < count; i--) {
+            recent.add(byDate.get(i));
+        }
+        return recent;
+    }
+
+    /**
+     * Filed copies of every record, in insertion order.
+     */
+    List<Transaction> filedCopies() {
+        List<Transaction> copies = new ArrayList<>(byId.size());
+        for (Transaction transaction : ordered) {
+            copies.add(dateKeys.get(transaction.getId()).filed);
+        }
+        return copies;
+    }
+
+    private static long timeOf(Transaction transaction) {
+        return transaction.getDate() != null ? transaction.getDate().getTime() : 0L;
+    }
+
+    /**
+     * Where a record is filed: its date and sequence, which key it in both
+     * orders, and a copy of its values at the time.
+     */
+    private static final class DateKey {
+        final long time;
+        final Transaction filed;
+        final long sequence;
+
+        DateKey(long time, Transaction filed, long sequence) {
+            this.time = time;
+            this.filed = filed;
+            this.sequence = sequence;
+        }
+    }
+}
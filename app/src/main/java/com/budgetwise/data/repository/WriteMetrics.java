@@ -0,0 +1,40 @@
+package com.budgetwise.data.repository;
+
+import java.util.Locale;
+
+/**
+ * Point-in-time write pipeline statistics. Times are in milliseconds;
+ * latency is measured from submission to commit.
+ */
+public final class WriteMetrics {
+    public final int queueDepth;
+    public final int maxQueueDepth;
+    public final long commits;
+    public final long mutations;
+    public final double averageCommitMillis;
+    public final double maxCommitMillis;
+    public final double averageLatencyMillis;
+    public final double maxLatencyMillis;
+
+    WriteMetrics(int queueDepth, int maxQueueDepth, long commits, long mutations,
+            double averageCommitMillis, double maxCommitMillis,
+            double averageLatencyMillis, double maxLatencyMillis) {
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.commits = commits;
+        this.mutations = mutations;
+        this.averageCommitMillis = averageCommitMillis;
+        this.maxCommitMillis = maxCommitMillis;
+        this.averageLatencyMillis = averageLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+            "queue=%d (max %d), commits=%d, mutations=%d, commit avg %.2fms max %.2fms, "
+                + "latency avg %.2fms max %.2fms",
+            queueDepth, maxQueueDepth, commits, mutations, averageCommitMillis,
+            maxCommitMillis, averageLatencyMillis, maxLatencyMillis);
+    }
+}
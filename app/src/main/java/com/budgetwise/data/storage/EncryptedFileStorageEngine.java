@@ -0,0 +1,548 @@
+package com.budgetwise.data.storage;
+
+import android.content.Context;
+import android.util.Log;
+import com.budgetwise.data.models.Budget;
+import com.budgetwise.data.models.Transaction;
+import com.budgetwise.security.EncryptionManager;
+import com.google.gson.Gson;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Storage engine backed by one append-only file. Every partition or budget
+ * write appends a frame and supersedes the previous frame for the same key;
+ * nothing is rewritten in place.
+ *
+ * Frame layout: int header length, encrypted header (kind, partition and its
+ * summary), int payload length, encrypted RecordCodec payload. Opening the
+ * file decrypts only the headers, so the index is rebuilt without touching
+ * any transaction data. Once superseded frames make up most of the file it is
+ * compacted by copying the live frames, still encrypted, into a new file.
+ */
+public class EncryptedFileStorageEngine implements StorageEngine {
+    private static final String TAG = "EncryptedFileStorage";
+    private static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+    private static final long COMPACTION_MIN_BYTES = 256 * 1024;
+
+    private static final int KIND_PARTITION = 1;
+    private static final int KIND_DELETE_PARTITION = 2;
+    private static final int KIND_BUDGETS = 3;
+
+    private final File file;
+    private final EncryptionManager encryptionManager;
+    private final Gson gson = new Gson();
+
+    private final SortedMap<String, PartitionSummary> index = new TreeMap<>();
+    private final Map<String, Frame> partitionFrames = new HashMap<>();
+    private Frame budgetsFrame;
+    private FileOutputStream outputTarget;
+    private DataOutputStream output;
+    private long fileLength;
+    private long liveBytes;
+
+    public EncryptedFileStorageEngine(Context context, EncryptionManager encryptionManager, String fileName) {
+        this.file = new File(context.getFilesDir(), fileName);
+        this.encryptionManager = encryptionManager;
+    }
+
+    @Override
+    public String getName() {
+        return StorageEngines.ENCRYPTED_FILE;
+    }
+
+    @Override
+    public synchronized SortedMap<String, PartitionSummary> load() {
+        closeOutput();
+        index.clear();
+        partitionFrames.clear();
+        budgetsFrame = null;
+        liveBytes = 0;
+
+        long validLength = 0;
+        if (file.exists()) {
+            try (DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    int headerLength;
+                    try {
+                        headerLength = input.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (headerLength <= 0 || headerLength > MAX_FRAME_BYTES) {
+                        Log.w(TAG, "Corrupt frame header length: " + headerLength);
+                        break;
+                    }
+                    byte[] header = new byte[headerLength];
+                    input.readFully(header);
+                    int payloadLength = input.readInt();
+                    if (payloadLength < 0 || payloadLength > MAX_FRAME_BYTES) {
+                        Log.w(TAG, "Corrupt frame payload length: " + payloadLength);
+                        break;
+                    }
+                    skipFully(input, payloadLength);
+
+                    Header decoded = decodeHeader(header);
+                    if (decoded == null) {
+                        break;
+                    }
+                    Frame frame = new Frame(validLength, 8 + headerLength + payloadLength,
+                        validLength + 8 + headerLength);
+                    apply(decoded, frame);
+                    validLength += frame.length;
+                }
+            } catch (EOFException e) {
+                Log.w(TAG, "Dropping torn frame at offset " + validLength);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to open storage file", e);
+            }
+            truncateTo(validLength);
+        }
+        fileLength = validLength;
+        Log.d(TAG, "Opened " + index.size() + " partitions, " + liveBytes + "/" + fileLength + " bytes live");
+        return new TreeMap<>(index);
+    }
+
+    @Override
+    public synchronized List<Transaction> readPartition(String partition) {
+        Frame frame = partitionFrames.get(partition);
+        if (frame == null) {
+            return new ArrayList<>();
+        }
+        try {
+            return RecordCodec.readTransactions(readPayload(frame));
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to read partition " + partition, e);
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public synchronized boolean writePartition(String partition, List<Transaction> transactions) {
+        Header header = new Header();
+        header.partition = partition;
+        try {
+            if (transactions.isEmpty()) {
+                if (!partitionFrames.containsKey(partition)) {
+                    return true;
+                }
+                header.kind = KIND_DELETE_PARTITION;
+                apply(header, append(header, new byte[0]));
+            } else {
+                header.kind = KIND_PARTITION;
+                header.summary = PartitionSummary.of(partition, transactions);
+                apply(header, append(header, RecordCodec.encodeTransactions(transactions)));
+            }
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to write partition " + partition, e);
+            closeOutput();
+            truncateTo(fileLength);
+            return false;
+        }
+    }
+
+    /**
+     * Each frame already carries its partition's summary, so committing the
+     * index only has to make the appended frames durable.
+     */
+    @Override
+    public synchronized boolean commitIndex() {
+        if (!sync()) {
+            return false;
+        }
+        if (fileLength > COMPACTION_MIN_BYTES && liveBytes * 2 < fileLength) {
+            compact();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized SortedMap<String, PartitionSummary> getIndex() {
+        return new TreeMap<>(index);
+    }
+
+    @Override
+    public synchronized List<Budget> readBudgets() {
+        if (budgetsFrame == null) {
+            return new ArrayList<>();
+        }
+        try {
+            return RecordCodec.readBudgets(readPayload(budgetsFrame));
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to read budgets", e);
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public synchronized boolean writeBudgets(List<Budget> budgets) {
+        Header header = new Header();
+        header.kind = KIND_BUDGETS;
+        try {
+            apply(header, append(header, RecordCodec.encodeBudgets(budgets)));
+            return sync();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to write budgets", e);
+            closeOutput();
+            truncateTo(fileLength);
+            return false;
+        }
+    }
+
+    /**
+     * Decrypts and reseals the partition's current frame outside the engine
+     * lock; only reading the frame holds it.
+     */
+    @Override
+    public Resealed resealPartition(String partition) {
+        Frame frame;
+        byte[] sealed;
+        synchronized (this) {
+            frame = partitionFrames.get(partition);
+            if (frame == null) {
+                return new ResealedFrame(partition, null, null);
+            }
+            try {
+                sealed = readSealedPayload(frame);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to read partition " + partition, e);
+                return null;
+            }
+        }
+        try {
+            if (EncryptionManager.getKeyVersion(sealed) == encryptionManager.getCurrentKeyVersion()) {
+                return new ResealedFrame(partition, frame, null);
+            }
+            return new ResealedFrame(partition, frame, seal(openBytes(sealed)));
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to reseal partition " + partition, e);
+            return null;
+        }
+    }
+
+    /**
+     * Appends a frame with the resealed payload, provided the partition's
+     * frame is still the one it was read from. Compaction moves frames too,
+     * which also makes the result stale. Superseded frames go away with the
+     * next compaction.
+     */
+    @Override
+    public synchronized int storeResealed(Resealed resealed) {
+        ResealedFrame resealedFrame = (ResealedFrame) resealed;
+        if (resealedFrame.payload == null) {
+            return 0;
+        }
+        if (partitionFrames.get(resealedFrame.partition) != resealedFrame.frame) {
+            return RESEAL_STALE;
+        }
+        try {
+            Header header = new Header();
+            header.kind = KIND_PARTITION;
+            header.partition = resealedFrame.partition;
+            header.summary = index.get(resealedFrame.partition);
+            apply(header, appendSealed(header, resealedFrame.payload));
+            return header.summary.count;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to re-encrypt partition " + resealedFrame.partition, e);
+            closeOutput();
+            truncateTo(fileLength);
+            return -1;
+        }
+    }
+
+    @Override
+    public synchronized boolean reencryptBudgets() {
+        if (budgetsFrame == null) {
+            return true;
+        }
+        try {
+            byte[] sealed = readSealedPayload(budgetsFrame);
+            if (EncryptionManager.getKeyVersion(sealed) == encryptionManager.getCurrentKeyVersion()) {
+                return true;
+            }
+            Header header = new Header();
+            header.kind = KIND_BUDGETS;
+            apply(header, append(header, openBytes(sealed)));
+            return sync();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to re-encrypt budgets", e);
+            closeOutput();
+            truncateTo(fileLength);
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        closeOutput();
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete " + file);
+        }
+        index.clear();
+        partitionFrames.clear();
+        budgetsFrame = null;
+        fileLength = 0;
+        liveBytes = 0;
+    }
+
+    @Override
+    public synchronized void close() {
+        closeOutput();
+    }
+
+    private void apply(Header header, Frame frame) {
+        switch (header.kind) {
+            case KIND_PARTITION:
+                release(partitionFrames.put(header.partition, frame));
+                index.put(header.partition, header.summary);
+                liveBytes += frame.length;
+                break;
+            case KIND_DELETE_PARTITION:
+                release(partitionFrames.remove(header.partition));
+                index.remove(header.partition);
+                break;
+            case KIND_BUDGETS:
+                release(budgetsFrame);
+                budgetsFrame = frame;
+                liveBytes += frame.length;
+                break;
+            default:
+                Log.w(TAG, "Unknown frame kind: " + header.kind);
+        }
+    }
+
+    private void release(Frame superseded) {
+        if (superseded != null) {
+            liveBytes -= superseded.length;
+        }
+    }
+
+    private Frame append(Header header, byte[] payload) throws IOException {
+        return appendSealed(header, payload.length == 0 ? payload : seal(payload));
+    }
+
+    private Frame appendSealed(Header header, byte[] encryptedPayload) throws IOException {
+        byte[] encryptedHeader = seal(gson.toJson(header).getBytes(StandardCharsets.UTF_8));
+
+        DataOutputStream out = openOutput();
+        out.writeInt(encryptedHeader.length);
+        out.write(encryptedHeader);
+        out.writeInt(encryptedPayload.length);
+        out.write(encryptedPayload);
+
+        Frame frame = new Frame(fileLength, 8 + encryptedHeader.length + encryptedPayload.length,
+            fileLength + 8 + encryptedHeader.length);
+        fileLength += frame.length;
+        return frame;
+    }
+
+    private DataInputStream readPayload(Frame frame) throws IOException {
+        return new DataInputStream(open(readSealedPayload(frame)));
+    }
+
+    private byte[] readSealedPayload(Frame frame) throws IOException {
+        if (output != null) {
+            output.flush();
+        }
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            input.seek(frame.payloadOffset);
+            byte[] payload = new byte[input.readInt()];
+            input.readFully(payload);
+            return payload;
+        }
+    }
+
+    private Header decodeHeader(byte[] header) {
+        try {
+            return gson.fromJson(new InputStreamReader(open(header), StandardCharsets.UTF_8), Header.class);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to decode frame header", e);
+            return null;
+        }
+    }
+
+    // Frames hold raw ciphertext rather than the Base64 text of
+    // encryptBytes(), which saves a third of the file and two copies
+    private byte[] seal(byte[] plain) {
+        byte[] sealed = new byte[EncryptionManager.getEncryptedSize(plain.length)];
+        encryptionManager.encrypt(ByteBuffer.wrap(plain), ByteBuffer.wrap(sealed));
+        return sealed;
+    }
+
+    private ByteArrayInputStream open(byte[] sealed) {
+        byte[] plain = new byte[EncryptionManager.getMaxDecryptedSize(sealed.length)];
+        int length = encryptionManager.decrypt(ByteBuffer.wrap(sealed), ByteBuffer.wrap(plain));
+        return new ByteArrayInputStream(plain, 0, length);
+    }
+
+    private byte[] openBytes(byte[] sealed) {
+        byte[] plain = new byte[EncryptionManager.getMaxDecryptedSize(sealed.length)];
+        int length = encryptionManager.decrypt(ByteBuffer.wrap(sealed), ByteBuffer.wrap(plain));
+        return length == plain.length ? plain : Arrays.copyOf(plain, length);
+    }
+
+    private boolean sync() {
+        if (output == null) {
+            return true;
+        }
+        try {
+            output.flush();
+            outputTarget.getFD().sync();
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to sync storage file", e);
+            return false;
+        }
+    }
+
+    /**
+     * Copies the live frames, as stored, into a new file and swaps it in.
+     * Frames are self-describing, so the copy needs no decryption.
+     */
+    private void compact() {
+        closeOutput();
+        File compacted = new File(file.getPath() + ".compact");
+        List<Frame> live = new ArrayList<>(partitionFrames.values());
+        if (budgetsFrame != null) {
+            live.add(budgetsFrame);
+        }
+
+        Map<Frame, Frame> moved = new HashMap<>();
+        long length = 0;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileOutputStream target = new FileOutputStream(compacted)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(target));
+            for (Frame frame : live) {
+                byte[] bytes = new byte[frame.length];
+                input.seek(frame.start);
+                input.readFully(bytes);
+                out.write(bytes);
+                moved.put(frame, new Frame(length, frame.length, length + (frame.payloadOffset - frame.start)));
+                length += frame.length;
+            }
+            out.flush();
+            target.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Compaction failed, keeping the current file", e);
+            compacted.delete();
+            return;
+        }
+
+        if (!compacted.renameTo(file)) {
+            Log.e(TAG, "Failed to replace storage file after compaction");
+            compacted.delete();
+            return;
+        }
+        for (Map.Entry<String, Frame> entry : partitionFrames.entrySet()) {
+            entry.setValue(moved.get(entry.getValue()));
+        }
+        if (budgetsFrame != null) {
+            budgetsFrame = moved.get(budgetsFrame);
+        }
+        Log.d(TAG, "Compacted storage file from " + fileLength + " to " + length + " bytes");
+        fileLength = length;
+        liveBytes = length;
+    }
+
+    private DataOutputStream openOutput() throws IOException {
+        if (output == null) {
+            outputTarget = new FileOutputStream(file, true);
+            output = new DataOutputStream(new BufferedOutputStream(outputTarget));
+        }
+        return output;
+    }
+
+    private void closeOutput() {
+        if (output != null) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close storage file", e);
+            }
+            output = null;
+            outputTarget = null;
+        }
+    }
+
+    private void truncateTo(long length) {
+        if (!file.exists()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() != length) {
+                raf.setLength(length);
+                raf.getFD().sync();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to truncate storage file", e);
+        }
+    }
+
+    private static void skipFully(DataInputStream input, int count) throws IOException {
+        int remaining = count;
+        while (remaining > 0) {
+            int skipped = input.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static class Header {
+        int kind;
+        String partition;
+        PartitionSummary summary;
+    }
+
+    private static class ResealedFrame implements Resealed {
+        final String partition;
+        final Frame frame;
+        // Null when there is nothing to store
+        final byte[] payload;
+
+        ResealedFrame(String partition, Frame frame, byte[] payload) {
+            this.partition = partition;
+            this.frame = frame;
+            this.payload = payload;
+        }
+
+        @Override
+        public String getPartition() {
+            return partition;
+        }
+    }
+
+    private static class Frame {
+        final long start;
+        final int length;
+        final long payloadOffset;
+
+        Frame(long start, int length, long payloadOffset) {
+            this.start = start;
+            this.length = length;
+            this.payloadOffset = payloadOffset;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.budgetwise.data.storage;
+
+import com.budgetwise.data.models.Transaction;
+import java.util.List;
+
+/**
+ * Count and totals of one month partition, kept in each engine's index so
+ * callers can account for months they have not decrypted.
+ */
+public class PartitionSummary {
+    public String partition;
+    public int count;
+    public double income;
+    public double expense;
+
+    static PartitionSummary of(String partition, List<Transaction> transactions) {
+        PartitionSummary summary = new PartitionSummary();
+        summary.partition = partition;
+        summary.count = transactions.size();
+        for (Transaction transaction : transactions) {
+            if (transaction.getType() == Transaction.TransactionType.INCOME) {
+                summary.income += transaction.getAmount();
+            } else if (transaction.getType() == Transaction.TransactionType.EXPENSE) {
+                summary.expense += transaction.getAmount();
+            }
+        }
+        return summary;
+    }
+}
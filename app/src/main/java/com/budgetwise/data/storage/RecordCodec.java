@@ -0,0 +1,367 @@
+package com.budgetwise.data.storage;
+
+import com.budgetwise.data.models.Budget;
+import com.budgetwise.data.models.Transaction;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Versioned binary encoding for transaction and budget lists. Compared to the
+ * Gson JSON it replaces, field names disappear, UUIDs are two longs, dates are
+ * varint epoch millis, enums are ordinals and categories are written once in
+ * a per-list dictionary.
+ *
+ * Layout: magic "BW", format version, record kind, category dictionary,
+ * varint record count, then the records.
+ */
+public final class RecordCodec {
+    private static final byte MAGIC_0 = 'B';
+    private static final byte MAGIC_1 = 'W';
+    private static final int FORMAT_VERSION = 1;
+    private static final int KIND_TRANSACTIONS = 1;
+    private static final int KIND_BUDGETS = 2;
+
+    private static final int ID_UUID = 0;
+    private static final int ID_STRING = 1;
+    private static final int NULL_ORDINAL = 0xFF;
+
+    private static final int FLAG_RECURRING = 1;
+    private static final int FLAG_HAS_DATE = 1 << 1;
+    private static final int FLAG_ACTIVE = 1 << 2;
+
+    // Counts and lengths come from the input, so allocations based on them are capped
+    private static final int MAX_PREALLOCATED_RECORDS = 1024;
+    private static final int MAX_STRING_BYTES = 1024 * 1024;
+
+    private RecordCodec() {
+    }
+
+    /**
+     * True if the payload was produced by this codec rather than being legacy JSON.
+     */
+    public static boolean isEncoded(byte[] data) {
+        return data != null && data.length >= 4 && data[0] == MAGIC_0 && data[1] == MAGIC_1;
+    }
+
+    public static byte[] encodeTransactions(List<Transaction> transactions) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 + transactions.size() * 48);
+        DataOutputStream out = new DataOutputStream(buffer);
+        writeTransactions(transactions, out);
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Streaming form of {@link #encodeTransactions}, for callers that write
+     * straight into a file or cipher stream.
+     */
+    public static void writeTransactions(List<Transaction> transactions, DataOutputStream out) throws IOException {
+        CategoryDictionary dictionary = new CategoryDictionary();
+        for (Transaction transaction : transactions) {
+            dictionary.add(transaction.getCategory());
+        }
+
+        writeHeader(out, KIND_TRANSACTIONS);
+        dictionary.writeTo(out);
+        writeVarLong(out, transactions.size());
+
+        for (Transaction transaction : transactions) {
+            writeId(out, transaction.getId());
+            out.writeDouble(transaction.getAmount());
+            writeString(out, transaction.getDescription());
+            writeVarLong(out, dictionary.indexOf(transaction.getCategory()));
+            out.writeByte(transaction.getType() != null ? transaction.getType().ordinal() : NULL_ORDINAL);
+
+            int flags = 0;
+            if (transaction.isRecurring()) flags |= FLAG_RECURRING;
+            if (transaction.getDate() != null) flags |= FLAG_HAS_DATE;
+            out.writeByte(flags);
+            if (transaction.getDate() != null) {
+                writeSignedVarLong(out, transaction.getDate().getTime());
+            }
+
+            writeString(out, transaction.getNotes());
+            writeSignedVarLong(out, transaction.getCreatedAt());
+            // Usually close to createdAt, so the delta stays short
+            writeSignedVarLong(out, transaction.getUpdatedAt() - transaction.getCreatedAt());
+        }
+    }
+
+    public static List<Transaction> decodeTransactions(byte[] data) throws IOException {
+        return readTransactions(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    public static List<Transaction> readTransactions(DataInputStream in) throws IOException {
+        readHeader(in, KIND_TRANSACTIONS);
+        String[] categories = CategoryDictionary.readFrom(in);
+        int count = readCount(in);
+
+        Transaction.TransactionType[] types = Transaction.TransactionType.values();
+        List<Transaction> transactions = new ArrayList<>(Math.min(count, MAX_PREALLOCATED_RECORDS));
+        for (int i = 0; i < count; i++) {
+            Transaction transaction = new Transaction();
+            transaction.setId(readId(in));
+            transaction.setAmount(in.readDouble());
+            transaction.setDescription(readString(in));
+            transaction.setCategory(readCategory(in, categories));
+            int type = in.readUnsignedByte();
+            transaction.setType(type != NULL_ORDINAL ? types[checkOrdinal(type, types.length)] : null);
+
+            int flags = in.readUnsignedByte();
+            transaction.setRecurring((flags & FLAG_RECURRING) != 0);
+            transaction.setDate((flags & FLAG_HAS_DATE) != 0 ? new Date(readSignedVarLong(in)) : null);
+
+            transaction.setNotes(readString(in));
+            long createdAt = readSignedVarLong(in);
+            transaction.setCreatedAt(createdAt);
+            transaction.setUpdatedAt(createdAt + readSignedVarLong(in));
+            transactions.add(transaction);
+        }
+        return transactions;
+    }
+
+    public static byte[] encodeBudgets(List<Budget> budgets) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 + budgets.size() * 64);
+        DataOutputStream out = new DataOutputStream(buffer);
+        writeBudgets(budgets, out);
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    public static void writeBudgets(List<Budget> budgets, DataOutputStream out) throws IOException {
+        CategoryDictionary dictionary = new CategoryDictionary();
+        for (Budget budget : budgets) {
+            dictionary.add(budget.getCategory());
+        }
+
+        writeHeader(out, KIND_BUDGETS);
+        dictionary.writeTo(out);
+        writeVarLong(out, budgets.size());
+
+        for (Budget budget : budgets) {
+            writeId(out, budget.getId());
+            writeVarLong(out, dictionary.indexOf(budget.getCategory()));
+            out.writeDouble(budget.getBudgetAmount());
+            out.writeDouble(budget.getSpentAmount());
+            out.writeByte(budget.getPeriod() != null ? budget.getPeriod().ordinal() : NULL_ORDINAL);
+            out.writeByte(budget.isActive() ? FLAG_ACTIVE : 0);
+            writeSignedVarLong(out, budget.getStartDate());
+            writeSignedVarLong(out, budget.getEndDate() - budget.getStartDate());
+            writeSignedVarLong(out, budget.getCreatedAt());
+            writeSignedVarLong(out, budget.getUpdatedAt() - budget.getCreatedAt());
+        }
+    }
+
+    public static List<Budget> decodeBudgets(byte[] data) throws IOException {
+        return readBudgets(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    public static List<Budget> readBudgets(DataInputStream in) throws IOException {
+        readHeader(in, KIND_BUDGETS);
+        String[] categories = CategoryDictionary.readFrom(in);
+        int count = readCount(in);
+
+        Budget.BudgetPeriod[] periods = Budget.BudgetPeriod.values();
+        List<Budget> budgets = new ArrayList<>(Math.min(count, MAX_PREALLOCATED_RECORDS));
+        for (int i = 0; i < count; i++) {
+            Budget budget = new Budget();
+            budget.setId(readId(in));
+            budget.setCategory(readCategory(in, categories));
+            budget.setBudgetAmount(in.readDouble());
+            budget.setSpentAmount(in.readDouble());
+            int period = in.readUnsignedByte();
+            if (period != NULL_ORDINAL) {
+                budget.setPeriod(periods[checkOrdinal(period, periods.length)]);
+            }
+            budget.setActive((in.readUnsignedByte() & FLAG_ACTIVE) != 0);
+            long startDate = readSignedVarLong(in);
+            budget.setStartDate(startDate);
+            budget.setEndDate(startDate + readSignedVarLong(in));
+            long createdAt = readSignedVarLong(in);
+            budget.setCreatedAt(createdAt);
+            budget.setUpdatedAt(createdAt + readSignedVarLong(in));
+            budgets.add(budget);
+        }
+        return budgets;
+    }
+
+    private static void writeHeader(DataOutputStream out, int kind) throws IOException {
+        out.writeByte(MAGIC_0);
+        out.writeByte(MAGIC_1);
+        out.writeByte(FORMAT_VERSION);
+        out.writeByte(kind);
+    }
+
+    private static void readHeader(DataInputStream in, int expectedKind) throws IOException {
+        if (in.readByte() != MAGIC_0 || in.readByte() != MAGIC_1) {
+            throw new IOException("Not a BudgetWise record payload");
+        }
+        int version = in.readUnsignedByte();
+        if (version > FORMAT_VERSION) {
+            throw new IOException("Unsupported record format version " + version);
+        }
+        int kind = in.readUnsignedByte();
+        if (kind != expectedKind) {
+            throw new IOException("Unexpected record kind " + kind);
+        }
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        long count = readVarLong(in);
+        if (count < 0 || count > Integer.MAX_VALUE) {
+            throw new IOException("Invalid record count " + count);
+        }
+        return (int) count;
+    }
+
+    private static String readCategory(DataInputStream in, String[] categories) throws IOException {
+        long index = readVarLong(in);
+        if (index < 0 || index >= categories.length) {
+            throw new IOException("Invalid category index " + index);
+        }
+        return categories[(int) index];
+    }
+
+    private static int checkOrdinal(int ordinal, int count) throws IOException {
+        if (ordinal >= count) {
+            throw new IOException("Invalid enum ordinal " + ordinal);
+        }
+        return ordinal;
+    }
+
+    private static void writeId(DataOutputStream out, String id) throws IOException {
+        UUID uuid = parseUuid(id);
+        if (uuid != null) {
+            out.writeByte(ID_UUID);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else {
+            out.writeByte(ID_STRING);
+            writeString(out, id);
+        }
+    }
+
+    private static String readId(DataInputStream in) throws IOException {
+        int kind = in.readUnsignedByte();
+        if (kind == ID_UUID) {
+            return new UUID(in.readLong(), in.readLong()).toString();
+        }
+        if (kind != ID_STRING) {
+            throw new IOException("Invalid id kind " + kind);
+        }
+        return readString(in);
+    }
+
+    private static UUID parseUuid(String id) {
+        if (id == null || id.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(id);
+            // Only use the compact form if it round-trips to the same text
+            return uuid.toString().equals(id) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Strings are written as varint (byte length + 1) so that 0 can mean null
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        long length = readVarLong(in);
+        if (length == 0) {
+            return null;
+        }
+        if (length < 0 || length - 1 > MAX_STRING_BYTES) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[(int) (length - 1)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static void writeSignedVarLong(DataOutputStream out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long readSignedVarLong(DataInputStream in) throws IOException {
+        long raw = readVarLong(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /**
+     * Index 0 is reserved for a null category.
+     */
+    private static class CategoryDictionary {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        void add(String category) {
+            if (category != null && !indexes.containsKey(category)) {
+                indexes.put(category, values.size() + 1);
+                values.add(category);
+            }
+        }
+
+        int indexOf(String category) {
+            return category == null ? 0 : indexes.get(category);
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            writeVarLong(out, values.size());
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+
+        static String[] readFrom(DataInputStream in) throws IOException {
+            int size = readCount(in);
+            // Grown as entries are read, so a corrupt size cannot force a huge allocation
+            List<String> categories = new ArrayList<>(Math.min(size, MAX_PREALLOCATED_RECORDS) + 1);
+            categories.add(null);
+            for (int i = 1; i <= size; i++) {
+                categories.add(readString(in));
+            }
+            return categories.toArray(new String[0]);
+        }
+    }
+}
@@ -3,12 +3,16 @@ package com.budgetwise.data.storage;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.util.Log;
+import com.budgetwise.data.models.Budget;
+import com.budgetwise.data.models.Transaction;
 import com.budgetwise.security.EncryptionManager;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class SecurePreferences {
@@ -20,7 +24,11 @@ public class SecurePreferences {
     private final Gson gson;
 
     public SecurePreferences(Context context, EncryptionManager encryptionManager) {
-        this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this(context, encryptionManager, PREFS_NAME);
+    }
+
+    public SecurePreferences(Context context, EncryptionManager encryptionManager, String prefsName) {
+        this.preferences = context.getSharedPreferences(prefsName, Context.MODE_PRIVATE);
         this.encryptionManager = encryptionManager;
         this.gson = new Gson();
     }
@@ -78,6 +86,20 @@ public class SecurePreferences {
         }
     }
 
+    /**
+     * Like {@link #putList} but writes synchronously, for snapshots that other
+     * state (such as the journal) depends on being durable.
+     */
+    public <T> boolean commitList(String key, List<T> list) {
+        try {
+            String encryptedValue = encryptionManager.encrypt(gson.toJson(list));
+            return preferences.edit().putString(key, encryptedValue).commit();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to commit list", e);
+            return false;
+        }
+    }
+
     public <T> List<T> getList(String key, Type listType) {
         try {
             String json = getString(key, null);
@@ -91,6 +113,70 @@ public class SecurePreferences {
         }
     }
 
+    // Transactions and budgets are stored with RecordCodec. Values written as
+    // JSON by older versions are still readable and get rewritten on next save.
+    public boolean commitTransactions(String key, List<Transaction> transactions) {
+        try {
+            String encryptedValue = encryptionManager.encryptBytes(RecordCodec.encodeTransactions(transactions));
+            return preferences.edit().putString(key, encryptedValue).commit();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to commit transactions", e);
+            return false;
+        }
+    }
+
+    public List<Transaction> getTransactions(String key) {
+        try {
+            byte[] data = getBytes(key);
+            if (data == null) {
+                return new ArrayList<>();
+            }
+            if (RecordCodec.isEncoded(data)) {
+                return RecordCodec.decodeTransactions(data);
+            }
+            Type listType = new TypeToken<List<Transaction>>(){}.getType();
+            return gson.fromJson(new String(data, StandardCharsets.UTF_8), listType);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to retrieve transactions", e);
+            return new ArrayList<>();
+        }
+    }
+
+    public boolean commitBudgets(String key, List<Budget> budgets) {
+        try {
+            String encryptedValue = encryptionManager.encryptBytes(RecordCodec.encodeBudgets(budgets));
+            return preferences.edit().putString(key, encryptedValue).commit();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to commit budgets", e);
+            return false;
+        }
+    }
+
+    public List<Budget> getBudgets(String key) {
+        try {
+            byte[] data = getBytes(key);
+            if (data == null) {
+                return new ArrayList<>();
+            }
+            if (RecordCodec.isEncoded(data)) {
+                return RecordCodec.decodeBudgets(data);
+            }
+            Type listType = new TypeToken<List<Budget>>(){}.getType();
+            return gson.fromJson(new String(data, StandardCharsets.UTF_8), listType);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to retrieve budgets", e);
+            return new ArrayList<>();
+        }
+    }
+
+    private byte[] getBytes(String key) {
+        String encryptedValue = preferences.getString(key, null);
+        if (encryptedValue == null) {
+            return null;
+        }
+        return encryptionManager.decryptBytes(encryptedValue);
+    }
+
     public void putBoolean(String key, boolean value) {
         putString(key, String.valueOf(value));
     }
@@ -126,6 +212,75 @@ public class SecurePreferences {
         }
     }
 
+    /**
+     * Keys whose values are not encrypted under the current data key, for
+     * key rotation.
+     */
+    public List<String> getStaleKeys() {
+        List<String> stale = new ArrayList<>();
+        try {
+            int currentVersion = encryptionManager.getCurrentKeyVersion();
+            for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+                if (entry.getValue() instanceof String
+                        && encryptionManager.getKeyVersion((String) entry.getValue()) != currentVersion) {
+                    stale.add(entry.getKey());
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to list stale keys", e);
+        }
+        return stale;
+    }
+
+    /**
+     * Re-encrypts one value under the current data key. The value is only
+     * replaced once it has been decrypted, so a failure never loses it.
+     */
+    public boolean reencrypt(String key) {
+        try {
+            String encryptedValue = preferences.getString(key, null);
+            if (encryptedValue == null
+                    || encryptionManager.getKeyVersion(encryptedValue) == encryptionManager.getCurrentKeyVersion()) {
+                return true;
+            }
+            byte[] data = encryptionManager.decryptBytes(encryptedValue);
+            return preferences.edit().putString(key, encryptionManager.encryptBytes(data)).commit();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to re-encrypt " + key, e);
+            return false;
+        }
+    }
+
+    /**
+     * The stored value, still encrypted, or null. With {@link #reseal} and
+     * {@link #replaceEncrypted} this splits {@link #reencrypt} so the
+     * decryption and encryption can happen on another thread.
+     */
+    public String getEncrypted(String key) {
+        return preferences.getString(key, null);
+    }
+
+    /**
+     * Returns an encrypted value under the current data key: the value itself
+     * if it already is, otherwise decrypted and encrypted again. Null on
+     * failure.
+     */
+    public String reseal(String encryptedValue) {
+        try {
+            if (encryptionManager.getKeyVersion(encryptedValue) == encryptionManager.getCurrentKeyVersion()) {
+                return encryptedValue;
+            }
+            return encryptionManager.encryptBytes(encryptionManager.decryptBytes(encryptedValue));
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to reseal value", e);
+            return null;
+        }
+    }
+
+    public boolean replaceEncrypted(String key, String encryptedValue) {
+        return preferences.edit().putString(key, encryptedValue).commit();
+    }
+
     public void remove(String key) {
         preferences.edit().remove(key).apply();
     }
@@ -0,0 +1,494 @@
+package com.budgetwise.data.storage;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+import com.budgetwise.data.models.Budget;
+import com.budgetwise.data.models.Transaction;
+import com.budgetwise.security.EncryptionManager;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Storage engine with one SQLite row per transaction. Rows are indexed by
+ * partition, so reading or rewriting a month touches only that month's rows.
+ *
+ * Each row's record is sealed on its own, bound to its id and version
+ * (updatedAt), and rewriting a partition or the budget list re-encrypts only
+ * the records whose version changed; the models advance updatedAt on every
+ * edit, even within one millisecond. The binding does not stop a whole row
+ * from being replaced by an older copy of itself. The date is stored in the
+ * clear to order a partition's rows.
+ */
+public class SqliteStorageEngine implements StorageEngine {
+    private static final String TAG = "SqliteStorageEngine";
+    private static final int DATABASE_VERSION = 3;
+    // Rows written by schema version 1 hold Base64 text from encryptBytes()
+    private static final long LEGACY_VERSION = -1;
+
+    private final Context context;
+    private final String databaseName;
+    private final EncryptionManager encryptionManager;
+    private final Gson gson = new Gson();
+    private final Helper helper;
+
+    private final SortedMap<String, PartitionSummary> index = new TreeMap<>();
+
+    public SqliteStorageEngine(Context context, EncryptionManager encryptionManager, String databaseName) {
+        this.context = context;
+        this.databaseName = databaseName;
+        this.encryptionManager = encryptionManager;
+        this.helper = new Helper(context, databaseName);
+    }
+
+    @Override
+    public String getName() {
+        return StorageEngines.SQLITE;
+    }
+
+    @Override
+    public synchronized SortedMap<String, PartitionSummary> load() {
+        index.clear();
+        try (Cursor cursor = helper.getReadableDatabase().rawQuery(
+                "SELECT summary FROM partitions", null)) {
+            while (cursor.moveToNext()) {
+                PartitionSummary summary = gson.fromJson(
+                    encryptionManager.decrypt(cursor.getString(0)), PartitionSummary.class);
+                index.put(summary.partition, summary);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to load partition index", e);
+        }
+        return new TreeMap<>(index);
+    }
+
+    @Override
+    public synchronized List<Transaction> readPartition(String partition) {
+        return query("SELECT id, version, payload FROM transactions WHERE partition = ? ORDER BY date",
+            new String[]{partition});
+    }
+
+    @Override
+    public synchronized boolean writePartition(String partition, List<Transaction> transactions) {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        Map<String, Long> storedVersions = new HashMap<>();
+        try (Cursor cursor = db.rawQuery("SELECT id, version FROM transactions WHERE partition = ?",
+                new String[]{partition})) {
+            while (cursor.moveToNext()) {
+                storedVersions.put(cursor.getString(0), cursor.getLong(1));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to read partition " + partition, e);
+            return false;
+        }
+
+        int sealed = 0;
+        db.beginTransaction();
+        try (SQLiteStatement insert = db.compileStatement(
+                "INSERT OR REPLACE INTO transactions (id, partition, date, version, payload) "
+                    + "VALUES (?, ?, ?, ?, ?)");
+             SQLiteStatement delete = db.compileStatement(
+                "DELETE FROM transactions WHERE id = ? AND partition = ?")) {
+            for (Transaction transaction : transactions) {
+                Long storedVersion = storedVersions.remove(transaction.getId());
+                if (storedVersion != null && storedVersion == transaction.getUpdatedAt()) {
+                    continue;
+                }
+                insert.clearBindings();
+                insert.bindString(1, transaction.getId());
+                insert.bindString(2, partition);
+                insert.bindLong(3, transaction.getDate().getTime());
+                insert.bindLong(4, transaction.getUpdatedAt());
+                insert.bindBlob(5, sealTransaction(transaction));
+                insert.executeInsert();
+                sealed++;
+            }
+            for (String removedId : storedVersions.keySet()) {
+                delete.clearBindings();
+                delete.bindString(1, removedId);
+                delete.bindString(2, partition);
+                delete.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to write partition " + partition, e);
+            return false;
+        } finally {
+            db.endTransaction();
+        }
+
+        if (transactions.isEmpty()) {
+            index.remove(partition);
+        } else {
+            index.put(partition, PartitionSummary.of(partition, transactions));
+        }
+        Log.d(TAG, "Partition " + partition + ": sealed " + sealed + ", removed "
+            + storedVersions.size() + " of " + transactions.size());
+        return true;
+    }
+
+    @Override
+    public synchronized boolean commitIndex() {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try (SQLiteStatement insert = db.compileStatement(
+                "INSERT INTO partitions (partition, summary) VALUES (?, ?)")) {
+            db.delete("partitions", null, null);
+            for (PartitionSummary summary : index.values()) {
+                insert.clearBindings();
+                insert.bindString(1, summary.partition);
+                insert.bindString(2, encryptionManager.encrypt(gson.toJson(summary)));
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to commit partition index", e);
+            return false;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public synchronized SortedMap<String, PartitionSummary> getIndex() {
+        return new TreeMap<>(index);
+    }
+
+    @Override
+    public synchronized List<Budget> readBudgets() {
+        List<Budget> budgets = new ArrayList<>();
+        SQLiteDatabase db = helper.getReadableDatabase();
+        try (Cursor cursor = db.rawQuery(
+                "SELECT id, version, payload FROM budget_records ORDER BY position", null)) {
+            while (cursor.moveToNext()) {
+                String id = cursor.getString(0);
+                budgets.addAll(RecordCodec.decodeBudgets(
+                    encryptionManager.openRecord(cursor.getBlob(2), id, cursor.getLong(1))));
+            }
+            if (budgets.isEmpty() && hasLegacyBudgets(db)) {
+                try (Cursor legacy = db.rawQuery("SELECT payload FROM budgets WHERE id = 0", null)) {
+                    if (legacy.moveToFirst()) {
+                        budgets.addAll(RecordCodec.decodeBudgets(encryptionManager.decryptBytes(legacy.getString(0))));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to read budgets", e);
+        }
+        return budgets;
+    }
+
+    @Override
+    public synchronized boolean writeBudgets(List<Budget> budgets) {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        Map<String, long[]> stored = new HashMap<>();
+        try (Cursor cursor = db.rawQuery("SELECT id, version, position FROM budget_records", null)) {
+            while (cursor.moveToNext()) {
+                stored.put(cursor.getString(0), new long[]{cursor.getLong(1), cursor.getLong(2)});
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to read budgets", e);
+            return false;
+        }
+
+        db.beginTransaction();
+        try (SQLiteStatement insert = db.compileStatement(
+                "INSERT OR REPLACE INTO budget_records (id, position, version, payload) VALUES (?, ?, ?, ?)");
+             SQLiteStatement move = db.compileStatement(
+                "UPDATE budget_records SET position = ? WHERE id = ?");
+             SQLiteStatement delete = db.compileStatement(
+                "DELETE FROM budget_records WHERE id = ?")) {
+            for (int position = 0; position < budgets.size(); position++) {
+                Budget budget = budgets.get(position);
+                long[] versionAndPosition = stored.remove(budget.getId());
+                if (versionAndPosition != null && versionAndPosition[0] == budget.getUpdatedAt()) {
+                    if (versionAndPosition[1] != position) {
+                        move.bindLong(1, position);
+                        move.bindString(2, budget.getId());
+                        move.executeUpdateDelete();
+                    }
+                    continue;
+                }
+                insert.clearBindings();
+                insert.bindString(1, budget.getId());
+                insert.bindLong(2, position);
+                insert.bindLong(3, budget.getUpdatedAt());
+                insert.bindBlob(4, encryptionManager.sealRecord(
+                    RecordCodec.encodeBudgets(Collections.singletonList(budget)),
+                    budget.getId(), budget.getUpdatedAt()));
+                insert.executeInsert();
+            }
+            for (String removedId : stored.keySet()) {
+                delete.bindString(1, removedId);
+                delete.executeUpdateDelete();
+            }
+            if (hasLegacyBudgets(db)) {
+                db.execSQL("DROP TABLE budgets");
+            }
+            db.setTransactionSuccessful();
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to write budgets", e);
+            return false;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Reseals the partition's rows that are under an older key, or still in
+     * the legacy per-row format, keeping each row's id and version binding.
+     * Only the query holds the engine lock.
+     */
+    @Override
+    public Resealed resealPartition(String partition) {
+        List<String> ids = new ArrayList<>();
+        List<Long> versions = new ArrayList<>();
+        List<Object> payloads = new ArrayList<>();
+        synchronized (this) {
+            try (Cursor cursor = helper.getReadableDatabase().rawQuery(
+                    "SELECT id, version, payload FROM transactions WHERE partition = ?", new String[]{partition})) {
+                while (cursor.moveToNext()) {
+                    ids.add(cursor.getString(0));
+                    versions.add(cursor.getLong(1));
+                    payloads.add(cursor.getLong(1) == LEGACY_VERSION ? cursor.getString(2) : cursor.getBlob(2));
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to read partition " + partition, e);
+                return null;
+            }
+        }
+
+        ResealedRows rows = new ResealedRows(partition);
+        try {
+            int currentVersion = encryptionManager.getCurrentKeyVersion();
+            for (int i = 0; i < ids.size(); i++) {
+                String id = ids.get(i);
+                long version = versions.get(i);
+                if (version == LEGACY_VERSION) {
+                    Transaction transaction = RecordCodec.decodeTransactions(
+                        encryptionManager.decryptBytes((String) payloads.get(i))).get(0);
+                    rows.add(id, version, transaction.getUpdatedAt(), sealTransaction(transaction));
+                } else {
+                    byte[] sealed = (byte[]) payloads.get(i);
+                    if (EncryptionManager.getKeyVersion(sealed) == currentVersion) {
+                        continue;
+                    }
+                    rows.add(id, version, version, encryptionManager.sealRecord(
+                        encryptionManager.openRecord(sealed, id, version), id, version));
+                }
+            }
+            return rows;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to reseal partition " + partition, e);
+            return null;
+        }
+    }
+
+    /**
+     * Updates each resealed row that still has the version it was read at.
+     * A row rewritten or removed since was already sealed under the current
+     * key or is gone, so it is skipped rather than making the batch stale.
+     */
+    @Override
+    public synchronized int storeResealed(Resealed resealed) {
+        ResealedRows rows = (ResealedRows) resealed;
+        if (rows.ids.isEmpty()) {
+            return 0;
+        }
+        SQLiteDatabase db = helper.getWritableDatabase();
+        int stored = 0;
+        db.beginTransaction();
+        try (SQLiteStatement update = db.compileStatement(
+                "UPDATE transactions SET version = ?, payload = ? WHERE id = ? AND partition = ? AND version = ?")) {
+            for (int i = 0; i < rows.ids.size(); i++) {
+                update.clearBindings();
+                update.bindLong(1, rows.newVersions.get(i));
+                update.bindBlob(2, rows.payloads.get(i));
+                update.bindString(3, rows.ids.get(i));
+                update.bindString(4, rows.partition);
+                update.bindLong(5, rows.readVersions.get(i));
+                stored += update.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+            return stored;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to re-encrypt partition " + rows.partition, e);
+            return -1;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public synchronized boolean reencryptBudgets() {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        if (hasLegacyBudgets(db)) {
+            // Writing the list moves it into budget_records under the current key
+            List<Budget> budgets = readBudgets();
+            return budgets.isEmpty() || writeBudgets(budgets);
+        }
+        db.beginTransaction();
+        try (Cursor cursor = db.rawQuery("SELECT id, version, payload FROM budget_records", null);
+             SQLiteStatement update = db.compileStatement(
+                "UPDATE budget_records SET payload = ? WHERE id = ?")) {
+            int currentVersion = encryptionManager.getCurrentKeyVersion();
+            while (cursor.moveToNext()) {
+                byte[] sealed = cursor.getBlob(2);
+                if (EncryptionManager.getKeyVersion(sealed) == currentVersion) {
+                    continue;
+                }
+                String id = cursor.getString(0);
+                long version = cursor.getLong(1);
+                update.clearBindings();
+                update.bindBlob(1, encryptionManager.sealRecord(
+                    encryptionManager.openRecord(sealed, id, version), id, version));
+                update.bindString(2, id);
+                update.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to re-encrypt budgets", e);
+            return false;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        helper.close();
+        context.deleteDatabase(databaseName);
+        index.clear();
+    }
+
+    @Override
+    public synchronized void close() {
+        helper.close();
+    }
+
+    private List<Transaction> query(String sql, String[] args) {
+        List<Transaction> result = new ArrayList<>();
+        try (Cursor cursor = helper.getReadableDatabase().rawQuery(sql, args)) {
+            while (cursor.moveToNext()) {
+                String id = cursor.getString(0);
+                long version = cursor.getLong(1);
+                byte[] plain = version == LEGACY_VERSION
+                    ? encryptionManager.decryptBytes(cursor.getString(2))
+                    : encryptionManager.openRecord(cursor.getBlob(2), id, version);
+                result.addAll(RecordCodec.decodeTransactions(plain));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Transaction query failed", e);
+        }
+        return result;
+    }
+
+    private byte[] sealTransaction(Transaction transaction) throws IOException {
+        return encryptionManager.sealRecord(
+            RecordCodec.encodeTransactions(Collections.singletonList(transaction)),
+            transaction.getId(), transaction.getUpdatedAt());
+    }
+
+    private static boolean hasLegacyBudgets(SQLiteDatabase db) {
+        try (Cursor cursor = db.rawQuery(
+                "SELECT name FROM sqlite_master WHERE type = 'table' AND name = 'budgets'", null)) {
+            return cursor.moveToFirst();
+        }
+    }
+
+    private static class Helper extends SQLiteOpenHelper {
+        Helper(Context context, String name) {
+            super(context, name, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onConfigure(SQLiteDatabase db) {
+            db.enableWriteAheadLogging();
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            createTransactions(db, "transactions");
+            db.execSQL("CREATE TABLE partitions (partition TEXT PRIMARY KEY, summary TEXT NOT NULL)");
+            createBudgetRecords(db);
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            if (oldVersion < 2) {
+                // Existing rows stay readable and are resealed when their
+                // partition is next written; old budgets move on next write
+                db.execSQL("ALTER TABLE transactions ADD COLUMN version INTEGER NOT NULL DEFAULT "
+                    + LEGACY_VERSION);
+                createBudgetRecords(db);
+            }
+            if (oldVersion < 3) {
+                // Nothing queries by date range or category any more, so the
+                // table is rebuilt without the category hash and its indexes
+                db.execSQL("DROP INDEX IF EXISTS idx_transactions_date");
+                db.execSQL("DROP INDEX IF EXISTS idx_transactions_category");
+                db.execSQL("DROP INDEX IF EXISTS idx_transactions_partition");
+                createTransactions(db, "transactions_v3");
+                db.execSQL("INSERT INTO transactions_v3 (id, partition, date, payload, version) "
+                    + "SELECT id, partition, date, payload, version FROM transactions");
+                db.execSQL("DROP TABLE transactions");
+                db.execSQL("ALTER TABLE transactions_v3 RENAME TO transactions");
+            }
+        }
+
+        private static void createTransactions(SQLiteDatabase db, String table) {
+            db.execSQL("CREATE TABLE " + table + " ("
+                + "id TEXT PRIMARY KEY, "
+                + "partition TEXT NOT NULL, "
+                + "date INTEGER NOT NULL, "
+                + "payload BLOB NOT NULL, "
+                + "version INTEGER NOT NULL)");
+            db.execSQL("CREATE INDEX idx_transactions_partition ON " + table + " (partition, date)");
+        }
+
+        private static void createBudgetRecords(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE budget_records ("
+                + "id TEXT PRIMARY KEY, "
+                + "position INTEGER NOT NULL, "
+                + "version INTEGER NOT NULL, "
+                + "payload BLOB NOT NULL)");
+        }
+    }
+
+    private static class ResealedRows implements Resealed {
+        final String partition;
+        final List<String> ids = new ArrayList<>();
+        final List<Long> readVersions = new ArrayList<>();
+        final List<Long> newVersions = new ArrayList<>();
+        final List<byte[]> payloads = new ArrayList<>();
+
+        ResealedRows(String partition) {
+            this.partition = partition;
+        }
+
+        void add(String id, long readVersion, long newVersion, byte[] payload) {
+            ids.add(id);
+            readVersions.add(readVersion);
+            newVersions.add(newVersion);
+            payloads.add(payload);
+        }
+
+        @Override
+        public String getPartition() {
+            return partition;
+        }
+    }
+}
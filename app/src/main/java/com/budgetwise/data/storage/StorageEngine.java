@@ -0,0 +1,79 @@
+package com.budgetwise.data.storage;
+
+import com.budgetwise.data.models.Budget;
+import com.budgetwise.data.models.Transaction;
+import java.util.List;
+import java.util.SortedMap;
+
+/**
+ * Durable home of the repository's snapshot: transactions grouped into UTC
+ * month partitions (see {@link TransactionPartitionStore#partitionOf}), a
+ * per-partition summary index and the budget list. The journal sits in front
+ * of whichever engine is in use, so engines only see compacted snapshots.
+ *
+ * Engines are called from one thread at a time but must not assume which;
+ * {@link #resealPartition} is the one exception.
+ */
+public interface StorageEngine {
+    int RESEAL_STALE = -2;
+
+    /**
+     * Stable identifier, as used by {@link StorageEngines}.
+     */
+    String getName();
+
+    /**
+     * Opens the engine and returns the partition index.
+     */
+    SortedMap<String, PartitionSummary> load();
+
+    List<Transaction> readPartition(String partition);
+
+    /**
+     * Replaces the stored contents of a partition; an empty list removes it.
+     * The index change only becomes durable with {@link #commitIndex()}.
+     */
+    boolean writePartition(String partition, List<Transaction> transactions);
+
+    boolean commitIndex();
+
+    SortedMap<String, PartitionSummary> getIndex();
+
+    List<Budget> readBudgets();
+
+    boolean writeBudgets(List<Budget> budgets);
+
+    /**
+     * First half of re-encrypting a partition: reads its stored data and
+     * reseals whatever is under an older key in memory, writing nothing.
+     * Unlike the other methods this may run while another thread uses the
+     * engine, so the decryption and encryption can stay off the writer.
+     * Returns null on failure.
+     */
+    Resealed resealPartition(String partition);
+
+    /**
+     * Second half: stores what {@link #resealPartition} produced. Returns the
+     * number of records rewritten, -1 on failure, or {@link #RESEAL_STALE}
+     * when the partition was rewritten in between and has to be resealed
+     * again. Safe to repeat after an interruption.
+     */
+    int storeResealed(Resealed resealed);
+
+    boolean reencryptBudgets();
+
+    /**
+     * Removes everything the engine has stored.
+     */
+    void destroy();
+
+    void close();
+
+    /**
+     * A partition's stored data resealed under the current key, not yet
+     * stored. Only meaningful to the engine that produced it.
+     */
+    interface Resealed {
+        String getPartition();
+    }
+}
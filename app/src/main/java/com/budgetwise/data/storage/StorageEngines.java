@@ -0,0 +1,112 @@
+package com.budgetwise.data.storage;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import com.budgetwise.security.EncryptionManager;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Creates storage engines and remembers which one holds the repository's
+ * data. Switching engines is deferred to the next {@link #open}, before the
+ * repository reads anything, so data is never copied while it is in use.
+ */
+public final class StorageEngines {
+    private static final String TAG = "StorageEngines";
+
+    public static final String SHARED_PREFERENCES = "shared_preferences";
+    public static final String ENCRYPTED_FILE = "encrypted_file";
+    public static final String SQLITE = "sqlite";
+    public static final List<String> ALL = Arrays.asList(SHARED_PREFERENCES, ENCRYPTED_FILE, SQLITE);
+
+    // Plain preferences: the choice of engine is not sensitive and must be
+    // readable before any encrypted store is opened
+    private static final String PREFS_NAME = "BudgetWiseStorage";
+    private static final String KEY_ENGINE = "engine";
+    private static final String KEY_PENDING_ENGINE = "pending_engine";
+
+    private static final String DATA_FILE = "budgetwise.store";
+    private static final String DATABASE_NAME = "budgetwise.db";
+
+    private StorageEngines() {
+    }
+
+    /**
+     * Opens the engine currently holding the data, first migrating to a
+     * newly requested engine if {@link #requestSwitch} was called.
+     */
+    public static StorageEngine open(Context context, EncryptionManager encryptionManager,
+                                     SecurePreferences securePreferences) {
+        return open(context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE),
+            engine -> create(context, encryptionManager, securePreferences, engine));
+    }
+
+    static StorageEngine open(SharedPreferences preferences, Factory factory) {
+        String current = preferences.getString(KEY_ENGINE, SHARED_PREFERENCES);
+        String pending = preferences.getString(KEY_PENDING_ENGINE, null);
+
+        if (pending != null && !pending.equals(current)) {
+            StorageEngine source = factory.create(current);
+            StorageEngine target = factory.create(pending);
+            if (StorageMigrator.migrate(source, target)) {
+                preferences.edit().putString(KEY_ENGINE, pending).remove(KEY_PENDING_ENGINE).commit();
+                source.destroy();
+                source.close();
+                Log.d(TAG, "Switched storage engine from " + current + " to " + pending);
+                return target;
+            }
+            Log.e(TAG, "Migration to " + pending + " failed, staying on " + current);
+            target.destroy();
+            target.close();
+            preferences.edit().remove(KEY_PENDING_ENGINE).commit();
+        } else if (pending != null) {
+            preferences.edit().remove(KEY_PENDING_ENGINE).commit();
+        }
+        return factory.create(current);
+    }
+
+    /**
+     * Asks for the data to be moved to another engine the next time the
+     * app starts. Choosing the engine already in use cancels a pending switch.
+     */
+    public static void requestSwitch(Context context, String engine) {
+        if (!ALL.contains(engine)) {
+            throw new IllegalArgumentException("Unknown storage engine " + engine);
+        }
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+            .edit().putString(KEY_PENDING_ENGINE, engine).commit();
+    }
+
+    public static String getSelected(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+            .getString(KEY_ENGINE, SHARED_PREFERENCES);
+    }
+
+    /**
+     * The engine the data moves to on the next start, or null if no switch
+     * is pending.
+     */
+    public static String getPending(Context context) {
+        String pending = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+            .getString(KEY_PENDING_ENGINE, null);
+        return pending != null && !pending.equals(getSelected(context)) ? pending : null;
+    }
+
+    static StorageEngine create(Context context, EncryptionManager encryptionManager,
+                                SecurePreferences securePreferences, String engine) {
+        switch (engine) {
+            case ENCRYPTED_FILE:
+                return new EncryptedFileStorageEngine(context, encryptionManager, DATA_FILE);
+            case SQLITE:
+                return new SqliteStorageEngine(context, encryptionManager, DATABASE_NAME);
+            case SHARED_PREFERENCES:
+            default:
+                return new TransactionPartitionStore(securePreferences);
+        }
+    }
+
+    interface Factory {
+        StorageEngine create(String engine);
+    }
+}
@@ -0,0 +1,79 @@
+package com.budgetwise.data.storage;
+
+import android.util.Log;
+import com.budgetwise.data.models.Budget;
+import com.budgetwise.data.models.Transaction;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Copies everything from one storage engine into another, one partition at
+ * a time so at most a month of transactions is in memory. The target is
+ * checked against the source's index before the copy counts as done; the
+ * source is never modified.
+ *
+ * The journal is independent of the engine, so records still waiting in it
+ * simply replay on top of the new engine.
+ */
+public final class StorageMigrator {
+    private static final String TAG = "StorageMigrator";
+
+    private StorageMigrator() {
+    }
+
+    public static boolean migrate(StorageEngine source, StorageEngine target) {
+        long start = System.currentTimeMillis();
+        try {
+            SortedMap<String, PartitionSummary> sourceIndex = source.load();
+            // Clear whatever an earlier, interrupted migration left behind
+            for (String partition : target.load().keySet()) {
+                if (!sourceIndex.containsKey(partition)
+                        && !target.writePartition(partition, Collections.emptyList())) {
+                    return false;
+                }
+            }
+
+            int copied = 0;
+            for (String partition : sourceIndex.keySet()) {
+                List<Transaction> transactions = source.readPartition(partition);
+                if (!target.writePartition(partition, transactions)) {
+                    Log.e(TAG, "Failed to copy partition " + partition);
+                    return false;
+                }
+                copied += transactions.size();
+            }
+            List<Budget> budgets = source.readBudgets();
+            if (!target.commitIndex() || !target.writeBudgets(budgets)) {
+                Log.e(TAG, "Failed to commit migrated data");
+                return false;
+            }
+
+            if (!verify(sourceIndex, target.getIndex()) || target.readBudgets().size() != budgets.size()) {
+                Log.e(TAG, "Migrated data does not match the source");
+                return false;
+            }
+            Log.d(TAG, "Migrated " + copied + " transactions in " + sourceIndex.size() + " partitions and "
+                + budgets.size() + " budgets from " + source.getName() + " to " + target.getName()
+                + " in " + (System.currentTimeMillis() - start) + "ms");
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Migration failed", e);
+            return false;
+        }
+    }
+
+    private static boolean verify(SortedMap<String, PartitionSummary> expected,
+                                  SortedMap<String, PartitionSummary> actual) {
+        if (!expected.keySet().equals(actual.keySet())) {
+            return false;
+        }
+        for (Map.Entry<String, PartitionSummary> entry : expected.entrySet()) {
+            if (entry.getValue().count != actual.get(entry.getKey()).count) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,288 @@
+package com.budgetwise.data.storage;
+
+import android.content.Context;
+import android.util.Log;
+import com.budgetwise.data.models.Budget;
+import com.budgetwise.data.models.Transaction;
+import com.budgetwise.security.EncryptionManager;
+import com.google.gson.Gson;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Append-only log of encrypted mutations. Each write adds one length-prefixed,
+ * individually encrypted record instead of rewriting the whole list, and the
+ * log is replayed on top of the last snapshot when data is loaded.
+ *
+ * Appends are buffered; {@link #flush()} writes everything appended so far
+ * and syncs it to disk, so a batch of mutations costs a single commit.
+ */
+public class TransactionJournal {
+    private static final String TAG = "TransactionJournal";
+    private static final String JOURNAL_FILE = "budgetwise.journal";
+    private static final int MAX_RECORD_BYTES = 1024 * 1024;
+
+    static final int OP_PUT_TRANSACTION = 1;
+    static final int OP_DELETE_TRANSACTION = 2;
+    static final int OP_PUT_BUDGET = 3;
+    static final int OP_DELETE_BUDGET = 4;
+
+    private final File journalFile;
+    private final EncryptionManager encryptionManager;
+    private final Gson gson;
+
+    private DataOutputStream output;
+    // The file under output, kept to sync it
+    private FileOutputStream fileOutput;
+    // Length up to the last successful flush, and including buffered appends
+    private long journalLength;
+    private long pendingLength;
+    private boolean appendFailed;
+    private int entryCount;
+
+    /**
+     * Transaction callbacks carry the month partition the record lived in
+     * before the mutation (null when unknown or for new records), so replay
+     * can decrypt just the partitions the journal touches.
+     */
+    public interface ReplayHandler {
+        void onPutTransaction(Transaction transaction, String previousPartition);
+        void onDeleteTransaction(String transactionId, String partition);
+        void onPutBudget(Budget budget);
+        void onDeleteBudget(String budgetId);
+    }
+
+    public TransactionJournal(Context context, EncryptionManager encryptionManager) {
+        this.journalFile = new File(context.getFilesDir(), JOURNAL_FILE);
+        this.encryptionManager = encryptionManager;
+        this.gson = new Gson();
+        this.journalLength = journalFile.length();
+        this.pendingLength = journalLength;
+    }
+
+    public synchronized void appendPutTransaction(Transaction transaction, String previousPartition) {
+        Entry entry = new Entry(OP_PUT_TRANSACTION);
+        entry.transaction = transaction;
+        entry.partition = previousPartition;
+        append(entry);
+    }
+
+    public synchronized void appendDeleteTransaction(String transactionId, String partition) {
+        Entry entry = new Entry(OP_DELETE_TRANSACTION);
+        entry.id = transactionId;
+        entry.partition = partition;
+        append(entry);
+    }
+
+    public synchronized void appendPutBudget(Budget budget) {
+        Entry entry = new Entry(OP_PUT_BUDGET);
+        entry.budget = budget;
+        append(entry);
+    }
+
+    public synchronized void appendDeleteBudget(String budgetId) {
+        Entry entry = new Entry(OP_DELETE_BUDGET);
+        entry.id = budgetId;
+        append(entry);
+    }
+
+    /**
+     * Replays every intact record in order. A torn record at the tail (from a
+     * crash mid-append) is dropped and the file is truncated to the last good
+     * record so later appends stay readable.
+     */
+    public synchronized int replay(ReplayHandler handler) {
+        closeOutput();
+        entryCount = 0;
+        if (!journalFile.exists()) {
+            return 0;
+        }
+
+        long validLength = 0;
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(journalFile)))) {
+            while (true) {
+                int length;
+                try {
+                    length = input.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    Log.w(TAG, "Corrupt journal record length: " + length);
+                    break;
+                }
+
+                byte[] record = new byte[length];
+                input.readFully(record);
+
+                Entry entry = decode(record);
+                if (entry == null) {
+                    break;
+                }
+                dispatch(entry, handler);
+                validLength += 4 + length;
+                entryCount++;
+            }
+        } catch (EOFException e) {
+            Log.w(TAG, "Dropping torn journal record at offset " + validLength);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to replay journal", e);
+        }
+
+        truncateTo(validLength);
+        journalLength = validLength;
+        pendingLength = validLength;
+        appendFailed = false;
+        Log.d(TAG, "Replayed " + entryCount + " journal records");
+        return entryCount;
+    }
+
+    public synchronized int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Discards all records. Only call once their effects are in a durable snapshot.
+     */
+    public synchronized void reset() {
+        closeOutput();
+        truncateTo(0);
+        journalLength = 0;
+        pendingLength = 0;
+        appendFailed = false;
+        entryCount = 0;
+    }
+
+    /**
+     * Writes out every buffered append and syncs the file, so the records
+     * survive a crash or power loss once this returns true. Returns false if
+     * any append since the last flush failed; the journal is then rolled back
+     * to the last flush so no partial frame can hide later records.
+     */
+    public synchronized boolean flush() {
+        if (!appendFailed) {
+            try {
+                if (output != null && pendingLength != journalLength) {
+                    output.flush();
+                    fileOutput.getFD().sync();
+                }
+                journalLength = pendingLength;
+                return true;
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to flush journal", e);
+            }
+        }
+        closeOutput();
+        truncateTo(journalLength);
+        pendingLength = journalLength;
+        appendFailed = false;
+        return false;
+    }
+
+    private void append(Entry entry) {
+        if (appendFailed) {
+            return;
+        }
+        try {
+            String encrypted = encryptionManager.encrypt(gson.toJson(entry));
+            byte[] record = encrypted.getBytes(StandardCharsets.UTF_8);
+
+            DataOutputStream out = openOutput();
+            out.writeInt(record.length);
+            out.write(record);
+            pendingLength += 4 + record.length;
+            entryCount++;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to append journal record", e);
+            appendFailed = true;
+        }
+    }
+
+    private Entry decode(byte[] record) {
+        try {
+            String json = encryptionManager.decrypt(new String(record, StandardCharsets.UTF_8));
+            return gson.fromJson(json, Entry.class);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to decode journal record", e);
+            return null;
+        }
+    }
+
+    private void dispatch(Entry entry, ReplayHandler handler) {
+        switch (entry.op) {
+            case OP_PUT_TRANSACTION:
+                handler.onPutTransaction(entry.transaction, entry.partition);
+                break;
+            case OP_DELETE_TRANSACTION:
+                handler.onDeleteTransaction(entry.id, entry.partition);
+                break;
+            case OP_PUT_BUDGET:
+                handler.onPutBudget(entry.budget);
+                break;
+            case OP_DELETE_BUDGET:
+                handler.onDeleteBudget(entry.id);
+                break;
+            default:
+                Log.w(TAG, "Unknown journal op: " + entry.op);
+        }
+    }
+
+    private DataOutputStream openOutput() throws IOException {
+        if (output == null) {
+            fileOutput = new FileOutputStream(journalFile, true);
+            output = new DataOutputStream(new BufferedOutputStream(fileOutput));
+        }
+        return output;
+    }
+
+    private void closeOutput() {
+        if (output != null) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close journal", e);
+            }
+            output = null;
+            fileOutput = null;
+        }
+    }
+
+    private void truncateTo(long length) {
+        if (!journalFile.exists()) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            if (file.length() != length) {
+                file.setLength(length);
+                file.getFD().sync();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to truncate journal", e);
+        }
+    }
+
+    private static class Entry {
+        int op;
+        String id;
+        String partition;
+        Transaction transaction;
+        Budget budget;
+
+        Entry() {
+        }
+
+        Entry(int op) {
+            this.op = op;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.budgetwise.data.storage;
+
+import android.util.Log;
+import com.budgetwise.data.models.Budget;
+import com.budgetwise.data.models.Transaction;
+import com.google.gson.reflect.TypeToken;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Stores transactions as one encrypted blob per calendar month (UTC) plus a
+ * small index of per-month counts and totals, so callers can decrypt only the
+ * months they need and still know what the rest of the history adds up to.
+ *
+ * This is the SharedPreferences storage engine: everything lives in one XML
+ * file that Android keeps fully in memory and rewrites on every commit.
+ */
+public class TransactionPartitionStore implements StorageEngine {
+    private static final String TAG = "TransactionPartitionStore";
+    private static final String BUDGETS_KEY = "budgets";
+    private static final String LEGACY_TRANSACTIONS_KEY = "transactions";
+    private static final String INDEX_KEY = "transaction_partitions";
+    private static final String PARTITION_KEY_PREFIX = "transactions_";
+    private static final TimeZone PARTITION_TIME_ZONE = TimeZone.getTimeZone("UTC");
+
+    private final SecurePreferences securePreferences;
+    private final SortedMap<String, PartitionSummary> index = new TreeMap<>();
+
+    public TransactionPartitionStore(SecurePreferences securePreferences) {
+        this.securePreferences = securePreferences;
+    }
+
+    public static String partitionOf(Date date) {
+        return partitionOf(date.getTime());
+    }
+
+    public static String partitionOf(long timeMillis) {
+        Calendar calendar = Calendar.getInstance(PARTITION_TIME_ZONE);
+        calendar.setTimeInMillis(timeMillis);
+        return String.format(Locale.US, "%04d%02d",
+            calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1);
+    }
+
+    /**
+     * Returns the partitions overlapping [startMillis, endMillis], oldest first.
+     */
+    public static List<String> partitionsBetween(long startMillis, long endMillis) {
+        List<String> partitions = new ArrayList<>();
+        Calendar calendar = Calendar.getInstance(PARTITION_TIME_ZONE);
+        calendar.setTimeInMillis(startMillis);
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+
+        while (calendar.getTimeInMillis() <= endMillis) {
+            partitions.add(partitionOf(calendar.getTimeInMillis()));
+            calendar.add(Calendar.MONTH, 1);
+        }
+        return partitions;
+    }
+
+    @Override
+    public String getName() {
+        return StorageEngines.SHARED_PREFERENCES;
+    }
+
+    /**
+     * Loads the partition index, first splitting the pre-partitioning single
+     * "transactions" blob into monthly partitions if it is still present.
+     */
+    @Override
+    public synchronized SortedMap<String, PartitionSummary> load() {
+        index.clear();
+        Type indexType = new TypeToken<List<PartitionSummary>>(){}.getType();
+        List<PartitionSummary> summaries = securePreferences.getList(INDEX_KEY, indexType);
+        for (PartitionSummary summary : summaries) {
+            index.put(summary.partition, summary);
+        }
+
+        if (securePreferences.contains(LEGACY_TRANSACTIONS_KEY)) {
+            migrateLegacyBlob();
+        }
+        return new TreeMap<>(index);
+    }
+
+    @Override
+    public synchronized List<Transaction> readPartition(String partition) {
+        return securePreferences.getTransactions(PARTITION_KEY_PREFIX + partition);
+    }
+
+    /**
+     * Replaces the stored contents of a partition and its index entry. The
+     * index itself is only persisted by {@link #commitIndex()}.
+     */
+    @Override
+    public synchronized boolean writePartition(String partition, List<Transaction> transactions) {
+        if (transactions.isEmpty()) {
+            index.remove(partition);
+            securePreferences.remove(PARTITION_KEY_PREFIX + partition);
+            return true;
+        }
+        if (!securePreferences.commitTransactions(PARTITION_KEY_PREFIX + partition, transactions)) {
+            return false;
+        }
+        index.put(partition, PartitionSummary.of(partition, transactions));
+        return true;
+    }
+
+    @Override
+    public synchronized boolean commitIndex() {
+        return securePreferences.commitList(INDEX_KEY, new ArrayList<>(index.values()));
+    }
+
+    @Override
+    public synchronized SortedMap<String, PartitionSummary> getIndex() {
+        return new TreeMap<>(index);
+    }
+
+    @Override
+    public List<Budget> readBudgets() {
+        return securePreferences.getBudgets(BUDGETS_KEY);
+    }
+
+    @Override
+    public boolean writeBudgets(List<Budget> budgets) {
+        return securePreferences.commitBudgets(BUDGETS_KEY, budgets);
+    }
+
+    @Override
+    public Resealed resealPartition(String partition) {
+        String stored;
+        int count;
+        synchronized (this) {
+            PartitionSummary summary = index.get(partition);
+            stored = summary == null ? null : securePreferences.getEncrypted(PARTITION_KEY_PREFIX + partition);
+            count = summary == null ? 0 : summary.count;
+        }
+        if (stored == null) {
+            return new ResealedBlob(partition, null, null, 0);
+        }
+        String resealed = securePreferences.reseal(stored);
+        return resealed == null ? null : new ResealedBlob(partition, stored, resealed, count);
+    }
+
+    /**
+     * Stores the resealed blob only if the partition still holds the blob it
+     * was made from; any later write already used the current key.
+     */
+    @Override
+    public synchronized int storeResealed(Resealed resealed) {
+        ResealedBlob blob = (ResealedBlob) resealed;
+        if (blob.stored == null || blob.stored.equals(blob.resealed)) {
+            return 0;
+        }
+        String key = PARTITION_KEY_PREFIX + blob.partition;
+        if (!blob.stored.equals(securePreferences.getEncrypted(key))) {
+            return RESEAL_STALE;
+        }
+        return securePreferences.replaceEncrypted(key, blob.resealed) ? blob.count : -1;
+    }
+
+    @Override
+    public boolean reencryptBudgets() {
+        return securePreferences.reencrypt(BUDGETS_KEY);
+    }
+
+    @Override
+    public synchronized void destroy() {
+        for (String partition : index.keySet()) {
+            securePreferences.remove(PARTITION_KEY_PREFIX + partition);
+        }
+        index.clear();
+        securePreferences.remove(INDEX_KEY);
+        securePreferences.remove(BUDGETS_KEY);
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release; SharedPreferences lives for the whole process
+    }
+
+    private void migrateLegacyBlob() {
+        List<Transaction> legacy = securePreferences.getTransactions(LEGACY_TRANSACTIONS_KEY);
+
+        Map<String, List<Transaction>> byPartition = new LinkedHashMap<>();
+        for (Transaction transaction : legacy) {
+            byPartition.computeIfAbsent(partitionOf(transaction.getDate()), k -> new ArrayList<>())
+                .add(transaction);
+        }
+
+        for (Map.Entry<String, List<Transaction>> entry : byPartition.entrySet()) {
+            // Merge by id so a migration interrupted half-way can safely run again
+            Map<String, Transaction> merged = new LinkedHashMap<>();
+            for (Transaction transaction : readPartition(entry.getKey())) {
+                merged.put(transaction.getId(), transaction);
+            }
+            for (Transaction transaction : entry.getValue()) {
+                merged.put(transaction.getId(), transaction);
+            }
+            if (!writePartition(entry.getKey(), new ArrayList<>(merged.values()))) {
+                Log.e(TAG, "Failed to migrate partition " + entry.getKey());
+                return;
+            }
+        }
+
+        if (commitIndex()) {
+            securePreferences.remove(LEGACY_TRANSACTIONS_KEY);
+            Log.d(TAG, "Migrated " + legacy.size() + " transactions into "
+                + byPartition.size() + " monthly partitions");
+        }
+    }
+
+    private static class ResealedBlob implements Resealed {
+        final String partition;
+        final String stored;
+        final String resealed;
+        final int count;
+
+        ResealedBlob(String partition, String stored, String resealed, int count) {
+            this.partition = partition;
+            this.stored = stored;
+            this.resealed = resealed;
+            this.count = count;
+        }
+
+        @Override
+        public String getPartition() {
+            return partition;
+        }
+    }
+}
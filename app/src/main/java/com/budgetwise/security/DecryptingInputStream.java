@@ -0,0 +1,132 @@
+package com.budgetwise.security;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Reads a stream written by {@link EncryptingOutputStream}, decrypting and
+ * authenticating one chunk at a time. Plaintext of a chunk is only handed
+ * out once its tag has verified, and the stream reports end of data only
+ * after the chunk marked last, so a truncated file fails with an
+ * IOException rather than silently ending early.
+ */
+class DecryptingInputStream extends FilterInputStream {
+    private final DataInputStream input;
+    private final Cipher cipher;
+    private final SecretKey key;
+    private final byte[] header;
+    private final byte[] noncePrefix;
+    private final byte[] sealed;
+    private final byte[] plain;
+    private int position;
+    private int limit;
+    private int chunkIndex;
+    private boolean lastChunkRead;
+
+    DecryptingInputStream(InputStream in, SecretKey key, byte[] header, byte[] noncePrefix, int chunkSize)
+            throws IOException {
+        super(in);
+        this.input = new DataInputStream(in);
+        this.key = key;
+        this.header = header;
+        this.noncePrefix = noncePrefix;
+        this.sealed = new byte[chunkSize + EncryptionManager.GCM_TAG_LENGTH];
+        this.plain = new byte[chunkSize + EncryptionManager.GCM_TAG_LENGTH];
+        try {
+            this.cipher = Cipher.getInstance(EncryptionManager.TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cipher unavailable", e);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return plain[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(length, limit - position);
+        System.arraycopy(plain, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        long skipped = 0;
+        while (skipped < count && fill()) {
+            int step = (int) Math.min(count - skipped, limit - position);
+            position += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Makes sure decrypted bytes are buffered; returns false at the end of
+     * the last chunk.
+     */
+    private boolean fill() throws IOException {
+        while (position == limit) {
+            if (lastChunkRead) {
+                return false;
+            }
+            readChunk();
+        }
+        return true;
+    }
+
+    private void readChunk() throws IOException {
+        int length;
+        try {
+            length = input.readInt();
+        } catch (EOFException e) {
+            throw new IOException("Encrypted stream is truncated", e);
+        }
+        boolean last = (length & EncryptingOutputStream.LAST_CHUNK_FLAG) != 0;
+        length &= ~EncryptingOutputStream.LAST_CHUNK_FLAG;
+        if (length < EncryptionManager.GCM_TAG_LENGTH || length > sealed.length) {
+            throw new IOException("Invalid chunk length " + length);
+        }
+        input.readFully(sealed, 0, length);
+
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(EncryptionManager.GCM_TAG_LENGTH * 8,
+                EncryptingOutputStream.chunkNonce(noncePrefix, chunkIndex, last)));
+            cipher.updateAAD(header);
+            limit = cipher.doFinal(sealed, 0, length, plain, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Chunk " + chunkIndex + " failed authentication", e);
+        }
+        position = 0;
+        chunkIndex++;
+        lastChunkRead = last;
+    }
+}
@@ -0,0 +1,126 @@
+package com.budgetwise.security;
+
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Encrypts a stream as a sequence of independently authenticated AES-GCM
+ * chunks, so neither side ever holds more than one chunk of plaintext.
+ *
+ * Layout: the stream header (see {@link EncryptionManager#newEncryptingStream}),
+ * then per chunk an int length and the chunk's ciphertext and tag. The length
+ * of the last chunk has its top bit set. Each chunk's nonce is the header's
+ * random prefix, the chunk index and a last-chunk flag, and the header is
+ * authenticated with every chunk, so chunks cannot be reordered, dropped,
+ * truncated away or moved between streams without failing decryption.
+ */
+class EncryptingOutputStream extends FilterOutputStream {
+    static final int LAST_CHUNK_FLAG = 0x80000000;
+
+    private final DataOutputStream output;
+    private final Cipher cipher;
+    private final SecretKey key;
+    private final byte[] header;
+    private final byte[] noncePrefix;
+    private final byte[] plain;
+    private final byte[] sealed;
+    private int position;
+    private int chunkIndex;
+    private boolean closed;
+
+    EncryptingOutputStream(OutputStream out, SecretKey key, byte[] header, byte[] noncePrefix, int chunkSize)
+            throws IOException {
+        super(out);
+        this.output = new DataOutputStream(out);
+        this.key = key;
+        this.header = header;
+        this.noncePrefix = noncePrefix;
+        this.plain = new byte[chunkSize];
+        this.sealed = new byte[chunkSize + EncryptionManager.GCM_TAG_LENGTH];
+        try {
+            this.cipher = Cipher.getInstance(EncryptionManager.TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cipher unavailable", e);
+        }
+        output.write(header);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (length > 0) {
+            // A full chunk is only sealed once more data arrives, so the
+            // chunk still buffered at close is the one marked last
+            if (position == plain.length) {
+                sealChunk(false);
+            }
+            int count = Math.min(length, plain.length - position);
+            System.arraycopy(data, offset, plain, position, count);
+            position += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Flushes sealed chunks only; buffered plaintext is written when its
+     * chunk fills up or the stream is closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            sealChunk(true);
+            output.flush();
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private void sealChunk(boolean last) throws IOException {
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(
+                EncryptionManager.GCM_TAG_LENGTH * 8, chunkNonce(noncePrefix, chunkIndex, last)));
+            cipher.updateAAD(header);
+            int length = cipher.doFinal(plain, 0, position, sealed, 0);
+            output.writeInt(last ? length | LAST_CHUNK_FLAG : length);
+            output.write(sealed, 0, length);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to encrypt chunk " + chunkIndex, e);
+        }
+        position = 0;
+        chunkIndex++;
+    }
+
+    static byte[] chunkNonce(byte[] prefix, int chunkIndex, boolean last) {
+        byte[] nonce = new byte[EncryptionManager.GCM_IV_LENGTH];
+        System.arraycopy(prefix, 0, nonce, 0, prefix.length);
+        nonce[prefix.length] = (byte) (chunkIndex >>> 24);
+        nonce[prefix.length + 1] = (byte) (chunkIndex >>> 16);
+        nonce[prefix.length + 2] = (byte) (chunkIndex >>> 8);
+        nonce[prefix.length + 3] = (byte) chunkIndex;
+        nonce[nonce.length - 1] = (byte) (last ? 1 : 0);
+        return nonce;
+    }
+}
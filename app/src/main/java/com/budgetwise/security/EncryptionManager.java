@@ -1,15 +1,27 @@
 package com.budgetwise.security;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.provider.Settings;
 import android.security.keystore.KeyGenParameterSpec;
 import android.security.keystore.KeyProperties;
 import android.util.Base64;
 import android.util.Log;
 
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.crypto.AEADBadTagException;
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.Mac;
@@ -17,19 +29,66 @@ import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
+/**
+ * Envelope encryption: data is encrypted in-process with a random AES data
+ * key, and only that key is encrypted by the AndroidKeyStore key. The data
+ * key is unwrapped once per process, so each value costs a software AES-GCM
+ * operation instead of a keystore IPC round trip.
+ *
+ * Ciphertext layout: marker byte, data key version, IV, ciphertext and tag.
+ * Values written before envelope encryption (IV, ciphertext and tag under the
+ * keystore key) are still decrypted.
+ *
+ * {@link #rotateDataKey} starts a new data key version, wrapped by a new
+ * keystore key. New values use it right away; values under older versions
+ * stay readable until {@link #retireDataKey} removes those keys.
+ *
+ * Large payloads should use the stream or ByteBuffer APIs, which avoid the
+ * String and Base64 copies of {@link #encrypt} and {@link #encryptBytes}.
+ */
 public class EncryptionManager {
     private static final String TAG = "EncryptionManager";
     private static final String KEYSTORE_ALIAS = "BudgetWiseKey";
-    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    static final String TRANSFORMATION = "AES/GCM/NoPadding";
     private static final String KEYSTORE_PROVIDER = "AndroidKeyStore";
-    private static final int GCM_IV_LENGTH = 12;
-    private static final int GCM_TAG_LENGTH = 16;
-    
+    static final int GCM_IV_LENGTH = 12;
+    static final int GCM_TAG_LENGTH = 16;
+
+    // Wrapped data keys are only readable through the keystore key, so plain
+    // preferences are fine for them
+    private static final String KEY_PREFS_NAME = "BudgetWiseKeys";
+    private static final String WRAPPED_KEY_PREFIX = "wrapped_data_key_";
+    private static final String CURRENT_KEY_VERSION = "current_data_key_version";
+    private static final int DATA_KEY_LENGTH = 32;
+    private static final byte ENVELOPE_MARKER = 0x45;
+    private static final int ENVELOPE_HEADER_LENGTH = 2;
+
+    // Stream header: magic, format version, data key version, nonce prefix,
+    // chunk size. Chunk nonces append a 4-byte index and a last-chunk flag.
+    private static final byte[] STREAM_MAGIC = {'B', 'W', 'S', 'E'};
+    private static final byte STREAM_FORMAT_VERSION = 1;
+    private static final int STREAM_NONCE_PREFIX_LENGTH = GCM_IV_LENGTH - 5;
+    private static final int STREAM_HEADER_LENGTH = STREAM_MAGIC.length + 2 + STREAM_NONCE_PREFIX_LENGTH + 4;
+    private static final int STREAM_CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_STREAM_CHUNK_SIZE = 1024 * 1024;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final String SIGNING_KEY_LABEL = "BudgetWise signing key";
+    private static final String NAMING_KEY_LABEL = "BudgetWise naming key";
+
     private final Context context;
+    private final SharedPreferences keyPreferences;
+    private final SecureRandom secureRandom = new SecureRandom();
+    // Cipher objects are not thread-safe but are costly to look up, so each
+    // thread keeps one and re-initializes it per operation
+    private final ThreadLocal<Cipher> ciphers = new ThreadLocal<>();
     private SecretKey secretKey;
+    private final Map<Integer, SecretKey> dataKeys = new ConcurrentHashMap<>();
+    private volatile int currentKeyVersion;
 
     public EncryptionManager(Context context) {
         this.context = context;
+        this.keyPreferences = context.getSharedPreferences(KEY_PREFS_NAME, Context.MODE_PRIVATE);
         initializeKey();
     }
 
@@ -39,7 +98,7 @@ public class EncryptionManager {
             keyStore.load(null);
 
             if (!keyStore.containsAlias(KEYSTORE_ALIAS)) {
-                generateKey();
+                generateKey(KEYSTORE_ALIAS);
             }
 
             secretKey = (SecretKey) keyStore.getKey(KEYSTORE_ALIAS, null);
@@ -49,11 +108,11 @@ public class EncryptionManager {
         }
     }
 
-    private void generateKey() throws Exception {
+    private SecretKey generateKey(String alias) throws GeneralSecurityException {
         KeyGenerator keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE_PROVIDER);
         
         KeyGenParameterSpec keyGenParameterSpec = new KeyGenParameterSpec.Builder(
-                KEYSTORE_ALIAS,
+                alias,
                 KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
                 .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
                 .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
@@ -61,51 +120,493 @@ public class EncryptionManager {
                 .build();
 
         keyGenerator.init(keyGenParameterSpec);
-        keyGenerator.generateKey();
+        return keyGenerator.generateKey();
     }
 
     public String encrypt(String plainText) {
+        return encryptBytes(plainText.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String encryptBytes(byte[] plainData) {
         try {
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+            int version = getCurrentKeyVersion();
+            SecretKey key = getDataKey(version);
+            byte[] iv = new byte[GCM_IV_LENGTH];
+            secureRandom.nextBytes(iv);
 
-            byte[] iv = cipher.getIV();
-            byte[] encryptedData = cipher.doFinal(plainText.getBytes(StandardCharsets.UTF_8));
+            Cipher cipher = getCipher();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv));
 
-            // Combine IV and encrypted data
-            byte[] encryptedWithIv = new byte[iv.length + encryptedData.length];
-            System.arraycopy(iv, 0, encryptedWithIv, 0, iv.length);
-            System.arraycopy(encryptedData, 0, encryptedWithIv, iv.length, encryptedData.length);
+            byte[] encrypted = new byte[ENVELOPE_HEADER_LENGTH + GCM_IV_LENGTH
+                + cipher.getOutputSize(plainData.length)];
+            encrypted[0] = ENVELOPE_MARKER;
+            encrypted[1] = (byte) version;
+            System.arraycopy(iv, 0, encrypted, ENVELOPE_HEADER_LENGTH, GCM_IV_LENGTH);
+            cipher.doFinal(plainData, 0, plainData.length, encrypted, ENVELOPE_HEADER_LENGTH + GCM_IV_LENGTH);
 
-            return Base64.encodeToString(encryptedWithIv, Base64.DEFAULT);
+            return Base64.encodeToString(encrypted, Base64.DEFAULT);
         } catch (Exception e) {
             Log.e(TAG, "Encryption failed", e);
             throw new RuntimeException("Encryption failed", e);
         }
     }
 
-    public String decrypt(String encryptedText) {
+    /**
+     * Encrypts the remaining bytes of {@code input} into {@code output}, which
+     * needs {@link #getEncryptedSize} bytes of room. Returns the number of
+     * bytes written. Direct buffers are encrypted without intermediate arrays.
+     */
+    public int encrypt(ByteBuffer input, ByteBuffer output) {
         try {
-            byte[] encryptedWithIv = Base64.decode(encryptedText, Base64.DEFAULT);
+            int version = getCurrentKeyVersion();
+            SecretKey key = getDataKey(version);
+            byte[] iv = new byte[GCM_IV_LENGTH];
+            secureRandom.nextBytes(iv);
 
-            // Extract IV and encrypted data
+            Cipher cipher = getCipher();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv));
+            int start = output.position();
+            output.put(ENVELOPE_MARKER).put((byte) version).put(iv);
+            cipher.doFinal(input, output);
+            return output.position() - start;
+        } catch (Exception e) {
+            Log.e(TAG, "Encryption failed", e);
+            throw new RuntimeException("Encryption failed", e);
+        }
+    }
+
+    /**
+     * Decrypts the remaining bytes of {@code input}, as written by
+     * {@link #encrypt(ByteBuffer, ByteBuffer)}, into {@code output}, which
+     * needs {@link #getMaxDecryptedSize} bytes of room. Returns the number of
+     * bytes written.
+     */
+    public int decrypt(ByteBuffer input, ByteBuffer output) {
+        try {
+            int start = output.position();
+            if (input.remaining() >= ENVELOPE_HEADER_LENGTH + GCM_IV_LENGTH + GCM_TAG_LENGTH
+                    && input.get(input.position()) == ENVELOPE_MARKER) {
+                ByteBuffer sealed = input.duplicate();
+                SecretKey key = findDataKey(sealed.get(sealed.position() + 1) & 0xFF);
+                if (key != null) {
+                    byte[] iv = new byte[GCM_IV_LENGTH];
+                    sealed.position(sealed.position() + ENVELOPE_HEADER_LENGTH);
+                    sealed.get(iv);
+                    Cipher cipher = getCipher();
+                    cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv));
+                    try {
+                        cipher.doFinal(sealed, output);
+                        input.position(input.limit());
+                        return output.position() - start;
+                    } catch (AEADBadTagException e) {
+                        // Possibly a legacy value; see decryptBytes
+                        output.position(start);
+                    }
+                }
+            }
+            byte[] encrypted = new byte[input.remaining()];
+            input.get(encrypted);
+            output.put(decryptLegacy(encrypted));
+            return output.position() - start;
+        } catch (Exception e) {
+            Log.e(TAG, "Decryption failed", e);
+            throw new RuntimeException("Decryption failed", e);
+        }
+    }
+
+    /**
+     * Seals one record on its own, with its id and version as associated
+     * data: the ciphertext only opens for the same id and version, so a
+     * record cannot be moved under another id or relabelled as a different
+     * version. The version is stored next to the record, so replacing both
+     * with an older pair is not detected; that would need a counter kept
+     * outside the store. Same layout as {@link #encryptBytes}, unencoded.
+     */
+    public byte[] sealRecord(byte[] plain, String id, long version) {
+        try {
+            int keyVersion = getCurrentKeyVersion();
+            SecretKey key = getDataKey(keyVersion);
             byte[] iv = new byte[GCM_IV_LENGTH];
-            byte[] encryptedData = new byte[encryptedWithIv.length - GCM_IV_LENGTH];
-            System.arraycopy(encryptedWithIv, 0, iv, 0, iv.length);
-            System.arraycopy(encryptedWithIv, iv.length, encryptedData, 0, encryptedData.length);
+            secureRandom.nextBytes(iv);
 
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-            GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv);
-            cipher.init(Cipher.DECRYPT_MODE, secretKey, gcmParameterSpec);
+            Cipher cipher = getCipher();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv));
+            cipher.updateAAD(recordAssociatedData(id, version));
+            byte[] sealed = new byte[getEncryptedSize(plain.length)];
+            sealed[0] = ENVELOPE_MARKER;
+            sealed[1] = (byte) keyVersion;
+            System.arraycopy(iv, 0, sealed, ENVELOPE_HEADER_LENGTH, GCM_IV_LENGTH);
+            cipher.doFinal(plain, 0, plain.length, sealed, ENVELOPE_HEADER_LENGTH + GCM_IV_LENGTH);
+            return sealed;
+        } catch (Exception e) {
+            Log.e(TAG, "Record encryption failed", e);
+            throw new RuntimeException("Record encryption failed", e);
+        }
+    }
 
-            byte[] decryptedData = cipher.doFinal(encryptedData);
-            return new String(decryptedData, StandardCharsets.UTF_8);
+    public byte[] openRecord(byte[] sealed, String id, long version) {
+        try {
+            if (sealed.length < getEncryptedSize(0) || sealed[0] != ENVELOPE_MARKER) {
+                throw new GeneralSecurityException("Not a sealed record");
+            }
+            SecretKey key = getDataKey(sealed[1] & 0xFF);
+            Cipher cipher = getCipher();
+            cipher.init(Cipher.DECRYPT_MODE, key,
+                new GCMParameterSpec(GCM_TAG_LENGTH * 8, sealed, ENVELOPE_HEADER_LENGTH, GCM_IV_LENGTH));
+            cipher.updateAAD(recordAssociatedData(id, version));
+            int offset = ENVELOPE_HEADER_LENGTH + GCM_IV_LENGTH;
+            return cipher.doFinal(sealed, offset, sealed.length - offset);
+        } catch (Exception e) {
+            Log.e(TAG, "Record decryption failed for " + id, e);
+            throw new RuntimeException("Record decryption failed", e);
+        }
+    }
+
+    private static byte[] recordAssociatedData(String id, long version) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(idBytes.length + 8).put(idBytes).putLong(version).array();
+    }
+
+    public static int getEncryptedSize(int plainLength) {
+        return ENVELOPE_HEADER_LENGTH + GCM_IV_LENGTH + plainLength + GCM_TAG_LENGTH;
+    }
+
+    public static int getMaxDecryptedSize(int encryptedLength) {
+        return Math.max(0, encryptedLength - GCM_IV_LENGTH - GCM_TAG_LENGTH);
+    }
+
+    /**
+     * Wraps {@code out} so everything written to it is encrypted in 64 KB
+     * authenticated chunks; only one chunk is buffered at a time. Closing the
+     * returned stream writes the final chunk and closes {@code out}.
+     */
+    public OutputStream newEncryptingStream(OutputStream out) throws IOException {
+        int version;
+        SecretKey key;
+        try {
+            version = getCurrentKeyVersion();
+            key = getDataKey(version);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Data key unavailable", e);
+        }
+        byte[] noncePrefix = new byte[STREAM_NONCE_PREFIX_LENGTH];
+        secureRandom.nextBytes(noncePrefix);
+
+        ByteBuffer header = ByteBuffer.allocate(STREAM_HEADER_LENGTH);
+        header.put(STREAM_MAGIC).put(STREAM_FORMAT_VERSION).put((byte) version)
+            .put(noncePrefix).putInt(STREAM_CHUNK_SIZE);
+        return new EncryptingOutputStream(out, key, header.array(), noncePrefix, STREAM_CHUNK_SIZE);
+    }
+
+    /**
+     * Reverses {@link #newEncryptingStream}. Reading fails with an
+     * IOException if any chunk was altered or the stream was cut short.
+     */
+    public InputStream newDecryptingStream(InputStream in) throws IOException {
+        byte[] header = new byte[STREAM_HEADER_LENGTH];
+        new DataInputStream(in).readFully(header);
+        ByteBuffer fields = ByteBuffer.wrap(header);
+        for (byte expected : STREAM_MAGIC) {
+            if (fields.get() != expected) {
+                throw new IOException("Not an encrypted stream");
+            }
+        }
+        byte formatVersion = fields.get();
+        if (formatVersion != STREAM_FORMAT_VERSION) {
+            throw new IOException("Unsupported stream format " + formatVersion);
+        }
+        byte keyVersion = fields.get();
+        byte[] noncePrefix = new byte[STREAM_NONCE_PREFIX_LENGTH];
+        fields.get(noncePrefix);
+        int chunkSize = fields.getInt();
+        if (chunkSize <= 0 || chunkSize > MAX_STREAM_CHUNK_SIZE) {
+            throw new IOException("Invalid chunk size " + chunkSize);
+        }
+
+        SecretKey key;
+        try {
+            key = getDataKey(keyVersion & 0xFF);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Data key unavailable", e);
+        }
+        return new DecryptingInputStream(in, key, header, noncePrefix, chunkSize);
+    }
+
+    public String decrypt(String encryptedText) {
+        return new String(decryptBytes(encryptedText), StandardCharsets.UTF_8);
+    }
+
+    public byte[] decryptBytes(String encryptedText) {
+        byte[] encrypted = Base64.decode(encryptedText, Base64.DEFAULT);
+        try {
+            if (isEnvelope(encrypted)) {
+                try {
+                    return decryptEnvelope(encrypted);
+                } catch (AEADBadTagException e) {
+                    // A legacy value whose random IV happens to start with the
+                    // marker; fall through to the keystore key
+                }
+            }
+            return decryptLegacy(encrypted);
         } catch (Exception e) {
             Log.e(TAG, "Decryption failed", e);
             throw new RuntimeException("Decryption failed", e);
         }
     }
 
+    private static boolean isEnvelope(byte[] encrypted) {
+        return encrypted.length >= ENVELOPE_HEADER_LENGTH + GCM_IV_LENGTH + GCM_TAG_LENGTH
+            && encrypted[0] == ENVELOPE_MARKER;
+    }
+
+    private byte[] decryptEnvelope(byte[] encrypted) throws GeneralSecurityException {
+        SecretKey key = findDataKey(encrypted[1] & 0xFF);
+        if (key == null) {
+            throw new AEADBadTagException("Unknown data key version " + (encrypted[1] & 0xFF));
+        }
+        Cipher cipher = getCipher();
+        cipher.init(Cipher.DECRYPT_MODE, key,
+            new GCMParameterSpec(GCM_TAG_LENGTH * 8, encrypted, ENVELOPE_HEADER_LENGTH, GCM_IV_LENGTH));
+        int offset = ENVELOPE_HEADER_LENGTH + GCM_IV_LENGTH;
+        return cipher.doFinal(encrypted, offset, encrypted.length - offset);
+    }
+
+    private byte[] decryptLegacy(byte[] encryptedWithIv) throws GeneralSecurityException {
+        return decryptWithKeystoreKey(encryptedWithIv, secretKey);
+    }
+
+    private static byte[] decryptWithKeystoreKey(byte[] encryptedWithIv, SecretKey keystoreKey)
+            throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, keystoreKey,
+            new GCMParameterSpec(GCM_TAG_LENGTH * 8, encryptedWithIv, 0, GCM_IV_LENGTH));
+        return cipher.doFinal(encryptedWithIv, GCM_IV_LENGTH, encryptedWithIv.length - GCM_IV_LENGTH);
+    }
+
+    private Cipher getCipher() throws GeneralSecurityException {
+        Cipher cipher = ciphers.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(TRANSFORMATION);
+            ciphers.set(cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * Version of the data key new values are encrypted with. The first call
+     * creates version 1 if this is the first run.
+     */
+    public int getCurrentKeyVersion() throws GeneralSecurityException {
+        int version = currentKeyVersion;
+        if (version != 0) {
+            return version;
+        }
+        synchronized (this) {
+            if (currentKeyVersion == 0) {
+                version = keyPreferences.getInt(CURRENT_KEY_VERSION, 1);
+                if (!keyPreferences.contains(WRAPPED_KEY_PREFIX + version)) {
+                    createDataKey(version);
+                }
+                currentKeyVersion = version;
+            }
+            return currentKeyVersion;
+        }
+    }
+
+    /**
+     * Data key version of a value from {@link #encrypt} or
+     * {@link #encryptBytes}, or 0 for values that predate envelope encryption.
+     */
+    public int getKeyVersion(String encryptedText) {
+        return getKeyVersion(Base64.decode(encryptedText, Base64.DEFAULT));
+    }
+
+    /**
+     * Same as {@link #getKeyVersion(String)} for unencoded ciphertext, such
+     * as sealed records and ByteBuffer output.
+     */
+    public static int getKeyVersion(byte[] encrypted) {
+        return isEnvelope(encrypted) ? encrypted[1] & 0xFF : 0;
+    }
+
+    /**
+     * Starts a new data key version under a new keystore key and makes it
+     * current. Existing data stays readable; re-encrypting it is up to the
+     * caller (see KeyRotationManager).
+     */
+    public synchronized int rotateDataKey() throws GeneralSecurityException {
+        int version = getCurrentKeyVersion() + 1;
+        if (version > 0xFF) {
+            throw new GeneralSecurityException("Data key versions exhausted");
+        }
+        createDataKey(version);
+        if (!keyPreferences.edit().putInt(CURRENT_KEY_VERSION, version).commit()) {
+            throw new GeneralSecurityException("Failed to store data key version");
+        }
+        currentKeyVersion = version;
+        Log.d(TAG, "Rotated to data key version " + version);
+        return version;
+    }
+
+    /**
+     * Forgets a data key and its keystore key. Anything still encrypted
+     * under it, including backups taken before the rotation, can no longer
+     * be decrypted.
+     */
+    public synchronized void retireDataKey(int version) throws GeneralSecurityException {
+        if (version == getCurrentKeyVersion()) {
+            throw new GeneralSecurityException("Cannot retire the current data key");
+        }
+        dataKeys.remove(version);
+        keyPreferences.edit().remove(WRAPPED_KEY_PREFIX + version).commit();
+        // Version 1 shares the original alias, which legacy values still need
+        if (version > 1) {
+            try {
+                KeyStore keyStore = KeyStore.getInstance(KEYSTORE_PROVIDER);
+                keyStore.load(null);
+                keyStore.deleteEntry(keystoreAliasFor(version));
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to delete keystore key for version " + version, e);
+            }
+        }
+        Log.d(TAG, "Retired data key version " + version);
+    }
+
+    private SecretKey getDataKey(int version) throws GeneralSecurityException {
+        SecretKey key = findDataKey(version);
+        if (key == null) {
+            throw new GeneralSecurityException("Unknown data key version " + version);
+        }
+        return key;
+    }
+
+    /**
+     * Returns a data key, unwrapping it with its keystore key on first use,
+     * or null if there is no such version.
+     */
+    private SecretKey findDataKey(int version) throws GeneralSecurityException {
+        SecretKey key = dataKeys.get(version);
+        if (key != null) {
+            return key;
+        }
+        synchronized (this) {
+            key = dataKeys.get(version);
+            if (key == null) {
+                String wrapped = keyPreferences.getString(WRAPPED_KEY_PREFIX + version, null);
+                if (wrapped == null) {
+                    return null;
+                }
+                key = new SecretKeySpec(decryptWithKeystoreKey(
+                    Base64.decode(wrapped, Base64.NO_WRAP), getKeystoreKey(version)), "AES");
+                dataKeys.put(version, key);
+            }
+            return key;
+        }
+    }
+
+    private void createDataKey(int version) throws GeneralSecurityException {
+        byte[] material = new byte[DATA_KEY_LENGTH];
+        secureRandom.nextBytes(material);
+        String wrapped = wrapKey(material, getKeystoreKey(version));
+        if (!keyPreferences.edit().putString(WRAPPED_KEY_PREFIX + version, wrapped).commit()) {
+            throw new GeneralSecurityException("Failed to store data key");
+        }
+        dataKeys.put(version, new SecretKeySpec(material, "AES"));
+        Log.d(TAG, "Created data key version " + version);
+    }
+
+    private SecretKey getKeystoreKey(int version) throws GeneralSecurityException {
+        if (version == 1) {
+            return secretKey;
+        }
+        String alias = keystoreAliasFor(version);
+        try {
+            KeyStore keyStore = KeyStore.getInstance(KEYSTORE_PROVIDER);
+            keyStore.load(null);
+            if (!keyStore.containsAlias(alias)) {
+                return generateKey(alias);
+            }
+            return (SecretKey) keyStore.getKey(alias, null);
+        } catch (IOException e) {
+            throw new GeneralSecurityException("Keystore unavailable", e);
+        }
+    }
+
+    private static String keystoreAliasFor(int version) {
+        return version == 1 ? KEYSTORE_ALIAS : KEYSTORE_ALIAS + "_v" + version;
+    }
+
+    private static String wrapKey(byte[] material, SecretKey keystoreKey) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, keystoreKey);
+        byte[] iv = cipher.getIV();
+        byte[] wrapped = cipher.doFinal(material);
+        byte[] wrappedWithIv = new byte[iv.length + wrapped.length];
+        System.arraycopy(iv, 0, wrappedWithIv, 0, iv.length);
+        System.arraycopy(wrapped, 0, wrappedWithIv, iv.length, wrapped.length);
+        return Base64.encodeToString(wrappedWithIv, Base64.NO_WRAP);
+    }
+
+    /**
+     * Signs data with a key derived from the current data key. The signature
+     * is the key version followed by an HMAC-SHA256, so data signed before a
+     * key rotation still verifies.
+     */
+    public byte[] sign(byte[] data) {
+        try {
+            int keyVersion = getCurrentKeyVersion();
+            byte[] mac = computeSignature(getDataKey(keyVersion), data);
+            byte[] signature = new byte[1 + mac.length];
+            signature[0] = (byte) keyVersion;
+            System.arraycopy(mac, 0, signature, 1, mac.length);
+            return signature;
+        } catch (Exception e) {
+            Log.e(TAG, "Signing failed", e);
+            throw new RuntimeException("Signing failed", e);
+        }
+    }
+
+    public boolean verifySignature(byte[] data, byte[] signature) {
+        try {
+            if (signature == null || signature.length < 2) {
+                return false;
+            }
+            SecretKey key = findDataKey(signature[0] & 0xFF);
+            if (key == null) {
+                return false;
+            }
+            byte[] expected = computeSignature(key, data);
+            return MessageDigest.isEqual(expected, Arrays.copyOfRange(signature, 1, signature.length));
+        } catch (Exception e) {
+            Log.e(TAG, "Signature verification failed", e);
+            return false;
+        }
+    }
+
+    /**
+     * Keyed digest of {@code data} under data key {@code keyVersion}, for
+     * naming stored content without revealing it: equal data gets equal
+     * names under the same key, but names cannot be checked against guessed
+     * contents without the key.
+     */
+    public byte[] nameContent(byte[] data, int keyVersion) throws GeneralSecurityException {
+        return computeMac(getDataKey(keyVersion), NAMING_KEY_LABEL, data);
+    }
+
+    private static byte[] computeSignature(SecretKey dataKey, byte[] data) throws GeneralSecurityException {
+        return computeMac(dataKey, SIGNING_KEY_LABEL, data);
+    }
+
+    // The data key is never used as a MAC key directly; a key for the
+    // purpose is derived from it first
+    private static byte[] computeMac(SecretKey dataKey, String label, byte[] data) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+        mac.init(new SecretKeySpec(dataKey.getEncoded(), HMAC_ALGORITHM));
+        byte[] purposeKey = mac.doFinal(label.getBytes(StandardCharsets.UTF_8));
+        mac.init(new SecretKeySpec(purposeKey, HMAC_ALGORITHM));
+        return mac.doFinal(data);
+    }
+
     public String generateHMAC(String data) {
         try {
             String deviceId = Settings.Secure.getString(context.getContentResolver(), Settings.Secure.ANDROID_ID);
@@ -0,0 +1,314 @@
+package com.budgetwise.security;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import com.budgetwise.BudgetWiseApplication;
+import com.budgetwise.data.repository.BudgetRepository;
+import com.budgetwise.data.storage.StorageEngine;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Rotates the data key and re-encrypts stored data under the new one in the
+ * background. Work is split into batches - one month partition, the
+ * budgets, or a handful of preference entries - with a pause in between.
+ * Progress is saved after every batch, so a rotation interrupted by process
+ * death picks up where it stopped.
+ *
+ * A partition is decrypted and resealed on the worker's own thread, at
+ * background priority; the repository's writer only stores the result, and
+ * drops it if the partition was written in the meantime. The budgets, the
+ * preference entries and the journal compaction after the budgets still run
+ * on the writer, so commits wait behind those batches; the compaction only
+ * writes the partitions changed since the last one.
+ *
+ * Reads keep working throughout because every value records the key version
+ * it was encrypted with. Old keys are kept after the pass, since backups
+ * made before the rotation still need them; use
+ * {@link EncryptionManager#retireDataKey} to drop one explicitly.
+ */
+public class KeyRotationManager {
+    private static final String TAG = "KeyRotationManager";
+    private static final String PREFS_NAME = "BudgetWiseKeyRotation";
+    private static final String WORK_NAME = "key_rotation";
+    private static final String KEY_TARGET_VERSION = "target_version";
+    private static final String KEY_PHASE = "phase";
+    private static final String KEY_CURSOR = "cursor";
+    private static final String KEY_PARTITIONS_DONE = "partitions_done";
+    private static final String KEY_PARTITIONS_TOTAL = "partitions_total";
+    private static final String KEY_RECORDS = "records";
+    private static final String KEY_ACTIVE_MILLIS = "active_millis";
+
+    private static final String PHASE_PARTITIONS = "partitions";
+    private static final String PHASE_BUDGETS = "budgets";
+    private static final String PHASE_PREFERENCES = "preferences";
+
+    private static final int PREFERENCES_BATCH_SIZE = 16;
+    private static final long BATCH_PAUSE_MILLIS = 200;
+
+    private final Context context;
+    private final EncryptionManager encryptionManager;
+    private final BudgetRepository repository;
+    private final SharedPreferences state;
+    private final MutableLiveData<Progress> progressLiveData = new MutableLiveData<>();
+
+    public KeyRotationManager(Context context, EncryptionManager encryptionManager, BudgetRepository repository) {
+        this.context = context.getApplicationContext();
+        this.encryptionManager = encryptionManager;
+        this.repository = repository;
+        this.state = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        progressLiveData.postValue(getProgress());
+    }
+
+    /**
+     * Creates a new data key, makes it current for all new writes and
+     * schedules re-encryption of existing data. A rotation already in
+     * progress restarts against the newer key.
+     */
+    public synchronized void startRotation() throws GeneralSecurityException {
+        int version = encryptionManager.rotateDataKey();
+        resetState(version);
+        Log.d(TAG, "Rotated to data key v" + version);
+        enqueue();
+    }
+
+    /**
+     * Re-schedules an unfinished rotation; called on every app start.
+     */
+    public void resumeIfNeeded() {
+        if (isRotationPending()) {
+            enqueue();
+        }
+    }
+
+    public boolean isRotationPending() {
+        return state.getInt(KEY_TARGET_VERSION, 0) != 0;
+    }
+
+    public LiveData<Progress> getProgressLiveData() {
+        return progressLiveData;
+    }
+
+    public synchronized Progress getProgress() {
+        return new Progress(state.getInt(KEY_TARGET_VERSION, 0), state.getString(KEY_PHASE, null),
+            state.getInt(KEY_PARTITIONS_DONE, 0), state.getInt(KEY_PARTITIONS_TOTAL, 0),
+            state.getLong(KEY_RECORDS, 0), state.getLong(KEY_ACTIVE_MILLIS, 0));
+    }
+
+    private void enqueue() {
+        Constraints constraints = new Constraints.Builder()
+            .setRequiresBatteryNotLow(true)
+            .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(KeyRotationWorker.class)
+            .setConstraints(constraints)
+            .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.KEEP, request);
+    }
+
+    private void resetState(int targetVersion) {
+        state.edit()
+            .putInt(KEY_TARGET_VERSION, targetVersion)
+            .putString(KEY_PHASE, PHASE_PARTITIONS)
+            .remove(KEY_CURSOR)
+            .putInt(KEY_PARTITIONS_DONE, 0)
+            .putInt(KEY_PARTITIONS_TOTAL, 0)
+            .putLong(KEY_RECORDS, 0)
+            .putLong(KEY_ACTIVE_MILLIS, 0)
+            .commit();
+        progressLiveData.postValue(getProgress());
+    }
+
+    /**
+     * Runs one batch and saves progress. Returns false once there is nothing
+     * left to do; throws if the batch failed, leaving progress at the last
+     * completed batch.
+     */
+    synchronized boolean runNextBatch() throws Exception {
+        int targetVersion = state.getInt(KEY_TARGET_VERSION, 0);
+        if (targetVersion == 0) {
+            return false;
+        }
+        if (encryptionManager.getCurrentKeyVersion() != targetVersion) {
+            // Rotated again by a newer call; everything has to move again
+            resetState(encryptionManager.getCurrentKeyVersion());
+            return true;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        String phase = state.getString(KEY_PHASE, PHASE_PARTITIONS);
+        String cursor = state.getString(KEY_CURSOR, "");
+        SharedPreferences.Editor editor = state.edit();
+        boolean more = true;
+
+        switch (phase) {
+            case PHASE_PARTITIONS: {
+                String[] partition = new String[1];
+                int[] counts = new int[2];
+                repository.runStorageTask((storage, preferences) -> {
+                    List<String> partitions = new ArrayList<>(storage.getIndex().keySet());
+                    counts[1] = partitions.size();
+                    for (String candidate : partitions) {
+                        if (candidate.compareTo(cursor) > 0) {
+                            partition[0] = candidate;
+                            break;
+                        }
+                    }
+                }).get();
+                if (partition[0] == null) {
+                    editor.putString(KEY_PHASE, PHASE_BUDGETS).remove(KEY_CURSOR);
+                    break;
+                }
+                // Decrypted and resealed on this thread; the writer only
+                // stores the result if the partition has not changed since
+                StorageEngine.Resealed resealed = repository.resealPartition(partition[0]);
+                if (resealed == null) {
+                    throw new IllegalStateException("Re-encryption of " + partition[0] + " failed");
+                }
+                repository.runStorageTask((storage, preferences) ->
+                    counts[0] = storage.storeResealed(resealed)).get();
+                if (counts[0] == StorageEngine.RESEAL_STALE) {
+                    // Written in between; the next batch reseals it again
+                    break;
+                }
+                if (counts[0] < 0) {
+                    throw new IllegalStateException("Re-encryption of " + partition[0] + " failed");
+                }
+                editor.putString(KEY_CURSOR, partition[0])
+                    .putInt(KEY_PARTITIONS_DONE, state.getInt(KEY_PARTITIONS_DONE, 0) + 1)
+                    .putInt(KEY_PARTITIONS_TOTAL, counts[1])
+                    .putLong(KEY_RECORDS, state.getLong(KEY_RECORDS, 0) + counts[0]);
+                break;
+            }
+            case PHASE_BUDGETS:
+                repository.runStorageTask((storage, preferences) -> {
+                    if (!storage.reencryptBudgets()) {
+                        throw new IllegalStateException("Re-encryption of budgets failed");
+                    }
+                }).get();
+                // The journal and the index are rewritten under the new key too
+                repository.compactJournal().get();
+                editor.putString(KEY_PHASE, PHASE_PREFERENCES).remove(KEY_CURSOR);
+                break;
+            case PHASE_PREFERENCES: {
+                String[] lastKey = new String[1];
+                int[] counts = new int[1];
+                repository.runStorageTask((storage, preferences) -> {
+                    List<String> staleKeys = preferences.getStaleKeys();
+                    Collections.sort(staleKeys);
+                    for (String key : staleKeys) {
+                        if (key.compareTo(cursor) <= 0) {
+                            continue;
+                        }
+                        if (counts[0] == PREFERENCES_BATCH_SIZE) {
+                            break;
+                        }
+                        // An entry that cannot be decrypted is left for
+                        // inspection rather than blocking the rotation
+                        if (preferences.reencrypt(key)) {
+                            counts[0]++;
+                        } else {
+                            Log.w(TAG, "Skipping unreadable entry " + key);
+                        }
+                        lastKey[0] = key;
+                    }
+                }).get();
+                if (lastKey[0] == null) {
+                    more = false;
+                } else {
+                    editor.putString(KEY_CURSOR, lastKey[0])
+                        .putLong(KEY_RECORDS, state.getLong(KEY_RECORDS, 0) + counts[0]);
+                }
+                break;
+            }
+            default:
+                more = false;
+                break;
+        }
+
+        editor.putLong(KEY_ACTIVE_MILLIS,
+            state.getLong(KEY_ACTIVE_MILLIS, 0) + SystemClock.elapsedRealtime() - start);
+        editor.commit();
+        Progress progress = getProgress();
+        if (!more) {
+            Log.d(TAG, "Rotation to v" + targetVersion + " finished: " + progress);
+            state.edit().putInt(KEY_TARGET_VERSION, 0).putString(KEY_PHASE, null).commit();
+        } else {
+            Log.d(TAG, progress.toString());
+        }
+        progressLiveData.postValue(progress);
+        return more;
+    }
+
+    public static class Progress {
+        public final int targetVersion;
+        public final String phase;
+        public final int partitionsDone;
+        public final int partitionsTotal;
+        public final long recordsReencrypted;
+        public final long activeMillis;
+
+        Progress(int targetVersion, String phase, int partitionsDone, int partitionsTotal,
+                 long recordsReencrypted, long activeMillis) {
+            this.targetVersion = targetVersion;
+            this.phase = phase;
+            this.partitionsDone = partitionsDone;
+            this.partitionsTotal = partitionsTotal;
+            this.recordsReencrypted = recordsReencrypted;
+            this.activeMillis = activeMillis;
+        }
+
+        /**
+         * Records re-encrypted per second of batch time, excluding the pauses
+         * between batches and any time the worker was not running.
+         */
+        public double getRecordsPerSecond() {
+            return activeMillis == 0 ? 0.0 : recordsReencrypted * 1000.0 / activeMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "v%d %s: %d/%d partitions, %d records in %dms (%.0f records/s)",
+                targetVersion, phase, partitionsDone, partitionsTotal, recordsReencrypted, activeMillis,
+                getRecordsPerSecond());
+        }
+    }
+
+    public static class KeyRotationWorker extends Worker {
+        public KeyRotationWorker(Context context, WorkerParameters params) {
+            super(context, params);
+        }
+
+        @Override
+        public Result doWork() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            KeyRotationManager manager = BudgetWiseApplication.getInstance().getKeyRotationManager();
+            try {
+                while (!isStopped()) {
+                    if (!manager.runNextBatch()) {
+                        return Result.success();
+                    }
+                    SystemClock.sleep(BATCH_PAUSE_MILLIS);
+                }
+                // Progress is saved; the next run continues from here
+                return Result.retry();
+            } catch (Exception e) {
+                Log.e(TAG, "Key rotation batch failed", e);
+                return Result.retry();
+            }
+        }
+    }
+}
@@ -1,26 +1,30 @@
 package com.budgetwise.ui.analytics;
 
 import androidx.lifecycle.LiveData;
-import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 import com.budgetwise.data.models.Transaction;
 import com.budgetwise.data.repository.BudgetRepository;
+import com.budgetwise.data.repository.RepositoryChange;
+import com.budgetwise.data.repository.TransactionColumns;
 import com.budgetwise.ai.EnhancedIntelligenceService;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 public class AnalyticsViewModel extends ViewModel {
+    private static final long HISTORY_WINDOW_MILLIS = 6L * 30 * 24 * 60 * 60 * 1000;
+
     private final BudgetRepository repository;
     private final EnhancedIntelligenceService intelligenceService;
     
-    private final MediatorLiveData<Map<String, Double>> categorySpending = new MediatorLiveData<>();
-    private final MediatorLiveData<Map<String, Double>> monthlySpending = new MediatorLiveData<>();
-    private final MediatorLiveData<SpendingTrend> spendingTrend = new MediatorLiveData<>();
-    private final MediatorLiveData<String> topCategory = new MediatorLiveData<>();
-    private final MediatorLiveData<Double> averageDaily = new MediatorLiveData<>();
-    private final MediatorLiveData<Double> savingsRate = new MediatorLiveData<>();
+    private final MutableLiveData<Map<String, Double>> categorySpending = new MutableLiveData<>();
+    private final MutableLiveData<Map<String, Double>> monthlySpending = new MutableLiveData<>();
+    private final MutableLiveData<SpendingTrend> spendingTrend = new MutableLiveData<>();
+    private final MutableLiveData<String> topCategory = new MutableLiveData<>();
+    private final MutableLiveData<Double> averageDaily = new MutableLiveData<>();
+    private final MutableLiveData<Double> savingsRate = new MutableLiveData<>();
+    private final RepositoryChange.Listener<Transaction> changeListener = this::onTransactionsChanged;
 
     public enum SpendingTrend {
         INCREASING, DECREASING, STABLE
@@ -29,36 +33,44 @@ public class AnalyticsViewModel extends ViewModel {
     public AnalyticsViewModel(BudgetRepository repository, EnhancedIntelligenceService intelligenceService) {
         this.repository = repository;
         this.intelligenceService = intelligenceService;
-        setupMediators();
+        repository.addTransactionListener(changeListener);
+        refresh();
+
+        // Monthly spending looks back six months, beyond what loads at startup
+        long now = System.currentTimeMillis();
+        repository.loadTransactionsBetween(now - HISTORY_WINDOW_MILLIS, now);
     }
 
-    private void setupMediators() {
-        categorySpending.addSource(repository.getTransactions(), this::calculateCategorySpending);
-        monthlySpending.addSource(repository.getTransactions(), this::calculateMonthlySpending);
-        spendingTrend.addSource(repository.getTransactions(), this::calculateSpendingTrend);
-        topCategory.addSource(repository.getTransactions(), this::calculateTopCategory);
-        averageDaily.addSource(repository.getTransactions(), this::calculateAverageDaily);
-        savingsRate.addSource(repository.getTransactions(), this::calculateSavingsRate);
+    private void onTransactionsChanged(List<RepositoryChange<Transaction>> changes) {
+        refresh();
     }
 
-    private void calculateCategorySpending(List<Transaction> transactions) {
-        Map<String, Double> categoryData = new HashMap<>();
+    /**
+     * Every figure here covers at most the last six months, so only that
+     * slice of the date index is read, once per commit rather than once per
+     * figure.
+     */
+    private void refresh() {
+        long now = System.currentTimeMillis();
+        TransactionColumns columns = TransactionColumns.of(
+            repository.getTransactionsBetween(now - HISTORY_WINDOW_MILLIS, Long.MAX_VALUE));
+        calculateCategorySpending(columns);
+        calculateMonthlySpending(columns);
+        calculateSpendingTrend(columns);
+        calculateTopCategory(columns);
+        calculateAverageDaily(columns);
+        calculateSavingsRate(columns);
+    }
+
+    private void calculateCategorySpending(TransactionColumns columns) {
         long thirtyDaysAgo = System.currentTimeMillis() - (30L * 24 * 60 * 60 * 1000);
+        long[] cents = columns.sumCentsByCategory(
+            TransactionColumns.TYPE_EXPENSE, columns.indexAfter(thirtyDaysAgo), columns.size());
         
-        for (Transaction transaction : transactions) {
-            if (transaction.getType() == Transaction.TransactionType.EXPENSE && 
-                transaction.getDate().getTime() > thirtyDaysAgo) {
-                
-                String category = transaction.getCategory();
-                categoryData.put(category, 
-                    categoryData.getOrDefault(category, 0.0) + transaction.getAmount());
-            }
-        }
-        
-        categorySpending.setValue(categoryData);
+        categorySpending.setValue(columns.toCategoryAmounts(cents));
     }
 
-    private void calculateMonthlySpending(List<Transaction> transactions) {
+    private void calculateMonthlySpending(TransactionColumns columns) {
         Map<String, Double> monthlyData = new HashMap<>();
         
         // Calculate spending for last 6 months
@@ -67,11 +79,8 @@ public class AnalyticsViewModel extends ViewModel {
             long monthStart = now - ((long) (i + 1) * 30 * 24 * 60 * 60 * 1000);
             long monthEnd = now - ((long) i * 30 * 24 * 60 * 60 * 1000);
             
-            double monthSpending = transactions.stream()
-                .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-                .filter(t -> t.getDate().getTime() >= monthStart && t.getDate().getTime() < monthEnd)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+            double monthSpending = columns.sumCents(TransactionColumns.TYPE_EXPENSE,
+                columns.indexAtOrAfter(monthStart), columns.indexAtOrAfter(monthEnd)) / 100.0;
             
             String monthLabel = "Month " + (6 - i);
             monthlyData.put(monthLabel, monthSpending);
@@ -80,22 +89,16 @@ public class AnalyticsViewModel extends ViewModel {
         monthlySpending.setValue(monthlyData);
     }
 
-    private void calculateSpendingTrend(List<Transaction> transactions) {
+    private void calculateSpendingTrend(TransactionColumns columns) {
         long now = System.currentTimeMillis();
         long thisWeek = now - (7L * 24 * 60 * 60 * 1000);
         long lastWeek = thisWeek - (7L * 24 * 60 * 60 * 1000);
+        int thisWeekFrom = columns.indexAfter(thisWeek);
         
-        double thisWeekSpending = transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .filter(t -> t.getDate().getTime() > thisWeek)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
-            
-        double lastWeekSpending = transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .filter(t -> t.getDate().getTime() > lastWeek && t.getDate().getTime() <= thisWeek)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
+        double thisWeekSpending = columns.sumCents(
+            TransactionColumns.TYPE_EXPENSE, thisWeekFrom, columns.size()) / 100.0;
+        double lastWeekSpending = columns.sumCents(
+            TransactionColumns.TYPE_EXPENSE, columns.indexAfter(lastWeek), thisWeekFrom) / 100.0;
         
         if (lastWeekSpending == 0) {
             spendingTrend.setValue(SpendingTrend.STABLE);
@@ -113,54 +116,38 @@ public class AnalyticsViewModel extends ViewModel {
         }
     }
 
-    private void calculateTopCategory(List<Transaction> transactions) {
-        Map<String, Double> categoryTotals = new HashMap<>();
+    private void calculateTopCategory(TransactionColumns columns) {
         long thirtyDaysAgo = System.currentTimeMillis() - (30L * 24 * 60 * 60 * 1000);
+        long[] cents = columns.sumCentsByCategory(
+            TransactionColumns.TYPE_EXPENSE, columns.indexAfter(thirtyDaysAgo), columns.size());
         
-        for (Transaction transaction : transactions) {
-            if (transaction.getType() == Transaction.TransactionType.EXPENSE && 
-                transaction.getDate().getTime() > thirtyDaysAgo) {
-                
-                String category = transaction.getCategory();
-                categoryTotals.put(category, 
-                    categoryTotals.getOrDefault(category, 0.0) + transaction.getAmount());
+        String top = "No data";
+        long topCents = 0;
+        for (int id = 0; id < cents.length; id++) {
+            if (cents[id] > topCents) {
+                topCents = cents[id];
+                top = columns.categoryName(id);
             }
         }
-        
-        String top = categoryTotals.entrySet().stream()
-            .max(Map.Entry.comparingByValue())
-            .map(Map.Entry::getKey)
-            .orElse("No data");
             
         topCategory.setValue(top);
     }
 
-    private void calculateAverageDaily(List<Transaction> transactions) {
+    private void calculateAverageDaily(TransactionColumns columns) {
         long thirtyDaysAgo = System.currentTimeMillis() - (30L * 24 * 60 * 60 * 1000);
         
-        double totalSpending = transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .filter(t -> t.getDate().getTime() > thirtyDaysAgo)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
+        double totalSpending = columns.sumCents(
+            TransactionColumns.TYPE_EXPENSE, columns.indexAfter(thirtyDaysAgo), columns.size()) / 100.0;
         
         averageDaily.setValue(totalSpending / 30.0);
     }
 
-    private void calculateSavingsRate(List<Transaction> transactions) {
+    private void calculateSavingsRate(TransactionColumns columns) {
         long thirtyDaysAgo = System.currentTimeMillis() - (30L * 24 * 60 * 60 * 1000);
+        int from = columns.indexAfter(thirtyDaysAgo);
         
-        double totalIncome = transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.INCOME)
-            .filter(t -> t.getDate().getTime() > thirtyDaysAgo)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
-            
-        double totalExpenses = transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .filter(t -> t.getDate().getTime() > thirtyDaysAgo)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
+        double totalIncome = columns.sumCents(TransactionColumns.TYPE_INCOME, from, columns.size()) / 100.0;
+        double totalExpenses = columns.sumCents(TransactionColumns.TYPE_EXPENSE, from, columns.size()) / 100.0;
         
         if (totalIncome > 0) {
             double savings = totalIncome - totalExpenses;
@@ -194,4 +181,10 @@ public class AnalyticsViewModel extends ViewModel {
     public LiveData<Double> getSavingsRate() {
         return savingsRate;
     }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        repository.removeTransactionListener(changeListener);
+    }
 }
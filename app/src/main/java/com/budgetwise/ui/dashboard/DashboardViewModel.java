@@ -1,83 +1,88 @@
 package com.budgetwise.ui.dashboard;
 
 import androidx.lifecycle.LiveData;
-import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 import com.budgetwise.data.models.Budget;
 import com.budgetwise.data.models.Transaction;
 import com.budgetwise.data.repository.BudgetRepository;
+import com.budgetwise.data.repository.RepositoryChange;
 import com.budgetwise.ai.EnhancedIntelligenceService;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class DashboardViewModel extends ViewModel {
+    private static final long MONTH_WINDOW_MILLIS = 30L * 24 * 60 * 60 * 1000;
+
     private final BudgetRepository repository;
     private final EnhancedIntelligenceService intelligenceService;
     
-    private final MediatorLiveData<Double> totalBalance = new MediatorLiveData<>();
-    private final MediatorLiveData<Double> monthlySpending = new MediatorLiveData<>();
-    private final MediatorLiveData<List<Transaction>> recentTransactions = new MediatorLiveData<>();
+    private final MutableLiveData<Double> totalBalance = new MutableLiveData<>();
+    private final MutableLiveData<Double> monthlySpending = new MutableLiveData<>();
+    private final MutableLiveData<List<Transaction>> recentTransactions = new MutableLiveData<>();
+    private final RepositoryChange.Listener<Transaction> changeListener = this::onTransactionsChanged;
+
+    // Balance of the loaded transactions, adjusted per change
+    private double loadedBalance;
 
     public DashboardViewModel(BudgetRepository repository, EnhancedIntelligenceService intelligenceService) {
         this.repository = repository;
         this.intelligenceService = intelligenceService;
         
-        setupMediators();
+        for (Transaction transaction : repository.addTransactionListener(changeListener)) {
+            loadedBalance += balanceOf(transaction);
+        }
+        refresh();
         
         // Trigger analysis
         intelligenceService.runCompleteAnalysis();
     }
 
-    private void setupMediators() {
-        totalBalance.addSource(repository.getTransactions(), transactions -> {
-            double balance = calculateTotalBalance(transactions);
-            totalBalance.setValue(balance);
-        });
-
-        monthlySpending.addSource(repository.getTransactions(), transactions -> {
-            double spending = calculateMonthlySpending(transactions);
-            monthlySpending.setValue(spending);
-        });
+    private void onTransactionsChanged(List<RepositoryChange<Transaction>> changes) {
+        for (RepositoryChange<Transaction> change : changes) {
+            if (change.getBefore() != null) {
+                loadedBalance -= balanceOf(change.getBefore());
+            }
+            if (change.getAfter() != null) {
+                loadedBalance += balanceOf(change.getAfter());
+            }
+        }
+        refresh();
+    }
 
-        recentTransactions.addSource(repository.getTransactions(), transactions -> {
-            List<Transaction> recent = getRecentTransactions(transactions, 5);
-            recentTransactions.setValue(recent);
-        });
+    private void refresh() {
+        // Months not decrypted yet contribute through their partition totals
+        totalBalance.setValue(loadedBalance + repository.getUnloadedBalance());
+        monthlySpending.setValue(calculateMonthlySpending());
+        recentTransactions.setValue(repository.getRecentTransactions(5));
     }
 
-    private double calculateTotalBalance(List<Transaction> transactions) {
-        double balance = 0.0;
-        for (Transaction transaction : transactions) {
-            switch (transaction.getType()) {
-                case INCOME:
-                    balance += transaction.getAmount();
-                    break;
-                case EXPENSE:
-                    balance -= transaction.getAmount();
-                    break;
-                case TRANSFER:
-                    // Transfers don't affect total balance
-                    break;
-            }
+    private double balanceOf(Transaction transaction) {
+        if (transaction.getType() == null) {
+            return 0.0;
+        }
+        switch (transaction.getType()) {
+            case INCOME:
+                return transaction.getAmount();
+            case EXPENSE:
+                return -transaction.getAmount();
+            case TRANSFER:
+            default:
+                // Transfers don't affect total balance
+                return 0.0;
         }
-        return balance;
     }
 
-    private double calculateMonthlySpending(List<Transaction> transactions) {
-        long thirtyDaysAgo = System.currentTimeMillis() - (30L * 24 * 60 * 60 * 1000);
+    private double calculateMonthlySpending() {
+        long now = System.currentTimeMillis();
         
-        return transactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .filter(t -> t.getDate().getTime() > thirtyDaysAgo)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
-    }
-
-    private List<Transaction> getRecentTransactions(List<Transaction> transactions, int limit) {
-        return transactions.stream()
-            .sorted((t1, t2) -> t2.getDate().compareTo(t1.getDate()))
-            .limit(limit)
-            .collect(Collectors.toList());
+        // Only the window is read from the date index, not the whole history
+        double spending = 0.0;
+        for (Transaction transaction : repository.getTransactionsBetween(now - MONTH_WINDOW_MILLIS + 1, Long.MAX_VALUE)) {
+            if (transaction.getType() == Transaction.TransactionType.EXPENSE) {
+                spending += transaction.getAmount();
+            }
+        }
+        return spending;
     }
 
     public LiveData<List<Budget>> getBudgets() {
@@ -99,4 +104,10 @@ public class DashboardViewModel extends ViewModel {
     public LiveData<List<String>> getInsights() {
         return intelligenceService.getInsightsLiveData();
     }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        repository.removeTransactionListener(changeListener);
+    }
 }
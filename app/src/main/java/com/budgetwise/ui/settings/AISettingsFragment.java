@@ -11,6 +11,7 @@ import com.budgetwise.BudgetWiseApplication;
 import com.budgetwise.ai.EnhancedIntelligenceService;
 import com.budgetwise.databinding.FragmentAiSettingsBinding;
 import com.budgetwise.utils.ThemeManager;
+import java.util.Locale;
 
 public class AISettingsFragment extends Fragment {
     private FragmentAiSettingsBinding binding;
@@ -23,6 +24,7 @@ public class AISettingsFragment extends Fragment {
         intelligenceService = BudgetWiseApplication.getInstance().getIntelligenceService();
         
         setupClickListeners();
+        observeProgress();
         loadSettings();
         
         return binding.getRoot();
@@ -71,17 +73,22 @@ public class AISettingsFragment extends Fragment {
         });
 
         // Run AI analysis button
-        binding.buttonRunAnalysis.setOnClickListener(v -> {
-            binding.buttonRunAnalysis.setEnabled(false);
-            binding.buttonRunAnalysis.setText("Running Analysis...");
-            
-            intelligenceService.runCompleteAnalysis();
-            
-            // Re-enable button after delay
-            v.postDelayed(() -> {
+        // The button follows the analysis progress below
+        binding.buttonRunAnalysis.setOnClickListener(v -> intelligenceService.runCompleteAnalysis());
+    }
+
+    private void observeProgress() {
+        intelligenceService.getProgressLiveData().observe(getViewLifecycleOwner(), progress -> {
+            if (progress == null || !progress.isInProgress()) {
                 binding.buttonRunAnalysis.setEnabled(true);
                 binding.buttonRunAnalysis.setText("Run AI Analysis");
-            }, 3000);
+            } else {
+                binding.buttonRunAnalysis.setEnabled(false);
+                binding.buttonRunAnalysis.setText(progress.stagesTotal > 0
+                    ? String.format(Locale.getDefault(), "Running Analysis... %d/%d",
+                        progress.stagesFinished, progress.stagesTotal)
+                    : "Running Analysis...");
+            }
         });
     }
 
@@ -5,17 +5,26 @@ import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatDelegate;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
 import com.budgetwise.BudgetWiseApplication;
+import com.budgetwise.backup.BackupManager;
+import com.budgetwise.data.storage.StorageEngines;
 import com.budgetwise.databinding.FragmentSettingsBinding;
+import com.budgetwise.security.KeyRotationManager;
 import com.budgetwise.ui.settings.backup.BackupActivity;
 import com.budgetwise.utils.ThemeManager;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
 
 public class SettingsFragment extends Fragment {
+    private static final String[] STORAGE_LABELS = {"Preferences file", "Encrypted file", "SQLite database"};
+
     private FragmentSettingsBinding binding;
     private SettingsViewModel viewModel;
     private ThemeManager themeManager;
@@ -28,13 +37,16 @@ public class SettingsFragment extends Fragment {
         setupThemeManager();
         setupClickListeners();
         observeData();
+        updateAutoBackupDisplay();
+        updateStorageDisplay();
         
         return binding.getRoot();
     }
 
     private void setupViewModel() {
         SettingsViewModelFactory factory = new SettingsViewModelFactory(
-            BudgetWiseApplication.getInstance().getBudgetRepository()
+            BudgetWiseApplication.getInstance().getBudgetRepository(),
+            BudgetWiseApplication.getInstance().getKeyRotationManager()
         );
         viewModel = new ViewModelProvider(this, factory).get(SettingsViewModel.class);
     }
@@ -55,9 +67,10 @@ public class SettingsFragment extends Fragment {
         binding.cardTheme.setOnClickListener(v -> showThemeDialog());
 
         // Security Settings
-        binding.cardSecurity.setOnClickListener(v -> {
-            // TODO: Open security settings
-        });
+        binding.cardSecurity.setOnClickListener(v -> showSecurityDialog());
+
+        // Storage Engine
+        binding.cardStorage.setOnClickListener(v -> showStorageDialog());
 
         // About
         binding.cardAbout.setOnClickListener(v -> showAboutDialog());
@@ -77,6 +90,35 @@ public class SettingsFragment extends Fragment {
             binding.textBudgetCount.setText(String.format("%d budgets", stats.budgetCount));
             binding.textDataSize.setText(String.format("%.1f KB", stats.dataSizeKB));
         });
+
+        viewModel.getKeyRotationProgress().observe(getViewLifecycleOwner(), this::updateKeyRotationDisplay);
+        viewModel.getRotationFailed().observe(getViewLifecycleOwner(), failed -> {
+            if (failed) {
+                Toast.makeText(requireContext(), "Could not create a new encryption key", Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    private void updateAutoBackupDisplay() {
+        BackupManager.AutoBackupStatus status =
+            BudgetWiseApplication.getInstance().getBackupManager().getAutoBackupStatus();
+        if (status == null) {
+            return;
+        }
+        String when = new SimpleDateFormat("MMM d, HH:mm", Locale.getDefault()).format(new Date(status.lastRun));
+        switch (status.outcome) {
+            case CREATED:
+                binding.textAutoBackupStatus.setText(String.format(Locale.getDefault(),
+                    "Auto backup %s · %.1f KB in %.1fs", when,
+                    status.bytesWritten / 1024.0, status.durationMillis / 1000.0));
+                break;
+            case SKIPPED:
+                binding.textAutoBackupStatus.setText("Auto backup " + when + " · no changes");
+                break;
+            case FAILED:
+                binding.textAutoBackupStatus.setText("Auto backup failed " + when);
+                break;
+        }
     }
 
     private void showThemeDialog() {
@@ -115,6 +157,60 @@ public class SettingsFragment extends Fragment {
         binding.textCurrentTheme.setText(themes[currentTheme]);
     }
 
+    private void updateKeyRotationDisplay(KeyRotationManager.Progress progress) {
+        if (progress == null || progress.targetVersion == 0) {
+            binding.textKeyRotationStatus.setVisibility(View.GONE);
+            return;
+        }
+        binding.textKeyRotationStatus.setVisibility(View.VISIBLE);
+        binding.textKeyRotationStatus.setText(String.format(Locale.getDefault(),
+            "Re-encrypting data · %d of %d months", progress.partitionsDone, progress.partitionsTotal));
+    }
+
+    private void showSecurityDialog() {
+        if (BudgetWiseApplication.getInstance().getKeyRotationManager().isRotationPending()) {
+            new MaterialAlertDialogBuilder(requireContext())
+                .setTitle("Encryption Key")
+                .setMessage("Your data is being re-encrypted under a new key. This continues in the background.")
+                .setPositiveButton("OK", null)
+                .show();
+            return;
+        }
+        new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("Rotate Encryption Key")
+            .setMessage("Creates a new encryption key and re-encrypts your data with it in the background. "
+                + "The app stays usable meanwhile, and existing backups can still be restored.")
+            .setPositiveButton("Rotate", (dialog, which) -> viewModel.rotateEncryptionKey())
+            .setNegativeButton("Cancel", null)
+            .show();
+    }
+
+    private void showStorageDialog() {
+        String pending = StorageEngines.getPending(requireContext());
+        String chosen = pending != null ? pending : StorageEngines.getSelected(requireContext());
+
+        new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("Storage Engine")
+            .setSingleChoiceItems(STORAGE_LABELS, StorageEngines.ALL.indexOf(chosen), (dialog, which) -> {
+                StorageEngines.requestSwitch(requireContext(), StorageEngines.ALL.get(which));
+                updateStorageDisplay();
+                dialog.dismiss();
+            })
+            .setNegativeButton("Cancel", null)
+            .show();
+    }
+
+    private void updateStorageDisplay() {
+        String selected = StorageEngines.getSelected(requireContext());
+        String pending = StorageEngines.getPending(requireContext());
+        String label = STORAGE_LABELS[StorageEngines.ALL.indexOf(selected)];
+        if (pending != null) {
+            // Data is only moved while the app starts, before anything reads it
+            label += " → " + STORAGE_LABELS[StorageEngines.ALL.indexOf(pending)] + " after restart";
+        }
+        binding.textCurrentStorage.setText(label);
+    }
+
     private void showAboutDialog() {
         new MaterialAlertDialogBuilder(requireContext())
             .setTitle("About BudgetWise")
@@ -1,13 +1,27 @@
 package com.budgetwise.ui.settings;
 
+import android.util.Log;
 import androidx.lifecycle.LiveData;
-import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
+import com.budgetwise.data.models.Budget;
+import com.budgetwise.data.models.Transaction;
 import com.budgetwise.data.repository.BudgetRepository;
+import com.budgetwise.data.repository.RepositoryChange;
+import com.budgetwise.security.KeyRotationManager;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class SettingsViewModel extends ViewModel {
+    private static final String TAG = "SettingsViewModel";
+
     private final BudgetRepository repository;
-    private final MediatorLiveData<DataStats> dataStats = new MediatorLiveData<>();
+    private final KeyRotationManager keyRotationManager;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final MutableLiveData<DataStats> dataStats = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> rotationFailed = new MutableLiveData<>();
+    private final RepositoryChange.Listener<Transaction> transactionListener = changes -> refreshStats();
+    private final RepositoryChange.Listener<Budget> budgetListener = changes -> refreshStats();
 
     public static class DataStats {
         public int transactionCount;
@@ -15,19 +29,21 @@ public class SettingsViewModel extends ViewModel {
         public double dataSizeKB;
     }
 
-    public SettingsViewModel(BudgetRepository repository) {
+    public SettingsViewModel(BudgetRepository repository, KeyRotationManager keyRotationManager) {
         this.repository = repository;
-        setupMediators();
+        this.keyRotationManager = keyRotationManager;
+        repository.addTransactionListener(transactionListener);
+        repository.addBudgetListener(budgetListener);
+        refreshStats();
     }
 
-    private void setupMediators() {
-        dataStats.addSource(repository.getTransactions(), transactions -> {
-            DataStats stats = new DataStats();
-            stats.transactionCount = transactions.size();
-            stats.budgetCount = repository.getCachedBudgets().size();
-            stats.dataSizeKB = calculateDataSize(transactions.size(), stats.budgetCount);
-            dataStats.setValue(stats);
-        });
+    private void refreshStats() {
+        // Counts come from the repository's index, so no list is scanned
+        DataStats stats = new DataStats();
+        stats.transactionCount = repository.getTotalTransactionCount();
+        stats.budgetCount = repository.getBudgetCount();
+        stats.dataSizeKB = calculateDataSize(stats.transactionCount, stats.budgetCount);
+        dataStats.setValue(stats);
     }
 
     private double calculateDataSize(int transactionCount, int budgetCount) {
@@ -39,20 +55,44 @@ public class SettingsViewModel extends ViewModel {
         return dataStats;
     }
 
+    public LiveData<KeyRotationManager.Progress> getKeyRotationProgress() {
+        return keyRotationManager.getProgressLiveData();
+    }
+
+    public LiveData<Boolean> getRotationFailed() {
+        return rotationFailed;
+    }
+
+    /**
+     * Creates a new data key and re-encrypts stored data under it in the
+     * background; progress arrives through {@link #getKeyRotationProgress}.
+     */
+    public void rotateEncryptionKey() {
+        // Generating the key goes through the keystore, which is too slow for the main thread
+        executor.execute(() -> {
+            try {
+                keyRotationManager.startRotation();
+            } catch (Exception e) {
+                Log.e(TAG, "Could not start key rotation", e);
+                rotationFailed.postValue(true);
+            }
+        });
+    }
+
     public void exportData() {
         // TODO: Implement data export functionality
     }
 
     public void clearAllData() {
-        // Clear all transactions and budgets
-        for (String transactionId : repository.getCachedTransactions().stream()
-                .map(t -> t.getId()).toArray(String[]::new)) {
-            repository.deleteTransaction(transactionId);
-        }
-        
-        for (String budgetId : repository.getCachedBudgets().stream()
-                .map(b -> b.getId()).toArray(String[]::new)) {
-            repository.deleteBudget(budgetId);
-        }
+        // One commit, including months that were never decrypted
+        repository.clear();
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        repository.removeTransactionListener(transactionListener);
+        repository.removeBudgetListener(budgetListener);
+        executor.shutdown();
     }
 }
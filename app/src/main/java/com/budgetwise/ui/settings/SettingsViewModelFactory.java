@@ -4,19 +4,22 @@ import androidx.annotation.NonNull;
 import androidx.lifecycle.ViewModel;
 import androidx.lifecycle.ViewModelProvider;
 import com.budgetwise.data.repository.BudgetRepository;
+import com.budgetwise.security.KeyRotationManager;
 
 public class SettingsViewModelFactory implements ViewModelProvider.Factory {
     private final BudgetRepository repository;
+    private final KeyRotationManager keyRotationManager;
 
-    public SettingsViewModelFactory(BudgetRepository repository) {
+    public SettingsViewModelFactory(BudgetRepository repository, KeyRotationManager keyRotationManager) {
         this.repository = repository;
+        this.keyRotationManager = keyRotationManager;
     }
 
     @NonNull
     @Override
     public <T extends ViewModel> T create(@NonNull Class<T> modelClass) {
         if (modelClass.isAssignableFrom(SettingsViewModel.class)) {
-            return (T) new SettingsViewModel(repository);
+            return (T) new SettingsViewModel(repository, keyRotationManager);
         }
         throw new IllegalArgumentException("Unknown ViewModel class");
     }
@@ -2,10 +2,22 @@ package com.budgetwise.ui.settings.backup;
 
 import android.os.Bundle;
 import androidx.appcompat.app.AppCompatActivity;
+import com.budgetwise.BudgetWiseApplication;
+import com.budgetwise.backup.BackupManager;
 import com.budgetwise.databinding.ActivityBackupBinding;
+import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 public class BackupActivity extends AppCompatActivity {
     private ActivityBackupBinding binding;
+    private BackupManager backupManager;
+    private List<BackupManager.BackupInfo> backups = new ArrayList<>();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -13,8 +25,11 @@ public class BackupActivity extends AppCompatActivity {
         binding = ActivityBackupBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
 
+        backupManager = BudgetWiseApplication.getInstance().getBackupManager();
+
         setupToolbar();
         setupClickListeners();
+        loadBackups();
     }
 
     private void setupToolbar() {
@@ -26,19 +41,215 @@ public class BackupActivity extends AppCompatActivity {
     }
 
     private void setupClickListeners() {
-        // TODO: Implement backup and restore functionality
         binding.buttonBackup.setOnClickListener(v -> {
-            // Implement backup logic
+            binding.buttonBackup.setEnabled(false);
+            backupManager.createBackup(new BackupManager.BackupCallback() {
+                @Override
+                public void onSuccess(String filePath) {
+                    runOnUiThread(() -> {
+                        binding.buttonBackup.setEnabled(true);
+                        showMessage("Backup Created", "Your data was backed up successfully.");
+                        loadBackups();
+                    });
+                }
+
+                @Override
+                public void onError(String error) {
+                    runOnUiThread(() -> {
+                        binding.buttonBackup.setEnabled(true);
+                        showMessage("Backup Failed", error);
+                    });
+                }
+            });
         });
 
-        binding.buttonRestore.setOnClickListener(v -> {
-            // Implement restore logic
+        binding.buttonRestore.setOnClickListener(v -> chooseBackup("Restore from Backup", this::chooseRestoreKind));
+
+        binding.buttonVerify.setOnClickListener(v -> chooseBackup("Verify a Backup", this::verify));
+    }
+
+    /**
+     * Backups are listed from their manifests, which already tells whether
+     * each one is intact without decrypting its data.
+     */
+    private void loadBackups() {
+        backupManager.getBackupInfos(new BackupManager.BackupInfoCallback() {
+            @Override
+            public void onSuccess(List<BackupManager.BackupInfo> result) {
+                runOnUiThread(() -> {
+                    backups = result;
+                    if (result.isEmpty()) {
+                        binding.textBackupList.setText("No backups yet");
+                        return;
+                    }
+                    StringBuilder text = new StringBuilder();
+                    for (BackupManager.BackupInfo backup : result) {
+                        if (text.length() > 0) {
+                            text.append("\n\n");
+                        }
+                        text.append(describe(backup));
+                    }
+                    binding.textBackupList.setText(text);
+                });
+            }
+
+            @Override
+            public void onError(String error) {
+                runOnUiThread(() -> binding.textBackupList.setText(error));
+            }
         });
     }
 
+    private void chooseBackup(String title, BackupAction action) {
+        if (backups.isEmpty()) {
+            showMessage(title, "No backups found.");
+            return;
+        }
+        String[] items = new String[backups.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = describe(backups.get(i));
+        }
+        new MaterialAlertDialogBuilder(this)
+            .setTitle(title)
+            .setItems(items, (dialog, which) -> action.run(backups.get(which)))
+            .setNegativeButton("Cancel", null)
+            .show();
+    }
+
+    /**
+     * Backups with a manifest can also be restored in part: only the chosen
+     * categories, merged into the current data.
+     */
+    private void chooseRestoreKind(BackupManager.BackupInfo backup) {
+        if (!backup.indexed || backup.categories.isEmpty()) {
+            confirmRestore(backup);
+            return;
+        }
+        String[] kinds = {"Replace all data", "Merge selected categories"};
+        new MaterialAlertDialogBuilder(this)
+            .setTitle("Restore Backup")
+            .setItems(kinds, (dialog, which) -> {
+                if (which == 0) {
+                    confirmRestore(backup);
+                } else {
+                    chooseCategories(backup);
+                }
+            })
+            .setNegativeButton("Cancel", null)
+            .show();
+    }
+
+    private void chooseCategories(BackupManager.BackupInfo backup) {
+        String[] categories = backup.categories.toArray(new String[0]);
+        boolean[] checked = new boolean[categories.length];
+        new MaterialAlertDialogBuilder(this)
+            .setTitle("Merge Categories")
+            .setMultiChoiceItems(categories, checked, (dialog, which, isChecked) -> checked[which] = isChecked)
+            .setPositiveButton("Merge", (dialog, which) -> {
+                Set<String> selected = new HashSet<>();
+                for (int i = 0; i < categories.length; i++) {
+                    if (checked[i]) {
+                        selected.add(categories[i]);
+                    }
+                }
+                if (selected.isEmpty()) {
+                    showMessage("Merge Categories", "No categories selected.");
+                    return;
+                }
+                restorePartial(backup, selected);
+            })
+            .setNegativeButton("Cancel", null)
+            .show();
+    }
+
+    private void restorePartial(BackupManager.BackupInfo backup, Set<String> categories) {
+        // Budgets are left as they are; only the chosen transactions are merged
+        BackupManager.RestoreSelection selection = new BackupManager.RestoreSelection();
+        selection.categories = categories;
+        backupManager.restorePartial(backup.file.getAbsolutePath(), selection, new BackupManager.BackupCallback() {
+            @Override
+            public void onSuccess(String message) {
+                runOnUiThread(() -> showMessage("Merge Complete", message));
+            }
+
+            @Override
+            public void onError(String error) {
+                runOnUiThread(() -> showMessage("Merge Failed", error));
+            }
+        });
+    }
+
+    private void confirmRestore(BackupManager.BackupInfo backup) {
+        new MaterialAlertDialogBuilder(this)
+            .setTitle("Restore Backup")
+            .setMessage("This will replace all current transactions and budgets with the backup from "
+                + formatDateTime(backup.timestamp) + ".")
+            .setPositiveButton("Restore", (dialog, which) ->
+                backupManager.restoreBackup(backup.file.getAbsolutePath(), new BackupManager.BackupCallback() {
+                    @Override
+                    public void onSuccess(String message) {
+                        runOnUiThread(() -> showMessage("Restore Complete", message));
+                    }
+
+                    @Override
+                    public void onError(String error) {
+                        runOnUiThread(() -> showMessage("Restore Failed", error));
+                    }
+                }))
+            .setNegativeButton("Cancel", null)
+            .show();
+    }
+
+    private void verify(BackupManager.BackupInfo backup) {
+        // A full check decrypts every chunk, so it runs on demand only
+        backupManager.verifyBackup(backup.file.getAbsolutePath(), true, new BackupManager.BackupVerifyCallback() {
+            @Override
+            public void onVerified(BackupManager.BackupInfo result) {
+                runOnUiThread(() -> showMessage(result.verified ? "Backup Intact" : "Backup Damaged",
+                    describe(result)));
+            }
+
+            @Override
+            public void onError(String error) {
+                runOnUiThread(() -> showMessage("Verification Failed", error));
+            }
+        });
+    }
+
+    private String describe(BackupManager.BackupInfo backup) {
+        StringBuilder text = new StringBuilder(formatDateTime(backup.timestamp));
+        if (backup.indexed) {
+            text.append("\n").append(String.format(Locale.getDefault(), "%d transactions, %d budgets",
+                backup.transactionCount, backup.budgetCount));
+            if (backup.transactionCount > 0) {
+                SimpleDateFormat monthFormat = new SimpleDateFormat("MMM yyyy", Locale.getDefault());
+                text.append("\n").append(monthFormat.format(new Date(backup.firstTransactionDate)))
+                    .append(" – ").append(monthFormat.format(new Date(backup.lastTransactionDate)));
+            }
+        }
+        text.append("\n").append(backup.verified ? "✓ Verified" : "⚠ " + backup.problem);
+        return text.toString();
+    }
+
+    private static String formatDateTime(long timestamp) {
+        return new SimpleDateFormat("MMM d, yyyy HH:mm", Locale.getDefault()).format(new Date(timestamp));
+    }
+
+    private void showMessage(String title, String message) {
+        new MaterialAlertDialogBuilder(this)
+            .setTitle(title)
+            .setMessage(message)
+            .setPositiveButton("OK", null)
+            .show();
+    }
+
+    private interface BackupAction {
+        void run(BackupManager.BackupInfo backup);
+    }
+
     @Override
     public boolean onSupportNavigateUp() {
         onBackPressed();
         return true;
     }
-}
\ No newline at end of file
+}
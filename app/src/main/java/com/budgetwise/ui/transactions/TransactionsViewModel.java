@@ -1,38 +1,58 @@
 package com.budgetwise.ui.transactions;
 
 import androidx.lifecycle.LiveData;
-import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 import com.budgetwise.data.models.Transaction;
 import com.budgetwise.data.repository.BudgetRepository;
+import com.budgetwise.data.repository.RepositoryChange;
 import java.util.List;
 
 public class TransactionsViewModel extends ViewModel {
     private final BudgetRepository repository;
-    private final MediatorLiveData<Double> totalIncome = new MediatorLiveData<>();
-    private final MediatorLiveData<Double> totalExpenses = new MediatorLiveData<>();
+    private final MutableLiveData<Double> totalIncome = new MutableLiveData<>();
+    private final MutableLiveData<Double> totalExpenses = new MutableLiveData<>();
+    private final RepositoryChange.Listener<Transaction> changeListener = this::onTransactionsChanged;
+
+    // Running totals, adjusted per change instead of rescanning the list
+    private double income;
+    private double expenses;
 
     public TransactionsViewModel(BudgetRepository repository) {
         this.repository = repository;
-        setupMediators();
+
+        for (Transaction transaction : repository.addTransactionListener(changeListener)) {
+            apply(transaction, 1);
+        }
+        publishTotals();
+
+        // This screen lists the full history
+        repository.loadAllTransactions();
+    }
+
+    private void onTransactionsChanged(List<RepositoryChange<Transaction>> changes) {
+        for (RepositoryChange<Transaction> change : changes) {
+            if (change.getBefore() != null) {
+                apply(change.getBefore(), -1);
+            }
+            if (change.getAfter() != null) {
+                apply(change.getAfter(), 1);
+            }
+        }
+        publishTotals();
     }
 
-    private void setupMediators() {
-        totalIncome.addSource(repository.getTransactions(), transactions -> {
-            double income = transactions.stream()
-                .filter(t -> t.getType() == Transaction.TransactionType.INCOME)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            totalIncome.setValue(income);
-        });
+    private void apply(Transaction transaction, int sign) {
+        if (transaction.getType() == Transaction.TransactionType.INCOME) {
+            income += sign * transaction.getAmount();
+        } else if (transaction.getType() == Transaction.TransactionType.EXPENSE) {
+            expenses += sign * transaction.getAmount();
+        }
+    }
 
-        totalExpenses.addSource(repository.getTransactions(), transactions -> {
-            double expenses = transactions.stream()
-                .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            totalExpenses.setValue(expenses);
-        });
+    private void publishTotals() {
+        totalIncome.setValue(income);
+        totalExpenses.setValue(expenses);
     }
 
     public LiveData<List<Transaction>> getTransactions() {
@@ -50,4 +70,10 @@ public class TransactionsViewModel extends ViewModel {
     public void deleteTransaction(String transactionId) {
         repository.deleteTransaction(transactionId);
     }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        repository.removeTransactionListener(changeListener);
+    }
 }
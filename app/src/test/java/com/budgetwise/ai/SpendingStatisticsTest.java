@@ -0,0 +1,140 @@
+package com.budgetwise.ai;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.budgetwise.data.models.Transaction;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class SpendingStatisticsTest {
+    private static final String[] CATEGORIES = {"Food", "Rent", "Travel"};
+
+    @Test
+    public void runningMomentsMatchBatchUnderAddAndRemove() {
+        Random random = new Random(3);
+        SpendingStatistics statistics = new SpendingStatistics();
+        List<Transaction> current = new ArrayList<>();
+
+        for (int step = 0; step < 2000; step++) {
+            if (!current.isEmpty() && random.nextInt(3) == 0) {
+                statistics.remove(current.remove(random.nextInt(current.size())));
+            } else {
+                Transaction transaction = randomTransaction(random);
+                statistics.add(transaction);
+                current.add(transaction);
+            }
+            if (step % 100 == 0) {
+                assertMatches(current, statistics);
+            }
+        }
+        assertMatches(current, statistics);
+    }
+
+    @Test
+    public void categoryDisappearsWhenItsLastExpenseIsRemoved() {
+        SpendingStatistics statistics = new SpendingStatistics();
+        Transaction transaction = expense(12.5, "Food", 0);
+        statistics.add(transaction);
+        statistics.remove(transaction);
+
+        assertNull(statistics.getMoments("Food"));
+        assertEquals(0, statistics.getTransactionCount());
+    }
+
+    @Test
+    public void incomeCountsTowardHoursButNotCategories() {
+        SpendingStatistics statistics = new SpendingStatistics();
+        Transaction income = new Transaction(2000, "Salary", "Salary", Transaction.TransactionType.INCOME);
+        income.setDate(new Date(0));
+        statistics.add(income);
+
+        assertNull(statistics.getMoments("Salary"));
+        assertEquals(1, statistics.getHourCounts()[SpendingStatistics.hourOf(0)]);
+    }
+
+    @Test
+    public void zScoreIsNaNWhenAmountsDoNotVary() {
+        SpendingStatistics.Moments moments = new SpendingStatistics.Moments();
+        for (int i = 0; i < 5; i++) {
+            moments.add(20);
+        }
+        assertTrue(Double.isNaN(moments.zScore(20)));
+
+        moments.add(40);
+        moments.remove(40);
+        assertTrue(Double.isNaN(moments.zScore(20)));
+    }
+
+    @Test
+    public void copyOnlyForTheTrackedVersionAndCount() {
+        SpendingStatistics statistics = new SpendingStatistics();
+        statistics.add(expense(10, "Food", 0));
+        statistics.add(expense(30, "Food", 1));
+
+        assertNull(statistics.copyIfCurrent(5, 2));
+        statistics.setVersion(5);
+        assertNull(statistics.copyIfCurrent(-1, 2));
+        assertNull(statistics.copyIfCurrent(4, 2));
+        assertNull(statistics.copyIfCurrent(5, 3));
+
+        SpendingStatistics copy = statistics.copyIfCurrent(5, 2);
+        assertNotNull(copy);
+        statistics.add(expense(500, "Food", 2));
+        assertEquals(2, copy.getMoments("Food").count);
+        assertEquals(20, copy.getMoments("Food").mean, 1e-9);
+    }
+
+    @Test
+    public void clearForgetsTheVersion() {
+        SpendingStatistics statistics = new SpendingStatistics();
+        statistics.setVersion(7);
+        statistics.clear();
+        assertNull(statistics.copyIfCurrent(7, 0));
+    }
+
+    private static void assertMatches(List<Transaction> transactions, SpendingStatistics statistics) {
+        assertEquals(transactions.size(), statistics.getTransactionCount());
+        assertArrayEquals(SpendingStatistics.hourCountsOf(transactions), statistics.getHourCounts());
+        for (String category : CATEGORIES) {
+            List<Transaction> expenses = new ArrayList<>();
+            for (Transaction transaction : transactions) {
+                if (transaction.getType() == Transaction.TransactionType.EXPENSE
+                        && category.equals(transaction.getCategory())) {
+                    expenses.add(transaction);
+                }
+            }
+            SpendingStatistics.Moments running = statistics.getMoments(category);
+            if (expenses.isEmpty()) {
+                assertNull(running);
+                continue;
+            }
+            SpendingStatistics.Moments batch = SpendingStatistics.Moments.of(expenses);
+            assertEquals(batch.count, running.count);
+            assertEquals(batch.mean, running.mean, 1e-6);
+            assertEquals(batch.standardDeviation(), running.standardDeviation(), 1e-6);
+        }
+    }
+
+    private static Transaction randomTransaction(Random random) {
+        if (random.nextInt(5) == 0) {
+            Transaction income = new Transaction(1000, "Salary", "Salary", Transaction.TransactionType.INCOME);
+            income.setDate(new Date(random.nextInt(1_000_000) * 60_000L));
+            return income;
+        }
+        double amount = Math.round(random.nextDouble() * 50_000) / 100.0;
+        return expense(amount, CATEGORIES[random.nextInt(CATEGORIES.length)], random.nextInt(1_000_000));
+    }
+
+    private static Transaction expense(double amount, String category, long minutes) {
+        Transaction transaction = new Transaction(amount, "Test", category, Transaction.TransactionType.EXPENSE);
+        transaction.setDate(new Date(minutes * 60_000L));
+        return transaction;
+    }
+}
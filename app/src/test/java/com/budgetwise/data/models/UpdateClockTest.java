@@ -0,0 +1,22 @@
+package com.budgetwise.data.models;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class UpdateClockTest {
+
+    @Test
+    public void editsInTheSameMillisecondGetDistinctVersions() {
+        Transaction transaction = new Transaction(10, "Coffee", "Food", Transaction.TransactionType.EXPENSE);
+        Budget budget = new Budget("Food", 100, Budget.BudgetPeriod.MONTHLY);
+        long previous = Math.max(transaction.getUpdatedAt(), budget.getUpdatedAt());
+        for (int i = 0; i < 1000; i++) {
+            transaction.setNotes("edit " + i);
+            assertTrue(transaction.getUpdatedAt() > previous);
+            budget.setSpentAmount(i);
+            assertTrue(budget.getUpdatedAt() > transaction.getUpdatedAt());
+            previous = budget.getUpdatedAt();
+        }
+    }
+}
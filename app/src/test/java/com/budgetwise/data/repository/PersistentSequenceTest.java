@@ -0,0 +1,115 @@
+package com.budgetwise.data.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+public class PersistentSequenceTest {
+
+    @Test
+    public void matchesTreeMapUnderRandomOperations() {
+        Random random = new Random(5);
+        PersistentSequence<Integer> sequence = PersistentSequence.empty();
+        TreeMap<Long, Integer> model = new TreeMap<>();
+
+        for (int step = 0; step < 5000; step++) {
+            long key = random.nextInt(400);
+            if (random.nextInt(3) == 0) {
+                sequence = sequence.without(key);
+                model.remove(key);
+            } else {
+                sequence = sequence.with(key, step);
+                model.put(key, step);
+            }
+
+            if (step % 50 == 0) {
+                assertMatches(model, sequence);
+            }
+        }
+        assertMatches(model, sequence);
+    }
+
+    @Test
+    public void olderVersionsAreUnaffectedByLaterChanges() {
+        Random random = new Random(9);
+        PersistentSequence<Integer> sequence = PersistentSequence.empty();
+        TreeMap<Long, Integer> model = new TreeMap<>();
+        List<PersistentSequence<Integer>> versions = new ArrayList<>();
+        List<List<Integer>> expected = new ArrayList<>();
+
+        for (int step = 0; step < 1000; step++) {
+            long key = random.nextInt(100);
+            if (random.nextBoolean()) {
+                sequence = sequence.without(key);
+                model.remove(key);
+            } else {
+                sequence = sequence.with(key, step);
+                model.put(key, step);
+            }
+            if (step % 25 == 0) {
+                versions.add(sequence);
+                expected.add(new ArrayList<>(model.values()));
+            }
+        }
+
+        for (int i = 0; i < versions.size(); i++) {
+            assertEquals(expected.get(i), new ArrayList<>(versions.get(i)));
+        }
+    }
+
+    @Test
+    public void ordersByKeyThenTieAndRanksPositions() {
+        Random random = new Random(13);
+        PersistentSequence<Integer> sequence = PersistentSequence.empty();
+        TreeMap<Long, Integer> model = new TreeMap<>();
+
+        for (int step = 0; step < 3000; step++) {
+            long key = random.nextInt(50);
+            long tie = random.nextInt(20);
+            // Composite of the two, in the same order as (key, tie)
+            long composite = key * 100 + tie;
+            if (random.nextInt(3) == 0) {
+                sequence = sequence.without(key, tie);
+                model.remove(composite);
+            } else {
+                sequence = sequence.with(key, tie, step);
+                model.put(composite, step);
+            }
+        }
+        assertMatches(model, sequence);
+
+        for (long key = -1; key <= 51; key++) {
+            assertEquals(model.headMap(key * 100).size(), sequence.rank(key, Long.MIN_VALUE));
+            assertEquals(model.headMap(key * 100 + 7).size(), sequence.rank(key, 7));
+        }
+    }
+
+    @Test
+    public void removingMissingKeyReturnsSameSequence() {
+        PersistentSequence<String> sequence = PersistentSequence.<String>empty().with(1, "a");
+        assertSame(sequence, sequence.without(2));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getOutOfRangeThrows() {
+        PersistentSequence.<String>empty().with(1, "a").get(1);
+    }
+
+    private static void assertMatches(TreeMap<Long, Integer> model, PersistentSequence<Integer> sequence) {
+        assertEquals(model.size(), sequence.size());
+        List<Integer> values = new ArrayList<>(model.values());
+        Iterator<Integer> iterator = sequence.iterator();
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(values.get(i), sequence.get(i));
+            assertEquals(values.get(i), iterator.next());
+        }
+        assertFalse(iterator.hasNext());
+    }
+}
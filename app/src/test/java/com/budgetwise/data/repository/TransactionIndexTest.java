@@ -0,0 +1,142 @@
+package com.budgetwise.data.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.budgetwise.data.models.Transaction;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class TransactionIndexTest {
+    @Test
+    public void matchesNaiveModelUnderRandomOperations() {
+        Random random = new Random(11);
+        TransactionIndex index = new TransactionIndex();
+        Map<String, Transaction> model = new LinkedHashMap<>();
+        List<String> ids = new ArrayList<>();
+
+        for (int step = 0; step < 3000; step++) {
+            int op = random.nextInt(10);
+            if (op < 5 || ids.isEmpty()) {
+                Transaction transaction = transaction("t" + step, random.nextInt(500));
+                ids.add(transaction.getId());
+                index.put(transaction);
+                model.put(transaction.getId(), transaction);
+            } else if (op < 8) {
+                // Replace with new values under the same id, keeping its position
+                String id = ids.get(random.nextInt(ids.size()));
+                Transaction replacement = transaction(id, random.nextInt(500));
+                index.put(replacement);
+                model.put(id, replacement);
+            } else {
+                String id = ids.remove(random.nextInt(ids.size()));
+                Transaction removed = index.remove(id);
+                Transaction expected = model.remove(id);
+                assertEquals(expected == null, removed == null);
+            }
+
+            if (step % 100 == 0) {
+                assertMatches(model, index, random);
+            }
+        }
+        assertMatches(model, index, random);
+    }
+
+    @Test
+    public void inPlaceEditBeforePutDoesNotLeaveStaleDateEntry() {
+        TransactionIndex index = new TransactionIndex();
+        Transaction transaction = transaction("a", 10);
+        index.put(transaction);
+
+        transaction.setDate(new Date(50));
+        Transaction before = index.put(transaction);
+
+        assertEquals(10, before.getDate().getTime());
+        assertEquals(0, index.between(0, 20).size());
+        assertEquals(1, index.between(40, 60).size());
+        assertEquals(50, index.filedTimeOf("a"));
+    }
+
+    @Test
+    public void valuesSnapshotIsUnaffectedByLaterChanges() {
+        TransactionIndex index = new TransactionIndex();
+        index.put(transaction("a", 1));
+        index.put(transaction("b", 2));
+        List<Transaction> snapshot = index.values();
+
+        index.remove("a");
+        index.put(transaction("c", 3));
+
+        assertEquals(2, snapshot.size());
+        assertEquals("a", snapshot.get(0).getId());
+        assertEquals("b", snapshot.get(1).getId());
+        assertEquals(2, index.values().size());
+    }
+
+    @Test
+    public void dateOrderSnapshotIsUnaffectedByLaterChanges() {
+        TransactionIndex index = new TransactionIndex();
+        index.put(transaction("a", 20));
+        index.put(transaction("b", 10));
+        PersistentSequence<Transaction> snapshot = index.byDate();
+
+        index.remove("b");
+        index.put(transaction("c", 5));
+
+        assertEquals(1, TransactionIndex.between(snapshot, 0, 15).size());
+        assertEquals("b", TransactionIndex.recent(snapshot, 2).get(1).getId());
+        assertEquals("c", index.byDate().get(0).getId());
+    }
+
+    @Test
+    public void removingUnknownIdReturnsNull() {
+        assertNull(new TransactionIndex().remove("missing"));
+    }
+
+    private static void assertMatches(Map<String, Transaction> model, TransactionIndex index, Random random) {
+        assertEquals(model.size(), index.size());
+
+        List<Transaction> values = index.values();
+        int i = 0;
+        for (Transaction expected : model.values()) {
+            assertSame(expected, values.get(i++));
+        }
+
+        // Same-millisecond records stay in insertion order, which the model keeps too
+        List<Transaction> sorted = new ArrayList<>(model.values());
+        sorted.sort(Comparator.comparingLong(transaction -> transaction.getDate().getTime()));
+        assertEquals(sorted, index.byDate());
+
+        long start = random.nextInt(500);
+        long end = start + random.nextInt(200);
+        List<Transaction> expectedRange = new ArrayList<>();
+        for (Transaction transaction : sorted) {
+            long time = transaction.getDate().getTime();
+            if (time >= start && time <= end) {
+                expectedRange.add(transaction);
+            }
+        }
+        assertEquals(expectedRange, index.between(start, end));
+
+        int limit = random.nextInt(20);
+        List<Transaction> expectedRecent = new ArrayList<>();
+        for (int j = sorted.size() - 1; j >= 0 && expectedRecent.size() < limit; j--) {
+            expectedRecent.add(sorted.get(j));
+        }
+        assertEquals(expectedRecent, index.recent(limit));
+    }
+
+    private static Transaction transaction(String id, long time) {
+        Transaction transaction = new Transaction(time, "t", "Food", Transaction.TransactionType.EXPENSE);
+        transaction.setId(id);
+        transaction.setDate(new Date(time));
+        return transaction;
+    }
+}
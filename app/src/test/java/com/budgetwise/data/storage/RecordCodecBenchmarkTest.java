@@ -0,0 +1,50 @@
+package com.budgetwise.data.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.budgetwise.data.models.Transaction;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Size and parse time of the record codec against the Gson JSON it
+ * replaced. Sizes are asserted; times are only printed, since they depend on
+ * the machine.
+ */
+public class RecordCodecBenchmarkTest {
+    private static final int TRANSACTIONS = 10_000;
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void codecIsSmallerAndParsesFasterThanJson() throws IOException {
+        List<Transaction> transactions = RecordCodecTest.randomTransactions(new Random(3), TRANSACTIONS);
+        Gson gson = new Gson();
+        byte[] json = gson.toJson(transactions).getBytes(StandardCharsets.UTF_8);
+        byte[] encoded = RecordCodec.encodeTransactions(transactions);
+
+        long jsonNanos = Long.MAX_VALUE;
+        long codecNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            List<Transaction> fromJson = gson.fromJson(new String(json, StandardCharsets.UTF_8),
+                new TypeToken<List<Transaction>>() {}.getType());
+            jsonNanos = Math.min(jsonNanos, System.nanoTime() - start);
+            assertEquals(TRANSACTIONS, fromJson.size());
+
+            start = System.nanoTime();
+            List<Transaction> decoded = RecordCodec.decodeTransactions(encoded);
+            codecNanos = Math.min(codecNanos, System.nanoTime() - start);
+            assertEquals(TRANSACTIONS, decoded.size());
+        }
+
+        System.out.printf("%d transactions: JSON %d bytes, %.1f ms; codec %d bytes, %.1f ms%n",
+            TRANSACTIONS, json.length, jsonNanos / 1e6, encoded.length, codecNanos / 1e6);
+        assertTrue("codec output should be well under half the JSON size", encoded.length * 2 < json.length);
+    }
+}
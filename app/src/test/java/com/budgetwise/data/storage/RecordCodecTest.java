@@ -0,0 +1,199 @@
+package com.budgetwise.data.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import com.budgetwise.data.models.Budget;
+import com.budgetwise.data.models.Transaction;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class RecordCodecTest {
+
+    @Test
+    public void transactionsRoundTrip() throws IOException {
+        List<Transaction> transactions = randomTransactions(new Random(1), 200);
+        // Edge cases next to the random ones
+        Transaction empty = new Transaction();
+        empty.setId("not-a-uuid");
+        empty.setDate(null);
+        empty.setType(null);
+        empty.setCreatedAt(-5);
+        empty.setUpdatedAt(Long.MAX_VALUE);
+        transactions.add(empty);
+
+        List<Transaction> decoded = RecordCodec.decodeTransactions(RecordCodec.encodeTransactions(transactions));
+
+        assertEquals(transactions.size(), decoded.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            assertTransactionEquals(transactions.get(i), decoded.get(i));
+        }
+    }
+
+    @Test
+    public void budgetsRoundTrip() throws IOException {
+        List<Budget> budgets = new ArrayList<>();
+        for (Budget.BudgetPeriod period : Budget.BudgetPeriod.values()) {
+            Budget budget = new Budget("Food", 250.5, period);
+            budget.setSpentAmount(99.99);
+            budget.setActive(period != Budget.BudgetPeriod.YEARLY);
+            budgets.add(budget);
+        }
+        Budget bare = new Budget();
+        bare.setId("legacy id");
+        budgets.add(bare);
+
+        List<Budget> decoded = RecordCodec.decodeBudgets(RecordCodec.encodeBudgets(budgets));
+
+        assertEquals(budgets.size(), decoded.size());
+        for (int i = 0; i < budgets.size(); i++) {
+            Budget expected = budgets.get(i);
+            Budget actual = decoded.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getCategory(), actual.getCategory());
+            assertEquals(expected.getBudgetAmount(), actual.getBudgetAmount(), 0);
+            assertEquals(expected.getSpentAmount(), actual.getSpentAmount(), 0);
+            assertEquals(expected.getPeriod(), actual.getPeriod());
+            assertEquals(expected.isActive(), actual.isActive());
+            assertEquals(expected.getStartDate(), actual.getStartDate());
+            assertEquals(expected.getEndDate(), actual.getEndDate());
+            assertEquals(expected.getCreatedAt(), actual.getCreatedAt());
+            assertEquals(expected.getUpdatedAt(), actual.getUpdatedAt());
+        }
+    }
+
+    @Test
+    public void emptyListRoundTrips() throws IOException {
+        assertEquals(0, RecordCodec.decodeTransactions(
+            RecordCodec.encodeTransactions(new ArrayList<>())).size());
+    }
+
+    @Test
+    public void outOfRangeCategoryIsRejected() throws IOException {
+        Transaction transaction = new Transaction(1, "x", "Food", Transaction.TransactionType.EXPENSE);
+        byte[] data = RecordCodec.encodeTransactions(Arrays.asList(transaction));
+        // Header 4, dictionary size 1, "Food" 1 + 4, record count 1, UUID id 17, amount 8, description 2
+        int categoryOffset = 4 + 1 + 5 + 1 + 17 + 8 + 2;
+        assertEquals(1, data[categoryOffset]);
+        data[categoryOffset] = 7;
+
+        assertRejected(data);
+    }
+
+    @Test
+    public void outOfRangeTypeIsRejected() throws IOException {
+        Transaction transaction = new Transaction(1, "x", null, Transaction.TransactionType.EXPENSE);
+        byte[] data = RecordCodec.encodeTransactions(Arrays.asList(transaction));
+        // Header 4, empty dictionary 1, record count 1, UUID id 17, amount 8, description 2, category 1
+        int typeOffset = 4 + 1 + 1 + 17 + 8 + 2 + 1;
+        assertEquals(Transaction.TransactionType.EXPENSE.ordinal(), data[typeOffset]);
+        data[typeOffset] = 9;
+
+        assertRejected(data);
+    }
+
+    @Test
+    public void hugeCountsFailWithoutAllocating() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.write(new byte[] {'B', 'W', 1, 1});
+        // Dictionary and record counts of Integer.MAX_VALUE with nothing behind them
+        RecordCodec.writeVarLong(out, Integer.MAX_VALUE);
+        assertRejected(buffer.toByteArray());
+
+        buffer.reset();
+        out.write(new byte[] {'B', 'W', 1, 1});
+        RecordCodec.writeVarLong(out, 0);
+        RecordCodec.writeVarLong(out, Integer.MAX_VALUE);
+        assertRejected(buffer.toByteArray());
+    }
+
+    /**
+     * Any corruption must surface as IOException, never as a runtime
+     * exception or an out-of-memory error.
+     */
+    @Test
+    public void corruptInputOnlyThrowsIOException() throws IOException {
+        Random random = new Random(7);
+        byte[] original = RecordCodec.encodeTransactions(randomTransactions(random, 20));
+        for (int round = 0; round < 5000; round++) {
+            byte[] data = Arrays.copyOf(original, random.nextInt(original.length) + 1);
+            int flips = 1 + random.nextInt(4);
+            for (int i = 0; i < flips; i++) {
+                data[random.nextInt(data.length)] = (byte) random.nextInt(256);
+            }
+            try {
+                RecordCodec.decodeTransactions(data);
+            } catch (IOException expected) {
+                // Rejected cleanly
+            }
+        }
+    }
+
+    @Test
+    public void signedVarLongRoundTrips() throws IOException {
+        long[] values = {0, 1, -1, 63, -64, 64, Long.MAX_VALUE, Long.MIN_VALUE, System.currentTimeMillis()};
+        for (long value : values) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            RecordCodec.writeSignedVarLong(new DataOutputStream(buffer), value);
+            assertEquals(value, RecordCodec.readSignedVarLong(new DataInputStream(
+                new ByteArrayInputStream(buffer.toByteArray()))));
+        }
+    }
+
+    static List<Transaction> randomTransactions(Random random, int count) {
+        String[] categories = {"Food", "Rent", "Travel", "Utilities", null};
+        long start = 1_600_000_000_000L;
+        List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Transaction transaction = new Transaction(
+                Math.round(random.nextDouble() * 100_000) / 100.0,
+                random.nextInt(4) == 0 ? null : "Purchase " + random.nextInt(50),
+                categories[random.nextInt(categories.length)],
+                Transaction.TransactionType.values()[random.nextInt(Transaction.TransactionType.values().length)]);
+            transaction.setDate(new Date(start + random.nextInt(1_000_000_000)));
+            transaction.setRecurring(random.nextBoolean());
+            transaction.setNotes(random.nextInt(3) == 0 ? "ünïcödé note" : null);
+            transaction.setCreatedAt(start + i);
+            transaction.setUpdatedAt(start + i + random.nextInt(10_000));
+            transactions.add(transaction);
+        }
+        return transactions;
+    }
+
+    private static void assertRejected(byte[] data) {
+        try {
+            RecordCodec.decodeTransactions(data);
+            fail("Corrupt payload was accepted");
+        } catch (IOException expected) {
+            // Rejected cleanly
+        }
+    }
+
+    private static void assertTransactionEquals(Transaction expected, Transaction actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getAmount(), actual.getAmount(), 0);
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getCategory(), actual.getCategory());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.isRecurring(), actual.isRecurring());
+        if (expected.getDate() == null) {
+            assertNull(actual.getDate());
+        } else {
+            assertEquals(expected.getDate().getTime(), actual.getDate().getTime());
+        }
+        assertEquals(expected.getNotes(), actual.getNotes());
+        assertEquals(expected.getCreatedAt(), actual.getCreatedAt());
+        assertEquals(expected.getUpdatedAt(), actual.getUpdatedAt());
+    }
+}
@@ -0,0 +1,327 @@
+package com.budgetwise.data.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.SharedPreferences;
+import com.budgetwise.data.models.Budget;
+import com.budgetwise.data.models.Transaction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StorageEnginesTest {
+    private FakePreferences preferences;
+    private Map<String, MemoryEngine> engines;
+
+    @Before
+    public void setUp() {
+        preferences = new FakePreferences();
+        engines = new HashMap<>();
+        for (String name : StorageEngines.ALL) {
+            engines.put(name, new MemoryEngine(name));
+        }
+    }
+
+    @Test
+    public void opensSharedPreferencesByDefault() {
+        assertSame(engines.get(StorageEngines.SHARED_PREFERENCES), open());
+    }
+
+    @Test
+    public void pendingSwitchMigratesAndBecomesTheSelection() {
+        MemoryEngine source = engines.get(StorageEngines.SHARED_PREFERENCES);
+        source.fill(new Random(1), 3, 40);
+        preferences.edit().putString("pending_engine", StorageEngines.SQLITE).commit();
+
+        StorageEngine opened = open();
+
+        MemoryEngine target = engines.get(StorageEngines.SQLITE);
+        assertSame(target, opened);
+        assertEquals(120, target.transactionCount());
+        assertEquals(2, target.readBudgets().size());
+        assertTrue(source.destroyed);
+        assertEquals(StorageEngines.SQLITE, preferences.getString("engine", null));
+        assertFalse(preferences.contains("pending_engine"));
+
+        // Later starts open the new engine without migrating again
+        target.destroyed = false;
+        assertSame(target, open());
+        assertFalse(target.destroyed);
+    }
+
+    @Test
+    public void failedMigrationStaysOnCurrentEngine() {
+        MemoryEngine source = engines.get(StorageEngines.SHARED_PREFERENCES);
+        source.fill(new Random(2), 2, 10);
+        MemoryEngine target = engines.get(StorageEngines.ENCRYPTED_FILE);
+        target.failWrites = true;
+        preferences.edit().putString("pending_engine", StorageEngines.ENCRYPTED_FILE).commit();
+
+        assertSame(source, open());
+        assertFalse(source.destroyed);
+        assertEquals(20, source.transactionCount());
+        assertTrue(target.destroyed);
+        assertNull(preferences.getString("engine", null));
+        assertFalse(preferences.contains("pending_engine"));
+    }
+
+    @Test
+    public void pendingSwitchToCurrentEngineIsDropped() {
+        preferences.edit().putString("engine", StorageEngines.SQLITE)
+            .putString("pending_engine", StorageEngines.SQLITE).commit();
+
+        assertSame(engines.get(StorageEngines.SQLITE), open());
+        assertFalse(preferences.contains("pending_engine"));
+    }
+
+    private StorageEngine open() {
+        return StorageEngines.open(preferences, engines::get);
+    }
+
+    private static class MemoryEngine implements StorageEngine {
+        private final String name;
+        private final SortedMap<String, List<Transaction>> partitions = new TreeMap<>();
+        private final SortedMap<String, PartitionSummary> index = new TreeMap<>();
+        private List<Budget> budgets = new ArrayList<>();
+        boolean failWrites;
+        boolean destroyed;
+
+        MemoryEngine(String name) {
+            this.name = name;
+        }
+
+        void fill(Random random, int months, int perMonth) {
+            for (int month = 1; month <= months; month++) {
+                writePartition(String.format("2024%02d", month), RecordCodecTest.randomTransactions(random, perMonth));
+            }
+            budgets = new ArrayList<>();
+            budgets.add(new Budget("Food", 300, Budget.BudgetPeriod.MONTHLY));
+            budgets.add(new Budget("Rent", 1200, Budget.BudgetPeriod.MONTHLY));
+        }
+
+        int transactionCount() {
+            int count = 0;
+            for (List<Transaction> transactions : partitions.values()) {
+                count += transactions.size();
+            }
+            return count;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public SortedMap<String, PartitionSummary> load() {
+            return new TreeMap<>(index);
+        }
+
+        @Override
+        public List<Transaction> readPartition(String partition) {
+            List<Transaction> transactions = partitions.get(partition);
+            return transactions != null ? new ArrayList<>(transactions) : Collections.emptyList();
+        }
+
+        @Override
+        public boolean writePartition(String partition, List<Transaction> transactions) {
+            if (failWrites) {
+                return false;
+            }
+            if (transactions.isEmpty()) {
+                partitions.remove(partition);
+                index.remove(partition);
+            } else {
+                partitions.put(partition, new ArrayList<>(transactions));
+                index.put(partition, PartitionSummary.of(partition, transactions));
+            }
+            return true;
+        }
+
+        @Override
+        public boolean commitIndex() {
+            return !failWrites;
+        }
+
+        @Override
+        public SortedMap<String, PartitionSummary> getIndex() {
+            return new TreeMap<>(index);
+        }
+
+        @Override
+        public List<Budget> readBudgets() {
+            return new ArrayList<>(budgets);
+        }
+
+        @Override
+        public boolean writeBudgets(List<Budget> budgets) {
+            if (failWrites) {
+                return false;
+            }
+            this.budgets = new ArrayList<>(budgets);
+            return true;
+        }
+
+        @Override
+        public Resealed resealPartition(String partition) {
+            return () -> partition;
+        }
+
+        @Override
+        public int storeResealed(Resealed resealed) {
+            return 0;
+        }
+
+        @Override
+        public boolean reencryptBudgets() {
+            return true;
+        }
+
+        @Override
+        public void destroy() {
+            destroyed = true;
+            partitions.clear();
+            index.clear();
+            budgets = new ArrayList<>();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * String-only in-memory preferences, which is all StorageEngines uses.
+     */
+    private static class FakePreferences implements SharedPreferences {
+        private final Map<String, String> values = new HashMap<>();
+
+        @Override
+        public Map<String, ?> getAll() {
+            return new HashMap<>(values);
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+            return values.containsKey(key) ? values.get(key) : defValue;
+        }
+
+        @Override
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new FakeEditor();
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        private class FakeEditor implements Editor {
+            private final Map<String, String> puts = new HashMap<>();
+            private final List<String> removals = new ArrayList<>();
+
+            @Override
+            public Editor putString(String key, String value) {
+                puts.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> values) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Editor putFloat(String key, float value) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Editor remove(String key) {
+                removals.add(key);
+                return this;
+            }
+
+            @Override
+            public Editor clear() {
+                removals.addAll(values.keySet());
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                // Removals apply before puts, as on Android
+                for (String key : removals) {
+                    values.remove(key);
+                }
+                values.putAll(puts);
+                return true;
+            }
+
+            @Override
+            public void apply() {
+                commit();
+            }
+        }
+    }
+}